@@ -35,12 +35,18 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.BindException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -52,7 +58,9 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -130,6 +138,8 @@ public class JamnServer {
     public static final String SOCKET_IDTEXT = "socket.idtext";
     public static final String SOCKET_USAGE = "socket.usage";
     public static final String SOCKET_EXCEPTION = "socket.exception";
+    // the socket is owned by an asynchronous response
+    public static final String SOCKET_DETACHED = "socket.detached";
     public static final String REQUEST_HEADER_TEXT = "request.header.text";
 
     protected Config config = new Config();
@@ -182,6 +192,11 @@ public class JamnServer {
             if (!System.getProperty("javax.net.ssl.keyStore", "").isEmpty()
                     && !System.getProperty("javax.net.ssl.keyStorePassword", "").isEmpty()) {
                 lSocket = SSLServerSocketFactory.getDefault().createServerSocket(lPort);
+            } else if (config.isSocketChannelEnabled()) {
+                // client sockets with a channel e.g. for a selector after a protocol upgrade
+                lSocket = ServerSocketChannel.open().socket();
+                lSocket.setReuseAddress(true);
+                lSocket.bind(new InetSocketAddress(lPort));
             } else {
                 lSocket = ServerSocketFactory.getDefault().createServerSocket(lPort);
             }
@@ -225,6 +240,7 @@ public class JamnServer {
             requestExecutor = Executors.newFixedThreadPool(config.getWorkerNumber());
         }
         clientSocketTimeout = config.getClientSocketTimeout();
+        requestProcessor.setConnectionResumer(this::resumeConnection);
         serverSocket = createServerSocket();
         determineServerURI(serverSocket);
 
@@ -363,35 +379,7 @@ public class JamnServer {
                     final Socket lClientSocket = lServerSocket.accept();
 
                     // start request execution in its own thread
-                    requestExecutor.execute(() -> {
-                        Map<String, String> lComData = new HashMap<>(5);
-                        long start = System.currentTimeMillis();
-                        try {
-                            try {
-                                lClientSocket.setSoTimeout(clientSocketTimeout);
-                                lClientSocket.setTcpNoDelay(true);
-                                // delegate the concrete request handling
-                                requestProcessor.handleRequest(lClientSocket, lComData);
-
-                            } finally {
-                                try {
-                                    if (!(lClientSocket instanceof SSLSocket)) {
-                                        lClientSocket.shutdownOutput(); // first step only output
-                                    }
-                                } finally {
-                                    lClientSocket.close();
-                                    LOG.fine(() -> String.format("%s %s %s %s %s",
-                                            lComData.getOrDefault(SOCKET_IDTEXT, "unknown"),
-                                            "closed [" + (System.currentTimeMillis() - start) + "]",
-                                            "usage [" + lComData.getOrDefault(SOCKET_USAGE, "") + "]",
-                                            "exp [" + lComData.getOrDefault(SOCKET_EXCEPTION, "") + "]",
-                                            Thread.currentThread().getName()));
-                                }
-                            }
-                        } catch (IOException e) {
-                            // nothing to do
-                        }
-                    });
+                    requestExecutor.execute(() -> serveConnection(lClientSocket));
                 }
             } catch (IOException e) {
                 // nothing to do
@@ -401,6 +389,63 @@ public class JamnServer {
         }
     }
 
+    /**
+     * Internal - the request handling of a client connection in a worker thread.
+     */
+    protected void serveConnection(Socket pSocket) {
+        Map<String, String> lComData = new HashMap<>(5);
+        long start = System.currentTimeMillis();
+        try {
+            try {
+                pSocket.setSoTimeout(clientSocketTimeout);
+                pSocket.setTcpNoDelay(true);
+                // delegate the concrete request handling
+                requestProcessor.handleRequest(pSocket, lComData);
+
+            } finally {
+                if (lComData.containsKey(SOCKET_DETACHED)) {
+                    LOG.fine(() -> String.format("%s %s %s",
+                            lComData.getOrDefault(SOCKET_IDTEXT, "unknown"),
+                            "detached [" + (System.currentTimeMillis() - start) + "]",
+                            Thread.currentThread().getName()));
+                } else {
+                    closeClientSocket(pSocket);
+                    LOG.fine(() -> String.format("%s %s %s %s %s",
+                            lComData.getOrDefault(SOCKET_IDTEXT, "unknown"),
+                            "closed [" + (System.currentTimeMillis() - start) + "]",
+                            "usage [" + lComData.getOrDefault(SOCKET_USAGE, "") + "]",
+                            "exp [" + lComData.getOrDefault(SOCKET_EXCEPTION, "") + "]",
+                            Thread.currentThread().getName()));
+                }
+            }
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Internal - continue a keep-alive connection after an asynchronous response.
+     */
+    protected void resumeConnection(Socket pSocket) throws IOException {
+        try {
+            requestExecutor.execute(() -> serveConnection(pSocket));
+        } catch (RejectedExecutionException e) {
+            closeClientSocket(pSocket);
+        }
+    }
+
+    /**
+     */
+    protected static void closeClientSocket(Socket pSocket) throws IOException {
+        try {
+            if (!(pSocket instanceof SSLSocket)) {
+                pSocket.shutdownOutput(); // first step only output
+            }
+        } finally {
+            pSocket.close();
+        }
+    }
+
     /*********************************************************
      * <pre>
      * The central processing interfaces and default implementations.
@@ -463,6 +508,13 @@ public class JamnServer {
         default void setMessagePreprocessor(RequestMessagePreprocessor pPocessor) {
         }
 
+        /**
+         * The interface to hand back a keep-alive connection
+         * after an asynchronous response was sent.
+         */
+        default void setConnectionResumer(SocketResumer pResumer) {
+        }
+
     }
 
     /**
@@ -503,6 +555,118 @@ public class JamnServer {
                 throws IOException, SecurityException;
     }
 
+    /**
+     * <pre>
+     * An output stream writing HTTP/1.1 chunked transfer encoding.
+     * Data is collected to chunks of the buffer size.
+     * finish() writes the last chunk but does NOT close the underlying stream.
+     * </pre>
+     */
+    public static class ChunkedOutputStream extends OutputStream {
+        protected static final byte[] CRLF_BYTES = { '\r', '\n' };
+        protected static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+        protected OutputStream out;
+        protected byte[] buffer;
+        protected int count = 0;
+        protected boolean finished = false;
+
+        public ChunkedOutputStream(OutputStream pOut) {
+            this(pOut, 8192);
+        }
+
+        public ChunkedOutputStream(OutputStream pOut, int pChunkSize) {
+            out = pOut;
+            buffer = new byte[pChunkSize];
+        }
+
+        @Override
+        public void write(int pByte) throws IOException {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            buffer[count++] = (byte) pByte;
+        }
+
+        @Override
+        public void write(byte[] pData, int pOffset, int pLen) throws IOException {
+            if (pLen >= buffer.length) {
+                writeChunk();
+                writeChunk(pData, pOffset, pLen);
+            } else {
+                if (pLen > buffer.length - count) {
+                    writeChunk();
+                }
+                System.arraycopy(pData, pOffset, buffer, count, pLen);
+                count += pLen;
+            }
+        }
+
+        /**
+         * Sends the collected data as a chunk.
+         */
+        @Override
+        public void flush() throws IOException {
+            writeChunk();
+            out.flush();
+        }
+
+        /**
+         */
+        public void finish() throws IOException {
+            if (!finished) {
+                finished = true;
+                writeChunk();
+                out.write(LAST_CHUNK);
+                out.flush();
+            }
+        }
+
+        /**
+         */
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        /**
+         */
+        protected void writeChunk() throws IOException {
+            writeChunk(buffer, 0, count);
+            count = 0;
+        }
+
+        /**
+         */
+        protected void writeChunk(byte[] pData, int pOffset, int pLen) throws IOException {
+            if (pLen > 0) {
+                out.write(Integer.toHexString(pLen).getBytes(StandardCharsets.US_ASCII));
+                out.write(CRLF_BYTES);
+                out.write(pData, pOffset, pLen);
+                out.write(CRLF_BYTES);
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * The interface to finish the connection of an asynchronous response.
+     * A reusable connection may be kept open for the next request.
+     * </pre>
+     */
+    @FunctionalInterface
+    public static interface SocketCloser {
+        void close(boolean pReusable) throws IOException;
+    }
+
+    /**
+     * The interface to continue the request handling of a connection.
+     */
+    @FunctionalInterface
+    public static interface SocketResumer {
+        void resume(Socket pSocket) throws IOException;
+    }
+
     /**
      * <pre>
      * A wrapper interface for JSON tools.
@@ -517,6 +681,53 @@ public class JamnServer {
          */
         public String toString(Object pObj) throws UncheckedJsonException;
 
+        /**
+         * <pre>
+         * Parse JSON bytes without an intermediate string.
+         * The default implementation falls back to the string variant.
+         * </pre>
+         */
+        public default <T> T toObject(byte[] pSrc, Class<T> pType) throws UncheckedJsonException {
+            return toObject(new String(pSrc, StandardCharsets.UTF_8), pType);
+        }
+
+        /**
+         */
+        public default <T> T toObject(InputStream pSrc, Class<T> pType) throws UncheckedJsonException {
+            try {
+                return toObject(pSrc.readAllBytes(), pType);
+            } catch (IOException e) {
+                throw new UncheckedJsonException(UncheckedJsonException.TOOBJ_ERROR, e);
+            }
+        }
+
+        /**
+         * <pre>
+         * Write an object as UTF-8 JSON to a stream without an intermediate string.
+         * The stream is NOT closed.
+         * </pre>
+         */
+        public default void write(Object pObj, OutputStream pOut) throws UncheckedJsonException {
+            try {
+                pOut.write(toString(pObj).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedJsonException(UncheckedJsonException.TOJSON_ERROR, e);
+            }
+        }
+
+        /**
+         * <pre>
+         * Convert a value e.g. a map of fields to an object of the given type.
+         * The default implementation writes and parses the value,
+         * a tool that converts in memory should override it.
+         * </pre>
+         */
+        public default <T> T convert(Object pValue, Class<T> pType) throws UncheckedJsonException {
+            ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+            write(pValue, lOut);
+            return toObject(lOut.toByteArray(), pType);
+        }
+
         /**
          */
         public default Object getNativeTool() {
@@ -553,6 +764,7 @@ public class JamnServer {
         protected Config config;
         protected String encoding = StandardCharsets.UTF_8.name();
         protected boolean keepAliveEnabled = false;
+        protected SocketResumer connectionResumer = null;
 
         /**
          */
@@ -632,7 +844,7 @@ public class JamnServer {
                     lResponse.contextData.add(lHeaderText);
 
                     lRequest = new RequestMessage(newHeader(lHeaderText));
-                    lRequest.setBody(readBody(lInStream, lRequest.getContentLength(), lRequest.getEncoding()));
+                    lRequest.setBody(readBody(lInStream, lRequest.getContentLength()));
 
                     // comfort method restricted to localhost access
                     if (config.isAllowAllCORSEnabled() && HttpHeader.isLocalhost(lRequest.header().getHost())) {
@@ -653,12 +865,19 @@ public class JamnServer {
                             lContentProvider.handleContentProcessing(lRequest, pSocket, pComData);
                         } else {
                             keepAlive = checkForKeepAliveConnection(lRequest, lResponse);
+                            lResponse.asyncCloser = newAsyncCloser(pSocket, lInStream, keepAlive);
 
                             // create and send the response content
                             lContentProvider = getContentProviderFor(lRequest);
                             lContentProvider.handleContentProcessing(lRequest, lResponse);
-                            if (lResponse.isNotProcessed()) {
+                            if (lResponse.isAsync()) {
+                                // the response completes later and closes or resumes the socket
+                                pComData.put(SOCKET_DETACHED, "true");
+                                keepAlive = false;
+                            } else if (lResponse.isNotProcessed()) {
                                 lResponse.send();
+                            } else if (lResponse.isAborted()) {
+                                keepAlive = false;
                             }
                             usage++;
                         }
@@ -689,6 +908,33 @@ public class JamnServer {
             messagePreprocessor = pHandler;
         }
 
+        /**
+         */
+        @Override
+        public void setConnectionResumer(SocketResumer pResumer) {
+            connectionResumer = pResumer;
+        }
+
+        /**
+         * <pre>
+         * A keep-alive connection is resumed after a complete asynchronous response.
+         * Input read ahead with the current request would be lost,
+         * so the connection is closed in that case.
+         * The check is done while the request thread still owns the input.
+         * </pre>
+         */
+        protected SocketCloser newAsyncCloser(Socket pSocket, InputStream pIn, boolean pKeepAlive)
+                throws IOException {
+            boolean lResumable = pKeepAlive && connectionResumer != null && pIn.available() == 0;
+            return (boolean pReusable) -> {
+                if (pReusable && lResumable) {
+                    connectionResumer.resume(pSocket);
+                } else {
+                    closeClientSocket(pSocket);
+                }
+            };
+        }
+
         /**
          */
         @Override
@@ -769,7 +1015,7 @@ public class JamnServer {
          * Tries to blocking read the request body from the socket InputStream.
          * </pre>
          */
-        protected String readBody(InputStream pInStream, int pContentLength, String pEncoding) throws IOException {
+        protected byte[] readBody(InputStream pInStream, int pContentLength) throws IOException {
             ByteArrayOutputStream lByteBuffer = new ByteArrayOutputStream();
             int lByte = 0;
             int lActual = 0;
@@ -791,7 +1037,7 @@ public class JamnServer {
                     LOG.warning(() -> msg);
                 }
             }
-            return new String(lByteBuffer.toByteArray(), pEncoding);
+            return lByteBuffer.toByteArray();
         }
 
         /**
@@ -956,7 +1202,10 @@ public class JamnServer {
             public static final String SC_404_NOT_FOUND = "404";
             public static final String SC_405_METHOD_NOT_ALLOWED = "405";
             public static final String SC_408_TIMEOUT = "408";
+            public static final String SC_429_TOO_MANY_REQUESTS = "429";
             public static final String SC_500_INTERNAL_ERROR = "500";
+            public static final String SC_503_SERVICE_UNAVAILABLE = "503";
+            public static final String SC_504_GATEWAY_TIMEOUT = "504";
 
             public static final Map<String, String> TEXT;
             static {
@@ -972,8 +1221,10 @@ public class JamnServer {
                 lMap.put("406", "Not Acceptable");
                 lMap.put("408", "Request Timeout");
                 lMap.put("411", "Length Required");
+                lMap.put("429", "Too Many Requests");
                 lMap.put("500", "Internal Server Error");
                 lMap.put("503", "Service Unavailable");
+                lMap.put("504", "Gateway Timeout");
                 TEXT = Collections.unmodifiableMap(lMap);
             }
         }
@@ -1005,6 +1256,12 @@ public class JamnServer {
             public static final String UPGRADE = "Upgrade";
             public static final String SET_COOKIE = "Set-Cookie";
             public static final String COOKIE = "Cookie";
+            public static final String CACHE_CONTROL = "Cache-Control";
+            public static final String ACCEPT_ENCODING = "Accept-Encoding";
+            public static final String CONTENT_ENCODING = "Content-Encoding";
+            public static final String VARY = "Vary";
+            public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+            public static final String LINK = "Link";
 
             public static final String ACCESS_CONTROL_REQUEST_METHOD = "Access-Control-Request-Method";
             public static final String ACCESS_CONTROL_REQUEST_HEADERS = "Access-Control-Request-Headers";
@@ -1045,10 +1302,14 @@ public class JamnServer {
             public static final String TEXT_CSS = "text/css";
             public static final String TEXT_JS = "text/javascript";
             public static final String APPLICATION_JSON = "application/json";
+            public static final String APPLICATION_NDJSON = "application/x-ndjson";
             public static final String IMAGE = "image/";
             public static final String IMAGE_PNG = "image/png";
             public static final String IMAGE_X_ICON = "image/x-icon";
             public static final String IMAGE_SVG_XML = "image/svg+xml";
+            public static final String CACHE_CONTROL_IMMUTABLE = "public, max-age=31536000, immutable";
+            public static final String GZIP = "gzip";
+            public static final String CHUNKED = "chunked";
             public static final String ACCESS_CONTROL_ALLOW_ORIGIN_ALL = "*";
             public static final String ACCESS_CONTROL_ALLOW_METHODS_ALL = "*";
             public static final String ACCESS_CONTROL_ALLOW_HEADERS_ALL = "*";
@@ -1104,6 +1365,13 @@ public class JamnServer {
             return this;
         }
 
+        /**
+         */
+        public HttpHeader remove(String pKey) {
+            fieldMap.remove(pKey);
+            return this;
+        }
+
         /**
          */
         public String get(String pKey, String... pDefault) {
@@ -1321,6 +1589,9 @@ public class JamnServer {
     public static class RequestMessage {
         protected HttpHeader httpHeader = null;
         protected String bodyContent = "";
+        // the raw body is decoded to a string only on demand
+        protected byte[] bodyData = null;
+        protected Map<String, List<String>> queryParameters = null;
 
         public RequestMessage(HttpHeader pHeader) {
             httpHeader = pHeader;
@@ -1335,13 +1606,41 @@ public class JamnServer {
         /**
          */
         public String body() {
+            if (bodyContent == null) {
+                try {
+                    bodyContent = new String(bodyData, getEncoding());
+                } catch (UnsupportedEncodingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
             return bodyContent;
         }
 
+        /**
+         */
+        public byte[] bodyData() {
+            if (bodyData == null) {
+                try {
+                    bodyData = bodyContent.getBytes(getEncoding());
+                } catch (UnsupportedEncodingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return bodyData;
+        }
+
         /**
          */
         public void setBody(String pBody) {
             bodyContent = pBody;
+            bodyData = null;
+        }
+
+        /**
+         */
+        public void setBody(byte[] pBody) {
+            bodyData = pBody;
+            bodyContent = null;
         }
 
         /**
@@ -1368,12 +1667,70 @@ public class JamnServer {
             return httpHeader.getPath();
         }
 
+        /**
+         */
+        public String getPathWithoutQuery() {
+            return stripQuery(httpHeader.getPath());
+        }
+
+        /**
+         * The decoded query string parameters of the request path.
+         */
+        public Map<String, List<String>> getQueryParameters() {
+            if (queryParameters == null) {
+                queryParameters = parseQueryParameters(httpHeader.getPath(), getEncoding());
+            }
+            return queryParameters;
+        }
+
+        /**
+         */
+        public static String stripQuery(String pPath) {
+            int idx = pPath.indexOf('?');
+            return idx == -1 ? pPath : pPath.substring(0, idx);
+        }
+
+        /**
+         * <pre>
+         * Parse the query part of a path like "/doc?name=a&tag=x&tag=y"
+         * into a map of parameter names and their values.
+         * </pre>
+         */
+        public static Map<String, List<String>> parseQueryParameters(String pPath, String pEncoding) {
+            Map<String, List<String>> lParams = new LinkedHashMap<>();
+            int idx = pPath.indexOf('?');
+            if (idx == -1 || idx == pPath.length() - 1) {
+                return lParams;
+            }
+
+            try {
+                for (String lPair : pPath.substring(idx + 1).split("&")) {
+                    if (!lPair.isEmpty()) {
+                        int lSep = lPair.indexOf('=');
+                        String lName = URLDecoder.decode(lSep == -1 ? lPair : lPair.substring(0, lSep), pEncoding);
+                        String lValue = lSep == -1 ? "" : URLDecoder.decode(lPair.substring(lSep + 1), pEncoding);
+                        lParams.computeIfAbsent(lName, k -> new ArrayList<>()).add(lValue);
+                    }
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new UncheckedIOException(e);
+            }
+            return lParams;
+        }
+
         /**
          */
         public String getMethod() {
             return httpHeader.getMethod();
         }
 
+        /**
+         * The version number of the request e.g. "1.1".
+         */
+        public String getHttpVersion() {
+            return httpHeader.get(HttpHeader.Field.HTTP_VERSION);
+        }
+
         /**
          */
         public boolean isMethod(String pVal) {
@@ -1396,8 +1753,16 @@ public class JamnServer {
         protected HttpHeader httpHeader = new HttpHeader();
         protected OutputStream outStream;
         protected ByteArrayOutputStream contentBuffer;
+        // content e.g. from memory mapped or off heap files
+        protected List<ByteBuffer> contentBuffers;
         protected String statusNr = "";
         protected boolean isProcessed = false;
+        // asynchronous completion
+        protected volatile boolean isAsync = false;
+        protected SocketCloser asyncCloser = null;
+        // streamed content
+        protected OutputStream streamOut = null;
+        protected boolean isAborted = false;
 
         protected String encoding = StandardCharsets.UTF_8.name();
 
@@ -1473,10 +1838,59 @@ public class JamnServer {
             getContentBuffer().write(pContent);
         }
 
+        /**
+         * The stream to write content directly e.g. by a JSON tool.
+         */
+        public OutputStream getContentStream() {
+            return getContentBuffer();
+        }
+
+        /**
+         * The number of content bytes written so far.
+         */
+        public long getContentSize() {
+            long lSize = contentBuffer != null ? contentBuffer.size() : 0;
+            if (contentBuffers != null) {
+                for (ByteBuffer lBuffer : contentBuffers) {
+                    lSize += lBuffer.remaining();
+                }
+            }
+            return lSize;
+        }
+
+        /**
+         * Discard any content written so far e.g. in case of an error.
+         */
+        public void resetContent() {
+            if (contentBuffer != null) {
+                contentBuffer.reset();
+            }
+            contentBuffers = null;
+        }
+
+        /**
+         * <pre>
+         * Add content buffers e.g. slices of a memory mapped file.
+         * The buffers are written without creating a byte array of the whole body.
+         * </pre>
+         */
+        public void writeToContent(ByteBuffer... pContent) {
+            if (contentBuffers == null) {
+                contentBuffers = new ArrayList<>();
+            }
+            for (ByteBuffer lBuffer : pContent) {
+                contentBuffers.add(lBuffer.duplicate());
+            }
+        }
+
         /**
          */
         public void send() throws IOException {
-            writeOutResponse(outStream, getContentBuffer().toByteArray());
+            if (contentBuffers != null) {
+                writeOutBufferResponse(outStream, contentBuffers);
+            } else {
+                writeOutResponse(outStream, getContentBuffer().toByteArray());
+            }
         }
 
         /**
@@ -1487,11 +1901,113 @@ public class JamnServer {
         }
 
         /**
+         * <pre>
+         * Detach the response from the request thread.
+         * After completeAsync() was called a keep-alive connection
+         * is handed back to the request handling, any other is closed.
+         * </pre>
          */
-        public void close() throws IOException {
+        public void startAsync() {
+            if (!isAsyncSupported()) {
+                throw new IllegalStateException(String.format(
+                        "Asynchronous response not supported by the request processing: %s", contextData));
+            }
+            isAsync = true;
+        }
+
+        /**
+         */
+        public boolean isAsyncSupported() {
+            return asyncCloser != null;
+        }
+
+        /**
+         */
+        public boolean isAsync() {
+            return isAsync;
+        }
+
+        /**
+         * Send an asynchronous response and finish the connection.
+         */
+        public synchronized void completeAsync() throws IOException {
+            boolean lReusable = !isAborted && !isStreaming();
+            try {
+                if (!lReusable) {
+                    httpHeader.setConnectionClose();
+                }
+                send();
+                outStream.flush();
+            } catch (IOException e) {
+                lReusable = false;
+                throw e;
+            } finally {
+                asyncCloser.close(lReusable);
+            }
+        }
+
+        /**
+         * <pre>
+         * Send the header and return a stream for content of unknown length.
+         * Chunked transfer encoding requires a HTTP/1.1 request,
+         * otherwise the end of the content is marked by closing the connection.
+         * </pre>
+         */
+        public OutputStream startStream(boolean pChunked) throws IOException {
+            httpHeader.remove(HttpHeader.Field.CONTENT_LENGTH);
+            if (pChunked) {
+                httpHeader.setHttpVersion(HttpHeader.Field.HTTP_1_1);
+                httpHeader.set(HttpHeader.Field.TRANSFER_ENCODING, HttpHeader.FieldValue.CHUNKED);
+                streamOut = new ChunkedOutputStream(outStream);
+            } else {
+                httpHeader.setConnectionClose();
+                isAborted = true;
+                streamOut = outStream;
+            }
+
+            LOG.fine(this::requestSummary);
+            contextData.add(0, "<-- ALREADY SENT -->");
+            outStream.write(httpHeader.toMessageBytes(encoding));
+            setProcessed();
+            return streamOut;
+        }
+
+        /**
+         */
+        public boolean isStreaming() {
+            return streamOut != null;
+        }
+
+        /**
+         */
+        public void finishStream() throws IOException {
+            if (streamOut instanceof ChunkedOutputStream lChunked) {
+                lChunked.finish();
+            }
             outStream.flush();
         }
 
+        /**
+         * Mark the response as incomplete - the connection must NOT be reused.
+         */
+        public void abort() {
+            isAborted = true;
+        }
+
+        /**
+         */
+        public boolean isAborted() {
+            return isAborted;
+        }
+
+        /**
+         */
+        public void close() throws IOException {
+            if (!isAsync) {
+                outStream.flush();
+            }
+        }
+
         /**
          * @throws IOException
          */
@@ -1504,6 +2020,44 @@ public class JamnServer {
             pOut.flush();
         }
 
+        /**
+         * @throws IOException
+         */
+        protected void writeOutBufferResponse(OutputStream pOut, List<ByteBuffer> pBody) throws IOException {
+            List<ByteBuffer> lBody = new ArrayList<>(pBody);
+            if (contentBuffer != null && contentBuffer.size() > 0) {
+                lBody.add(0, ByteBuffer.wrap(contentBuffer.toByteArray()));
+            }
+            long lBodyLen = lBody.stream().mapToLong(ByteBuffer::remaining).sum();
+            httpHeader.setContentLength(String.valueOf(lBodyLen));
+
+            LOG.fine(this::requestSummary);
+            contextData.add(0, "<-- ALREADY SENT -->");
+            pOut.write(httpHeader.toMessageBytes(encoding));
+            writeBuffers(pOut, lBody);
+            pOut.flush();
+        }
+
+        /**
+         * Buffers without a backing array are transferred by a small chunk array.
+         */
+        protected static void writeBuffers(OutputStream pOut, List<ByteBuffer> pBuffers) throws IOException {
+            byte[] lChunk = null;
+            for (ByteBuffer lBuffer : pBuffers) {
+                if (lBuffer.hasArray()) {
+                    pOut.write(lBuffer.array(), lBuffer.arrayOffset() + lBuffer.position(), lBuffer.remaining());
+                    lBuffer.position(lBuffer.limit());
+                } else {
+                    lChunk = lChunk == null ? new byte[8192] : lChunk;
+                    while (lBuffer.hasRemaining()) {
+                        int lLen = Math.min(lChunk.length, lBuffer.remaining());
+                        lBuffer.get(lChunk, 0, lLen);
+                        pOut.write(lChunk, 0, lLen);
+                    }
+                }
+            }
+        }
+
         /**
          */
         protected String requestSummary() {
@@ -1549,6 +2103,7 @@ public class JamnServer {
         public static final String HTTP_ALLOW_ALL_CORS_ENABLED = "http.allow.all.cors.enabled";
         public static final String CLIENT_SOCKET_TIMEOUT = "client.socket.timeout";
         public static final String CONNECTION_KEEP_ALIVE = "connection.keep.alive";
+        public static final String SOCKET_CHANNEL_ENABLED = "socket.channel.enabled";
 
         public static final String DEFAULT_CONFIG = String.join(LF,
                 "##",
@@ -1558,6 +2113,7 @@ public class JamnServer {
                 "#Max worker threads", "worker=5", "",
                 "#Socket timeout in millis", "client.socket.timeout=500", "",
                 "#Use Connection:keep-alive header", "connection.keep.alive=true", "",
+                "#Channel based sockets - no effect for SSL", SOCKET_CHANNEL_ENABLED + "=false", "",
                 "#Encoding", "encoding=" + StandardCharsets.UTF_8.name(), "",
                 "#A Global Cross origin flag\n#if=true ALL cors requests are allowed",
                 HTTP_ALLOW_ALL_CORS_ENABLED + "=false", "");
@@ -1632,6 +2188,19 @@ public class JamnServer {
             props.setProperty(HTTP_ALLOW_ALL_CORS_ENABLED, String.valueOf(pVal));
         }
 
+        /**
+         */
+        public boolean isSocketChannelEnabled() {
+            return Boolean.parseBoolean(props.getProperty(SOCKET_CHANNEL_ENABLED, "false"));
+        }
+
+        /**
+         */
+        public Config setSocketChannelEnabled(boolean pVal) {
+            props.setProperty(SOCKET_CHANNEL_ENABLED, String.valueOf(pVal));
+            return this;
+        }
+
         /**
          */
         public boolean isConnectionKeepAlive() {
@@ -1758,11 +2327,103 @@ public class JamnServer {
             return applyValues(pTemplate, this.provider, pCtx);
         }
 
+        /**
+         * <pre>
+         * Compile a template once by resolving all static expressions
+         * and keeping the dynamic ones as slots for a later rendering.
+         * </pre>
+         */
+        public static CompiledTemplate compile(String pTemplate, ValueProvider pProvider, Object pCtx) {
+            CompiledTemplate lTemplate = new CompiledTemplate();
+            StringBuilder lPart = new StringBuilder();
+            String lName = "";
+            Matcher lMatcher = ExprPattern.matcher(pTemplate);
+
+            int lCurrentPos = 0;
+            while (lMatcher.find()) {
+                lPart.append(pTemplate, lCurrentPos, lMatcher.start());
+                lName = lMatcher.group().replace(PatternStart, "").replace(PatternEnd, "").trim();
+                if (lName.contains(" ")) {
+                    throw new UncheckedExprStringException(
+                            String.format("ExprString contains whitespace(s) [%s]", lName));
+                }
+                if (pProvider.isDynamic(lName)) {
+                    lTemplate.parts.add(lPart.toString());
+                    lTemplate.keys.add(lName);
+                    lPart.setLength(0);
+                } else {
+                    lPart.append(pProvider.getValueFor(lName, pCtx));
+                }
+                lCurrentPos = lMatcher.end();
+            }
+            lPart.append(pTemplate, lCurrentPos, pTemplate.length());
+            lTemplate.parts.add(lPart.toString());
+            return lTemplate;
+        }
+
         /**
          * The Value Provider provides the values for the expression substitution.
          */
         public static interface ValueProvider {
             String getValueFor(String pKey, Object pCtx);
+
+            /**
+             * Dynamic values are NOT resolved when compiling a template
+             * but every time it is rendered.
+             */
+            default boolean isDynamic(String pKey) {
+                return false;
+            }
+        }
+
+        /**
+         * <pre>
+         * A pre parsed template consisting of static text parts
+         * with dynamic expression keys in between.
+         * </pre>
+         */
+        public static class CompiledTemplate {
+            protected List<String> parts = new ArrayList<>();
+            protected List<String> keys = new ArrayList<>();
+
+            protected CompiledTemplate() {
+            }
+
+            /**
+             */
+            public boolean isStatic() {
+                return keys.isEmpty();
+            }
+
+            /**
+             */
+            public List<String> getKeys() {
+                return Collections.unmodifiableList(keys);
+            }
+
+            /**
+             */
+            public List<String> getParts() {
+                return Collections.unmodifiableList(parts);
+            }
+
+            /**
+             * Apply a text function e.g. a rewriting to all static parts.
+             */
+            public CompiledTemplate mapParts(UnaryOperator<String> pFunction) {
+                parts.replaceAll(pFunction);
+                return this;
+            }
+
+            /**
+             */
+            public String render(ValueProvider pProvider, Object pCtx) {
+                StringBuilder lResult = new StringBuilder(parts.get(0));
+                for (int i = 0; i < keys.size(); i++) {
+                    lResult.append(pProvider.getValueFor(keys.get(i), pCtx)).append(parts.get(i + 1));
+                }
+                return lResult.toString();
+            }
         }
 
         /**
@@ -1,6 +1,13 @@
 /* Authored by iqbserve.de */
 package org.isa.ipc;
 
+import static org.isa.ipc.JamnServer.HttpHeader.Field.ACCEPT_ENCODING;
+import static org.isa.ipc.JamnServer.HttpHeader.Field.CACHE_CONTROL;
+import static org.isa.ipc.JamnServer.HttpHeader.Field.CONTENT_ENCODING;
+import static org.isa.ipc.JamnServer.HttpHeader.Field.LINK;
+import static org.isa.ipc.JamnServer.HttpHeader.Field.VARY;
+import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.CACHE_CONTROL_IMMUTABLE;
+import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.GZIP;
 import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.IMAGE;
 import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.IMAGE_SVG_XML;
 import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.IMAGE_X_ICON;
@@ -13,18 +20,43 @@ import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_404_NOT_FOUND;
 import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_500_INTERNAL_ERROR;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import org.isa.ipc.JamnServer.Config;
 import org.isa.ipc.JamnServer.ExprString;
+import org.isa.ipc.JamnServer.ExprString.CompiledTemplate;
 import org.isa.ipc.JamnServer.ExprString.ValueProvider;
 import org.isa.ipc.JamnServer.JsonToolWrapper;
 import org.isa.ipc.JamnServer.RequestMessage;
@@ -45,6 +77,7 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
     protected static boolean DvlpMode = true;
 
     protected JsonToolWrapper jsonTool;
+    protected boolean developmentMode = DvlpMode;
 
     protected Config config = new Config();
     protected String webroot;
@@ -71,12 +104,23 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
      * A fileEnricher is used by the fileProvider
      * to modify the file/resource content before provision.
      * By default files can be marked as templates with placeholders like ${name} that become resolved.
+     * Dynamic placeholders are kept and rendered per request - see DefaultFileEnricher.
      * </pre>
      */
     protected FileEnricher fileEnricher = (WebFile pFile) -> {
         //see DefaultFileEnricher
     };
 
+    /**
+     * An optional stage after the fileEnricher - see AssetPipeline.
+     */
+    protected AssetPipeline assetPipeline = null;
+
+    /**
+     * An optional ES module dependency graph to emit modulepreload links - see ModuleGraph.
+     */
+    protected ModuleGraph moduleGraph = null;
+
     /**
      * A rudimentary file cache. 
      */
@@ -121,6 +165,14 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
         return this;
     }
 
+    /**
+     * Development mode disables the file cache.
+     */
+    public JamnWebContentProvider setDevelopmentMode(boolean pMode) {
+        developmentMode = pMode;
+        return this;
+    }
+
     /**
      */
     public JamnWebContentProvider setFileEnricher(FileEnricher pFileEnricher) {
@@ -128,6 +180,24 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
         return this;
     }
 
+    /**
+     */
+    public JamnWebContentProvider setAssetPipeline(AssetPipeline pPipeline) {
+        assetPipeline = pPipeline;
+        if (assetPipeline != null) {
+            assetPipeline.provider = this;
+        }
+        return this;
+    }
+
+    /**
+     * Emit Link modulepreload headers for the static imports of pages and modules.
+     */
+    public JamnWebContentProvider setModulePreloadEnabled(boolean pEnabled) {
+        moduleGraph = pEnabled ? new ModuleGraph(this) : null;
+        return this;
+    }
+
     /**
      */
     public JamnWebContentProvider setFileCache(FileCache fileCache) {
@@ -176,8 +246,11 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
             if (pRequest.isMethod("GET")) {
                 lContent = getFileContent(pRequest.getPath(), pResponse);
 
-                if (!lContent.isEmpty()) {
-                    pResponse.writeToContent(lContent.getData());
+                if (lContent.isDynamic()) {
+                    // cached templates get their request specific values
+                    pResponse.writeToContent(fileEnricher.render(lContent, pRequest));
+                } else if (!lContent.isEmpty()) {
+                    writeContent(lContent, pRequest, pResponse);
                 } else {
                     pResponse.setStatus(SC_204_NO_CONTENT);
                 }
@@ -202,34 +275,66 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
     protected WebFile getFileContent(String pRequestPath, ResponseMessage pResponse)
             throws WebContentException {
         String lDecodedPath = fileHelper.decodeRequestPath(pRequestPath);
+        String lOriginalPath = null;
+        WebFile lWebFile;
+
+        // by default html is assumed
+        pResponse.setContentType(TEXT_HTML);
+
+        if (assetPipeline != null && (lOriginalPath = assetPipeline.getOriginalPathFor(lDecodedPath)) != null) {
+            // content hash fingerprinted urls never change their content
+            if (assetPipeline.isFingerprinted(lDecodedPath)) {
+                pResponse.header().set(CACHE_CONTROL, CACHE_CONTROL_IMMUTABLE);
+            }
+            lDecodedPath = lOriginalPath;
+        }
+
+        lWebFile = getWebFile(lDecodedPath);
+        pResponse.setContentType(lWebFile.getContentType());
+
+        if (moduleGraph != null && !developmentMode) {
+            String lLinks = moduleGraph.getPreloadLinksFor(lWebFile.getRequestPath());
+            if (!lLinks.isEmpty()) {
+                pResponse.header().set(LINK, lLinks);
+            }
+        }
+        return lWebFile;
+    }
 
+    /**
+     * Get a cached or a newly read and enriched web file for a decoded request path.
+     */
+    protected WebFile getWebFile(String pDecodedPath) throws WebContentException {
         // the decoded path gets the unique id/requestPath of the requested file
-        WebFile lWebFile = new WebFile(lDecodedPath);
+        WebFile lWebFile = new WebFile(pDecodedPath);
 
-        if (!DvlpMode && fileCache.contains(lWebFile.getId())) {
-            lWebFile = fileCache.get(lWebFile.getId());
-            pResponse.setContentType(lWebFile.getContentType());
-            return lWebFile;
+        if (!developmentMode && fileCache.contains(lWebFile.getId())) {
+            return fileCache.get(lWebFile.getId());
         }
 
-        lWebFile.filePath = getFilePathFor(fileHelper.doPathMapping(lDecodedPath));
+        lWebFile.filePath = getFilePathFor(fileHelper.doPathMapping(pDecodedPath));
 
         try {
             // by default html is assumed
-            pResponse.setContentType(TEXT_HTML);
-
-            if (fileHelper.isStyleSheet(lDecodedPath)) {
-                pResponse.setContentType(TEXT_CSS);
-            } else if (fileHelper.isJavaScript(lDecodedPath)) {
-                pResponse.setContentType(TEXT_JS);
-            } else if (fileHelper.isImage(lDecodedPath)) {
-                pResponse.setContentType(fileHelper.getImageTypeFrom(lWebFile.filePath));
+            lWebFile.setContentType(TEXT_HTML);
+
+            if (fileHelper.isStyleSheet(pDecodedPath)) {
+                lWebFile.setContentType(TEXT_CSS);
+            } else if (fileHelper.isJavaScript(pDecodedPath)) {
+                lWebFile.setContentType(TEXT_JS);
+            } else if (fileHelper.isImage(pDecodedPath)) {
+                lWebFile.setContentType(fileHelper.getImageTypeFrom(lWebFile.filePath));
                 lWebFile.setTextFormat(false);
             }
 
-            lWebFile.setContentType(pResponse.getContentType());
             fileProvider.readAllFileBytes(lWebFile);
             fileEnricher.enrich(lWebFile);
+            if (assetPipeline != null) {
+                assetPipeline.enrich(lWebFile);
+            }
+            if (moduleGraph != null && !developmentMode) {
+                moduleGraph.scan(lWebFile);
+            }
             if(cacheableChecker.test(lWebFile)){
                 fileCache.put(lWebFile.requestPath, lWebFile);
             }
@@ -242,6 +347,39 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
         return lWebFile;
     }
 
+    /**
+     * Write the file body - gzip encoded if available and accepted by the client.
+     */
+    protected void writeContent(WebFile pFile, RequestMessage pRequest, ResponseMessage pResponse)
+            throws IOException {
+        if (pFile.hasGzipData()) {
+            pResponse.header().set(VARY, ACCEPT_ENCODING);
+            if (acceptsGzip(pRequest)) {
+                pResponse.header().set(CONTENT_ENCODING, GZIP);
+                pResponse.writeToContent(pFile.getGzipData());
+                return;
+            }
+        }
+        if (pFile.hasDataBuffer()) {
+            pResponse.writeToContent(pFile.getDataBuffer());
+        } else {
+            pResponse.writeToContent(pFile.getData());
+        }
+    }
+
+    /**
+     */
+    protected boolean acceptsGzip(RequestMessage pRequest) {
+        String lAccepted = pRequest.header().get(ACCEPT_ENCODING, pRequest.header().get(ACCEPT_ENCODING.toLowerCase()));
+        for (String lEncoding : lAccepted.split(",")) {
+            String[] lParts = lEncoding.trim().split(";");
+            if (lParts[0].trim().equalsIgnoreCase(GZIP)) {
+                return !(lParts.length > 1 && lParts[1].trim().matches("q\\s*=\\s*0(\\.0*)?"));
+            }
+        }
+        return false;
+    }
+
     /**
      */
     protected String getFilePathFor(String pRequestPath) {
@@ -266,6 +404,14 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
      */
     public static interface FileEnricher {
         void enrich(WebFile pFile);
+
+        /**
+         * Render the request specific content of a file that was made dynamic by
+         * the enricher.
+         */
+        default byte[] render(WebFile pFile, RequestMessage pRequest) {
+            return pFile.getData();
+        }
     }
 
     /**
@@ -346,18 +492,47 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
         protected String filePath = "";
         protected String contentType = "";
         protected byte[] data = new byte[0];
+        // an alternative body e.g. a slice of a memory mapped archive
+        protected ByteBuffer dataBuffer = null;
+        // an optional gzip encoded body
+        protected ByteBuffer[] gzipData = null;
         protected boolean isTextFormat = true;
+        // a template with dynamic values rendered per request
+        protected CompiledTemplate template = null;
 
         public WebFile(String pPath) {
             requestPath = pPath;
         }
 
+        /**
+         * A shallow copy sharing the content.
+         */
+        public WebFile copy() {
+            WebFile lCopy = new WebFile(requestPath);
+            lCopy.filePath = filePath;
+            lCopy.contentType = contentType;
+            lCopy.data = data;
+            lCopy.dataBuffer = dataBuffer != null ? dataBuffer.duplicate() : null;
+            lCopy.gzipData = gzipData;
+            lCopy.isTextFormat = isTextFormat;
+            lCopy.template = template;
+            return lCopy;
+        }
+
         public String getId() {
             return requestPath;
         }
 
         public boolean isEmpty() {
-            return data.length == 0;
+            return getLength() == 0;
+        }
+
+        public int getLength() {
+            return dataBuffer != null ? dataBuffer.remaining() : data.length;
+        }
+
+        public boolean isDynamic() {
+            return template != null;
         }
 
         public String toString() {
@@ -388,12 +563,56 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
             this.contentType = contentType;
         }
 
+        /**
+         * A buffer body is returned as a fresh copy on each access - the file
+         * itself is NOT changed because cached instances are shared.
+         */
         public byte[] getData() {
+            if (dataBuffer != null) {
+                byte[] lData = new byte[dataBuffer.remaining()];
+                dataBuffer.duplicate().get(lData);
+                return lData;
+            }
             return data;
         }
 
         public void setData(byte[] data) {
             this.data = data;
+            dataBuffer = null;
+            gzipData = null;
+        }
+
+        public void setData(ByteBuffer pData) {
+            data = new byte[0];
+            dataBuffer = pData.asReadOnlyBuffer();
+            gzipData = null;
+        }
+
+        public boolean hasDataBuffer() {
+            return dataBuffer != null;
+        }
+
+        public ByteBuffer getDataBuffer() {
+            return dataBuffer != null ? dataBuffer.duplicate() : ByteBuffer.wrap(data);
+        }
+
+        public boolean hasGzipData() {
+            return gzipData != null;
+        }
+
+        /**
+         * The gzip body parts e.g. header, deflated data and trailer.
+         */
+        public ByteBuffer[] getGzipData() {
+            ByteBuffer[] lParts = new ByteBuffer[gzipData.length];
+            for (int i = 0; i < gzipData.length; i++) {
+                lParts[i] = gzipData[i].duplicate();
+            }
+            return lParts;
+        }
+
+        public void setGzipData(ByteBuffer... pParts) {
+            gzipData = pParts;
         }
 
         public boolean isTextFormat() {
@@ -403,6 +622,270 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
         public void setTextFormat(boolean isTextFormat) {
             this.isTextFormat = isTextFormat;
         }
+
+        public CompiledTemplate getTemplate() {
+            return template;
+        }
+
+        public void setTemplate(CompiledTemplate template) {
+            this.template = template;
+        }
+    }
+
+    /**
+     * <pre>
+     * A FileCache keeping the file bodies off heap in direct ByteBuffers
+     * so only the metadata stays on the heap and cached content does not add GC costs.
+     * 
+     * Bodies that are already direct, e.g. slices of a memory mapped archive, are kept as they are.
+     * The cache returns copies sharing the buffers, so the provider writes them
+     * to the response without creating heap arrays.
+     * Files beyond the optional size limit are not cached.
+     * </pre>
+     */
+    public static class OffHeapFileCache implements FileCache {
+        protected Map<String, WebFile> cacheMap = new ConcurrentHashMap<>();
+        protected long maxSize;
+        protected AtomicLong size = new AtomicLong();
+
+        public OffHeapFileCache() {
+            this(Long.MAX_VALUE);
+        }
+
+        public OffHeapFileCache(long pMaxSize) {
+            maxSize = pMaxSize;
+        }
+
+        @Override
+        public void put(String pKey, WebFile pFile) {
+            WebFile lEntry = pFile.copy();
+            if (!pFile.isDynamic()) {
+                ByteBuffer lBody = pFile.getDataBuffer();
+                if (size.addAndGet(lBody.remaining()) > maxSize) {
+                    size.addAndGet(-lBody.remaining());
+                    LOG.fine(() -> String.format("OffHeapFileCache size limit reached - NOT caching [%s]", pKey));
+                    return;
+                }
+                lEntry.setData(toDirectBuffer(lBody));
+                if (pFile.hasGzipData()) {
+                    lEntry.setGzipData(pFile.getGzipData());
+                }
+            }
+            WebFile lOld = cacheMap.put(pKey, lEntry);
+            if (lOld != null && !lOld.isDynamic()) {
+                size.addAndGet(-lOld.getLength());
+            }
+        }
+
+        @Override
+        public boolean contains(String pKey) {
+            return cacheMap.containsKey(pKey);
+        }
+
+        @Override
+        public WebFile get(String pKey) {
+            WebFile lEntry = cacheMap.get(pKey);
+            return lEntry != null ? lEntry.copy() : null;
+        }
+
+        /**
+         * Returns the number of cached off heap bytes.
+         */
+        public long getSize() {
+            return size.get();
+        }
+
+        /**
+         */
+        protected static ByteBuffer toDirectBuffer(ByteBuffer pBuffer) {
+            if (pBuffer.isDirect()) {
+                return pBuffer;
+            }
+            ByteBuffer lBuffer = ByteBuffer.allocateDirect(pBuffer.remaining());
+            lBuffer.put(pBuffer.duplicate()).flip();
+            return lBuffer;
+        }
+    }
+
+    /**
+     * <pre>
+     * A FileProvider serving the web files from one zip or jar archive.
+     * 
+     * The archive is memory mapped read only and its central directory
+     * is indexed once at construction.
+     * - stored entries are provided as slices of the mapping
+     * - deflated entries are inflated for enrichers and clients without gzip support
+     *   AND provided as gzip body made of a header, the unchanged deflate data and a trailer
+     * 
+     * Entries are looked up by the web file path without leading slash.
+     * So a content provider using this file provider is created with an empty webroot
+     * and an optional entry root inside the archive e.g. "http/".
+     * ZIP64 archives are not supported.
+     * </pre>
+     */
+    public static class ArchiveFileProvider implements FileProvider {
+        protected static final int LocalHeaderSig = 0x04034b50;
+        protected static final int CentralHeaderSig = 0x02014b50;
+        protected static final int EndOfCentralDirSig = 0x06054b50;
+        protected static final int Stored = 0;
+        protected static final int Deflated = 8;
+        protected static final ByteBuffer GzipHeader = ByteBuffer
+                .wrap(new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff }).asReadOnlyBuffer();
+
+        protected Path archivePath;
+        protected String entryRoot;
+        protected ByteBuffer mapping;
+        protected Map<String, ArchiveEntry> index = new HashMap<>();
+
+        public ArchiveFileProvider(Path pArchive) throws IOException {
+            this(pArchive, "");
+        }
+
+        public ArchiveFileProvider(Path pArchive, String pEntryRoot) throws IOException {
+            archivePath = pArchive;
+            entryRoot = pEntryRoot;
+            try (FileChannel lChannel = FileChannel.open(pArchive, StandardOpenOption.READ)) {
+                // the mapping stays valid after closing the channel
+                mapping = lChannel.map(FileChannel.MapMode.READ_ONLY, 0, lChannel.size())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            readCentralDirectory();
+            LOG.fine(() -> String.format("ArchiveFileProvider indexed [%s] entries from [%s]", index.size(),
+                    archivePath));
+        }
+
+        @Override
+        public void readAllFileBytes(WebFile pFile) throws IOException {
+            ArchiveEntry lEntry = index.get(getEntryNameFor(pFile));
+            if (lEntry == null) {
+                throw new NoSuchFileException(pFile.getFilePath(), archivePath.toString(), "No archive entry");
+            }
+
+            ByteBuffer lRawData = mapping.slice(lEntry.dataOffset, lEntry.compressedSize);
+            if (lEntry.method == Stored) {
+                pFile.setData(lRawData);
+            } else {
+                pFile.setData(inflate(lRawData, lEntry.size));
+                pFile.setGzipData(GzipHeader.duplicate(), lRawData, createGzipTrailer(lEntry));
+            }
+        }
+
+        /**
+         */
+        public Set<String> getEntryNames() {
+            return Collections.unmodifiableSet(index.keySet());
+        }
+
+        /**
+         */
+        protected String getEntryNameFor(WebFile pFile) {
+            String lPath = pFile.getFilePath();
+            return entryRoot + (lPath.startsWith("/") ? lPath.substring(1) : lPath);
+        }
+
+        /**
+         */
+        protected void readCentralDirectory() throws IOException {
+            int lEndPos = findEndOfCentralDirectory();
+            int lEntries = mapping.getShort(lEndPos + 10) & 0xffff;
+            long lDirOffset = mapping.getInt(lEndPos + 16) & 0xffffffffL;
+            if (lEntries == 0xffff || lDirOffset == 0xffffffffL) {
+                throw new IOException(String.format("ZIP64 archives are not supported [%s]", archivePath));
+            }
+
+            int lPos = (int) lDirOffset;
+            for (int i = 0; i < lEntries; i++) {
+                if (mapping.getInt(lPos) != CentralHeaderSig) {
+                    throw new IOException(String.format("Invalid archive central directory [%s]", archivePath));
+                }
+                int lFlags = mapping.getShort(lPos + 8) & 0xffff;
+                int lNameLen = mapping.getShort(lPos + 28) & 0xffff;
+                int lExtraLen = mapping.getShort(lPos + 30) & 0xffff;
+                int lCommentLen = mapping.getShort(lPos + 32) & 0xffff;
+
+                ArchiveEntry lEntry = new ArchiveEntry();
+                lEntry.method = mapping.getShort(lPos + 10) & 0xffff;
+                lEntry.crc = mapping.getInt(lPos + 16);
+                lEntry.compressedSize = mapping.getInt(lPos + 20);
+                lEntry.size = mapping.getInt(lPos + 24);
+                lEntry.name = getString(lPos + 46, lNameLen);
+                int lLocalPos = mapping.getInt(lPos + 42);
+
+                boolean lEncrypted = (lFlags & 1) != 0;
+                if (!lEntry.name.endsWith("/") && !lEncrypted
+                        && (lEntry.method == Stored || lEntry.method == Deflated)) {
+                    if (mapping.getInt(lLocalPos) != LocalHeaderSig) {
+                        throw new IOException(String.format("Invalid archive entry [%s]", lEntry.name));
+                    }
+                    lEntry.dataOffset = lLocalPos + 30 + (mapping.getShort(lLocalPos + 26) & 0xffff)
+                            + (mapping.getShort(lLocalPos + 28) & 0xffff);
+                    index.put(lEntry.name, lEntry);
+                }
+                lPos += 46 + lNameLen + lExtraLen + lCommentLen;
+            }
+        }
+
+        /**
+         */
+        protected int findEndOfCentralDirectory() throws IOException {
+            int lMinPos = Math.max(0, mapping.capacity() - 22 - 0xffff);
+            for (int lPos = mapping.capacity() - 22; lPos >= lMinPos; lPos--) {
+                if (mapping.getInt(lPos) == EndOfCentralDirSig) {
+                    return lPos;
+                }
+            }
+            throw new IOException(String.format("No zip archive [%s]", archivePath));
+        }
+
+        /**
+         */
+        protected String getString(int pPos, int pLen) {
+            byte[] lBytes = new byte[pLen];
+            mapping.get(pPos, lBytes);
+            return new String(lBytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         */
+        protected static byte[] inflate(ByteBuffer pData, int pSize) throws IOException {
+            byte[] lResult = new byte[pSize];
+            Inflater lInflater = new Inflater(true);
+            try {
+                lInflater.setInput(pData.duplicate());
+                int lLen = 0;
+                while (lLen < pSize && !lInflater.finished()) {
+                    int lCount = lInflater.inflate(lResult, lLen, pSize - lLen);
+                    if (lCount == 0 && lInflater.needsInput()) {
+                        // a dummy byte for nowrap mode
+                        lInflater.setInput(new byte[1]);
+                    }
+                    lLen += lCount;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid deflate archive entry data", e);
+            } finally {
+                lInflater.end();
+            }
+            return lResult;
+        }
+
+        /**
+         */
+        protected static ByteBuffer createGzipTrailer(ArchiveEntry pEntry) {
+            return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(pEntry.crc).putInt(pEntry.size)
+                    .flip().asReadOnlyBuffer();
+        }
+
+        /**
+         */
+        protected static class ArchiveEntry {
+            protected String name;
+            protected int method;
+            protected int crc;
+            protected int compressedSize;
+            protected int size;
+            protected int dataOffset;
+        }
     }
 
     /**
@@ -429,6 +912,11 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
      * This Default enricher first looks for a TemplateMarker at the head/top of the file.
      * If such a marker is present an ExprString is used that calls a ValueProvider
      * for all expressions like ${valuekey}.
+     * 
+     * Static values are resolved once with the WebFile as context.
+     * Keys the ValueProvider declares as dynamic stay in a CompiledTemplate
+     * that is rendered for every request with the RequestMessage as context.
+     * So a file with dynamic values can still be cached.
      * </pre>
      */
     public static class DefaultFileEnricher implements FileEnricher {
@@ -456,26 +944,662 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
             // only process if file has text format and a TEMPLATE_MARKER
             if (pFile.isTextFormat() && hasTemplateMarker(pFile)) {
                 lContent = new String(pFile.getData(), Encoding);
-                lContent = ExprString.applyValues(lContent, valueProvider, pFile);
-                pFile.setData(lContent.getBytes(Encoding));
+                CompiledTemplate lTemplate = ExprString.compile(lContent, valueProvider, pFile);
+                if (lTemplate.isStatic()) {
+                    pFile.setData(lTemplate.render(valueProvider, pFile).getBytes(Encoding));
+                } else {
+                    pFile.setTemplate(lTemplate);
+                }
             }
         }
 
+        @Override
+        public byte[] render(WebFile pFile, RequestMessage pRequest) {
+            return pFile.getTemplate().render(valueProvider, pRequest).getBytes(Encoding);
+        }
+
         /**
+         * <pre>
          * Read the first MarkLen bytes of a file and ckeck for the template marker.
+         * A buffer body is peeked through a view and NOT copied to the heap.
+         * </pre>
          */
         protected boolean hasTemplateMarker(WebFile pFile) {
             String lHead = "";
-            byte[] lBuffer = new byte[MarkLen];
-            if (pFile.getData() != null && pFile.getData().length > MarkLen) {
-                System.arraycopy(pFile.getData(), 0, lBuffer, 0, MarkLen);
-                lHead = new String(lBuffer, Encoding);
+            if (pFile.hasDataBuffer() || pFile.getData() != null) {
+                ByteBuffer lData = pFile.getDataBuffer();
+                if (lData.remaining() > MarkLen) {
+                    byte[] lBuffer = new byte[MarkLen];
+                    lData.get(lBuffer);
+                    lHead = new String(lBuffer, Encoding);
+                }
             }
             return lHead.contains(TemplateMarker);
         }
     }
 
 
+    /**
+     * <pre>
+     * The AssetPipeline is an optional enricher stage running after the fileEnricher
+     * when a file is read - so just once for cached files.
+     * 
+     * - it minifies JavaScript and StyleSheet files by removing comments and whitespace
+     * - it fingerprints the urls of js, css and image assets with a content hash
+     *   e.g. /jsmod/tools.mjs becomes /jsmod/tools.1a2b3c4d5e.mjs
+     *   and rewrites the references in html, modules and stylesheets accordingly.
+     *   Fingerprinted urls are served with an immutable Cache-Control header.
+     * 
+     * Fingerprinting requires the file cache and is inactive in development mode.
+     * Because an ES module must be loaded by one unique url
+     * modules that are part of an import cycle keep their plain url.
+     * For dynamic import() calls all string literals naming a module are rewritten
+     * e.g. import('./a.mjs') or a module path handed over to a loader function.
+     * Module urls computed at runtime are NOT rewritten.
+     * </pre>
+     */
+    public static class AssetPipeline implements FileEnricher {
+        protected static final int HashLen = 10;
+        protected static final String NoFingerprint = "";
+        protected static Charset Encoding = StandardCharsets.UTF_8;
+
+        protected static final Pattern FingerprintPattern = Pattern
+                .compile("\\.[0-9a-f]{" + HashLen + "}(\\.[^./]+)$");
+
+        // all patterns deliver the reference in group 2
+        protected static final List<Pattern> HtmlReferencePatterns = List.of(
+                Pattern.compile("([\"'])([^\"'\\s<>()]+)\\1"));
+        // static imports - import/export ... from '...' and import '...'
+        protected static final List<Pattern> JsImportPatterns = List.of(
+                Pattern.compile("\\b(?:import|export)\\b[^'\";()]*?\\bfrom\\s*(['\"])([^'\"\\r\\n]+)\\1"),
+                Pattern.compile("\\bimport\\s*(['\"])([^'\"\\r\\n]+)\\1"));
+        protected static final List<Pattern> JsReferencePatterns = Stream.concat(JsImportPatterns.stream(),
+                // module path literals e.g. for dynamic imports
+                Stream.of(Pattern.compile("(['\"])([^'\"\\s]+\\.m?js)\\1"))).toList();
+        protected static final List<Pattern> CssReferencePatterns = List.of(
+                Pattern.compile("url\\(\\s*(['\"]?)([^'\")\\s]+)\\1\\s*\\)"),
+                Pattern.compile("@import\\s+(['\"])([^'\"]+)\\1"));
+
+        protected boolean minify;
+        protected boolean fingerprint;
+        protected JamnWebContentProvider provider;
+
+        // request path -> fingerprinted path or NoFingerprint
+        protected Map<String, String> fingerprints = new HashMap<>();
+        // fingerprinted path -> request path
+        protected Map<String, String> originals = new ConcurrentHashMap<>();
+        // files currently rewritten and files found in an import cycle
+        protected Deque<String> inProgress = new ArrayDeque<>();
+        protected Set<String> cyclic = new HashSet<>();
+
+        public AssetPipeline(boolean pMinify, boolean pFingerprint) {
+            minify = pMinify;
+            fingerprint = pFingerprint;
+        }
+
+        /**
+         */
+        public boolean isFingerprintEnabled() {
+            return fingerprint && provider != null && !provider.developmentMode;
+        }
+
+        /**
+         * Returns true if the path is a known fingerprinted url.
+         */
+        public boolean isFingerprinted(String pPath) {
+            return originals.containsKey(pPath);
+        }
+
+        /**
+         * Returns the request path for a fingerprinted url or null.
+         * Unknown fingerprints e.g. from a previous server run are stripped.
+         */
+        public String getOriginalPathFor(String pPath) {
+            String lPath = originals.get(pPath);
+            if (lPath == null && isFingerprintEnabled()) {
+                Matcher lMatcher = FingerprintPattern.matcher(pPath);
+                if (lMatcher.find()) {
+                    lPath = pPath.substring(0, lMatcher.start()) + lMatcher.group(1);
+                }
+            }
+            return lPath;
+        }
+
+        @Override
+        public synchronized void enrich(WebFile pFile) {
+            if (!pFile.isTextFormat()) {
+                return;
+            }
+            List<Pattern> lPatterns = getReferencePatternsFor(pFile);
+
+            if (pFile.isDynamic()) {
+                // only the static template parts are rewritten
+                if (isFingerprintEnabled() && lPatterns != null) {
+                    processReferencing(pFile, () -> pFile.getTemplate()
+                            .mapParts(part -> rewriteReferences(pFile.getRequestPath(), part, lPatterns)));
+                }
+                return;
+            }
+
+            String lContent = new String(pFile.getData(), Encoding);
+            if (minify && TEXT_JS.equals(pFile.getContentType())) {
+                lContent = minifyJavaScript(lContent);
+            } else if (minify && TEXT_CSS.equals(pFile.getContentType())) {
+                lContent = minifyStyleSheet(lContent);
+            }
+
+            if (isFingerprintEnabled() && lPatterns != null) {
+                String[] lResult = new String[] { lContent };
+                processReferencing(pFile,
+                        () -> lResult[0] = rewriteReferences(pFile.getRequestPath(), lResult[0], lPatterns));
+                lContent = lResult[0];
+            }
+            pFile.setData(lContent.getBytes(Encoding));
+        }
+
+        /**
+         */
+        protected List<Pattern> getReferencePatternsFor(WebFile pFile) {
+            if (TEXT_HTML.equals(pFile.getContentType())) {
+                return HtmlReferencePatterns;
+            } else if (TEXT_JS.equals(pFile.getContentType())) {
+                return JsReferencePatterns;
+            } else if (TEXT_CSS.equals(pFile.getContentType())) {
+                return CssReferencePatterns;
+            }
+            return null;
+        }
+
+        /**
+         */
+        protected void processReferencing(WebFile pFile, Runnable pRewriting) {
+            inProgress.push(pFile.getRequestPath());
+            try {
+                pRewriting.run();
+            } finally {
+                inProgress.pop();
+            }
+        }
+
+        /**
+         * Replace all local asset references with their fingerprinted form.
+         */
+        protected String rewriteReferences(String pFilePath, String pContent, List<Pattern> pPatterns) {
+            String lContent = pContent;
+            for (Pattern lPattern : pPatterns) {
+                StringBuilder lResult = new StringBuilder();
+                Matcher lMatcher = lPattern.matcher(lContent);
+                int lCurrentPos = 0;
+                while (lMatcher.find()) {
+                    String lRef = lMatcher.group(2);
+                    String lNewRef = getFingerprintedReference(pFilePath, lRef);
+                    lResult.append(lContent, lCurrentPos, lMatcher.start(2)).append(lNewRef);
+                    lCurrentPos = lMatcher.end(2);
+                }
+                lResult.append(lContent, lCurrentPos, lContent.length());
+                lContent = lResult.toString();
+            }
+            return lContent;
+        }
+
+        /**
+         */
+        protected String getFingerprintedReference(String pFilePath, String pRef) {
+            int lSuffixPos = indexOfAny(pRef, '?', '#');
+            String lRefPath = lSuffixPos > -1 ? pRef.substring(0, lSuffixPos) : pRef;
+
+            if (!isLocalAsset(lRefPath)) {
+                return pRef;
+            }
+            String lPath = resolveReferencePath(pFilePath, lRefPath);
+            if (isFingerprinted(lPath)) {
+                return pRef; // already rewritten by a previous pattern
+            }
+            String lFingerprinted = getFingerprintFor(lPath);
+            if (lFingerprinted.equals(NoFingerprint)) {
+                return pRef;
+            }
+            return new StringBuilder(lRefPath.substring(0, lRefPath.lastIndexOf('/') + 1))
+                    .append(lFingerprinted.substring(lFingerprinted.lastIndexOf('/') + 1))
+                    .append(lSuffixPos > -1 ? pRef.substring(lSuffixPos) : "").toString();
+        }
+
+        /**
+         */
+        protected boolean isLocalAsset(String pRefPath) {
+            if (pRefPath.isEmpty() || pRefPath.contains(":") || pRefPath.startsWith("//")) {
+                return false;
+            }
+            FileHelper lHelper = provider.getFileHelper();
+            return lHelper.isJavaScript(pRefPath) || lHelper.isStyleSheet(pRefPath) || lHelper.isImage(pRefPath);
+        }
+
+        /**
+         * Returns the fingerprinted path of an asset or NoFingerprint.
+         */
+        protected String getFingerprintFor(String pPath) {
+            if (fingerprints.containsKey(pPath)) {
+                return fingerprints.get(pPath);
+            }
+            if (inProgress.contains(pPath)) {
+                // an import cycle - all files on the way back to pPath keep their plain url
+                for (String lPath : inProgress) {
+                    cyclic.add(lPath);
+                    if (lPath.equals(pPath)) {
+                        break;
+                    }
+                }
+                return NoFingerprint;
+            }
+
+            String lFingerprinted = NoFingerprint;
+            try {
+                // the asset is read, enriched and cached with its own rewritten references
+                WebFile lAsset = provider.getWebFile(pPath);
+                if (!cyclic.contains(pPath) && !lAsset.isDynamic() && !lAsset.isEmpty()) {
+                    lFingerprinted = insertHash(pPath, createContentHash(lAsset.getDataBuffer()));
+                    originals.put(lFingerprinted, pPath);
+                }
+            } catch (Exception e) {
+                LOG.fine(() -> String.format("AssetPipeline: no fingerprint for [%s] %s", pPath, e));
+            }
+            fingerprints.put(pPath, lFingerprinted);
+            return lFingerprinted;
+        }
+
+        /**
+         * A conservative minification keeping line breaks for automatic semicolon insertion.
+         */
+        protected String minifyJavaScript(String pSource) {
+            return new SourceMinifier(pSource, true).minify();
+        }
+
+        /**
+         */
+        protected String minifyStyleSheet(String pSource) {
+            return new SourceMinifier(pSource, false).minify();
+        }
+
+        /**
+         */
+        protected static String createContentHash(ByteBuffer pData) {
+            try {
+                MessageDigest lDigest = MessageDigest.getInstance("SHA-256");
+                lDigest.update(pData);
+                byte[] lHash = lDigest.digest();
+                return HexFormat.of().formatHex(lHash).substring(0, HashLen);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         */
+        protected static String insertHash(String pPath, String pHash) {
+            int lDotPos = pPath.lastIndexOf('.');
+            if (lDotPos <= pPath.lastIndexOf('/')) {
+                return pPath + "." + pHash;
+            }
+            return new StringBuilder(pPath.substring(0, lDotPos)).append(".").append(pHash)
+                    .append(pPath.substring(lDotPos)).toString();
+        }
+
+        /**
+         */
+        protected static int indexOfAny(String pText, char... pChars) {
+            for (int i = 0; i < pText.length(); i++) {
+                for (char lChar : pChars) {
+                    if (pText.charAt(i) == lChar) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * <pre>
+     * A dependency graph of static ES module imports.
+     * 
+     * Html pages and modules are scanned when they are read and cached.
+     * Html is scanned for importmaps and module scripts - src or inline imports,
+     * modules for their static import/export from statements.
+     * 
+     * When a page or module is served its transitive dependencies are sent
+     * in a Link header with rel=modulepreload entries,
+     * so the browser can load the whole graph at once instead of one level per round trip.
+     * Dynamic import() calls are NOT followed.
+     * </pre>
+     */
+    public static class ModuleGraph {
+        protected static final Pattern ImportMapPattern = Pattern.compile(
+                "<script\\s[^>]*type\\s*=\\s*[\"']importmap[\"'][^>]*>(.*?)</script>",
+                Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+        protected static final Pattern ImportMapEntryPattern = Pattern.compile("\"([^\"]+)\"\\s*:\\s*\"([^\"]+)\"");
+        protected static final Pattern ScriptPattern = Pattern.compile("<script\\b([^>]*)>(.*?)</script>",
+                Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+        protected static final Pattern ModuleTypePattern = Pattern.compile("type\\s*=\\s*[\"']module[\"']",
+                Pattern.CASE_INSENSITIVE);
+        protected static final Pattern SrcPattern = Pattern.compile("src\\s*=\\s*[\"']([^\"']+)[\"']",
+                Pattern.CASE_INSENSITIVE);
+
+        protected JamnWebContentProvider provider;
+        // request path -> absolute urls of the statically imported modules
+        protected Map<String, List<String>> dependencies = new ConcurrentHashMap<>();
+        // request path -> Link header value
+        protected Map<String, String> preloadLinks = new ConcurrentHashMap<>();
+
+        protected ModuleGraph(JamnWebContentProvider pProvider) {
+            provider = pProvider;
+        }
+
+        /**
+         * Scan a read and enriched file for its static module imports.
+         */
+        public void scan(WebFile pFile) {
+            String lContent;
+            if (!pFile.isTextFormat() || !(TEXT_HTML.equals(pFile.getContentType())
+                    || TEXT_JS.equals(pFile.getContentType()))) {
+                return;
+            }
+            lContent = pFile.isDynamic() ? String.join("", pFile.getTemplate().getParts())
+                    : StandardCharsets.UTF_8.decode(pFile.getDataBuffer()).toString();
+
+            Set<String> lImports = new LinkedHashSet<>();
+            if (TEXT_HTML.equals(pFile.getContentType())) {
+                scanHtml(pFile.getRequestPath(), lContent, lImports);
+            } else {
+                scanModule(pFile.getRequestPath(), lContent, Collections.emptyMap(), lImports);
+            }
+            dependencies.put(pFile.getRequestPath(), new ArrayList<>(lImports));
+            preloadLinks.remove(pFile.getRequestPath());
+        }
+
+        /**
+         * Returns the Link header value for the transitive module dependencies.
+         */
+        public String getPreloadLinksFor(String pPath) {
+            String lLinks = preloadLinks.get(pPath);
+            if (lLinks == null) {
+                // NOT computeIfAbsent - collecting may read and scan further files
+                Set<String> lVisited = new LinkedHashSet<>();
+                collectDependencies(pPath, lVisited);
+                lVisited.remove(pPath);
+                lLinks = lVisited.stream().map(url -> "<" + url + ">; rel=modulepreload")
+                        .collect(Collectors.joining(", "));
+                preloadLinks.put(pPath, lLinks);
+            }
+            return lLinks;
+        }
+
+        /**
+         */
+        protected void collectDependencies(String pUrl, Set<String> pVisited) {
+            if (!pVisited.add(pUrl)) {
+                return;
+            }
+            for (String lUrl : getDependenciesOf(pUrl)) {
+                collectDependencies(lUrl, pVisited);
+            }
+        }
+
+        /**
+         */
+        protected List<String> getDependenciesOf(String pUrl) {
+            String lPath = pUrl;
+            if (provider.assetPipeline != null && provider.assetPipeline.getOriginalPathFor(pUrl) != null) {
+                lPath = provider.assetPipeline.getOriginalPathFor(pUrl);
+            }
+            if (!dependencies.containsKey(lPath)) {
+                try {
+                    // unknown modules are read, scanned and cached
+                    provider.getWebFile(lPath);
+                } catch (Exception e) {
+                    LOG.fine(() -> String.format("ModuleGraph: no dependencies for [%s] %s", pUrl, e));
+                }
+            }
+            return dependencies.getOrDefault(lPath, Collections.emptyList());
+        }
+
+        /**
+         */
+        protected void scanHtml(String pFilePath, String pContent, Set<String> pImports) {
+            Map<String, String> lImportMap = new HashMap<>();
+            Matcher lMatcher = ImportMapPattern.matcher(pContent);
+            while (lMatcher.find()) {
+                Matcher lEntry = ImportMapEntryPattern.matcher(lMatcher.group(1));
+                while (lEntry.find()) {
+                    if (!lEntry.group(1).equals("imports")) {
+                        lImportMap.put(lEntry.group(1), lEntry.group(2));
+                    }
+                }
+            }
+
+            lMatcher = ScriptPattern.matcher(pContent);
+            while (lMatcher.find()) {
+                if (ModuleTypePattern.matcher(lMatcher.group(1)).find()) {
+                    Matcher lSrc = SrcPattern.matcher(lMatcher.group(1));
+                    if (lSrc.find()) {
+                        addImport(pFilePath, lSrc.group(1), lImportMap, pImports);
+                    } else {
+                        scanModule(pFilePath, lMatcher.group(2), lImportMap, pImports);
+                    }
+                }
+            }
+        }
+
+        /**
+         */
+        protected void scanModule(String pFilePath, String pContent, Map<String, String> pImportMap,
+                Set<String> pImports) {
+            // NOT the module path literals of the pipeline - dynamic imports stay lazy
+            for (Pattern lPattern : AssetPipeline.JsImportPatterns) {
+                Matcher lMatcher = lPattern.matcher(pContent);
+                while (lMatcher.find()) {
+                    addImport(pFilePath, lMatcher.group(2), pImportMap, pImports);
+                }
+            }
+        }
+
+        /**
+         * Adds the absolute url of a module specifier. Bare specifiers are resolved
+         * by the importmap of a page - if any.
+         */
+        protected void addImport(String pFilePath, String pSpecifier, Map<String, String> pImportMap,
+                Set<String> pImports) {
+            String lSpecifier = pImportMap.getOrDefault(pSpecifier, pSpecifier);
+            if (lSpecifier.startsWith("/") && !lSpecifier.startsWith("//") || lSpecifier.startsWith("./")
+                    || lSpecifier.startsWith("../")) {
+                int lSuffixPos = AssetPipeline.indexOfAny(lSpecifier, '?', '#');
+                pImports.add(resolveReferencePath(pFilePath,
+                        lSuffixPos > -1 ? lSpecifier.substring(0, lSuffixPos) : lSpecifier));
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * A simple single pass minifier for JavaScript and StyleSheet sources.
+     * It removes comments and unneeded whitespace but never touches
+     * string, template or regular expression literals.
+     * </pre>
+     */
+    protected static class SourceMinifier {
+        protected static final String RegexPrefixChars = "(,=:[!&|?{};+-*%~^<>";
+        protected static final String CssTightChars = "{};,>";
+        protected static final Set<String> RegexPrefixWords = Set.of("return", "typeof", "case", "do", "else",
+                "in", "of", "void", "delete", "throw", "new", "instanceof", "yield", "await");
+
+        protected String src;
+        protected boolean isJs;
+        protected StringBuilder out;
+        protected int pos = 0;
+        // brace depth stack of open ${...} expressions in template literals
+        protected Deque<int[]> templateDepth = new ArrayDeque<>();
+
+        protected SourceMinifier(String pSource, boolean pIsJs) {
+            src = pSource;
+            isJs = pIsJs;
+            out = new StringBuilder(pSource.length());
+        }
+
+        /**
+         */
+        protected String minify() {
+            while (pos < src.length()) {
+                char c = src.charAt(pos);
+                if (c == '"' || c == '\'') {
+                    copyQuoted(c);
+                } else if (isJs && c == '`') {
+                    pos++;
+                    out.append(c);
+                    copyTemplate();
+                } else if (c == '/' && next() == '*') {
+                    skipBlockComment();
+                } else if (isJs && c == '/' && next() == '/') {
+                    skipLineComment();
+                } else if (isJs && c == '/' && isRegexStart()) {
+                    copyRegex();
+                } else if (Character.isWhitespace(c)) {
+                    collapseWhitespace();
+                } else if (isJs && c == '}' && !templateDepth.isEmpty() && templateDepth.peek()[0] == 0) {
+                    templateDepth.pop();
+                    out.append(c);
+                    pos++;
+                    copyTemplate();
+                } else {
+                    if (isJs && !templateDepth.isEmpty()) {
+                        templateDepth.peek()[0] += (c == '{') ? 1 : (c == '}') ? -1 : 0;
+                    }
+                    out.append(c);
+                    pos++;
+                }
+            }
+            return out.toString().trim();
+        }
+
+        protected char next() {
+            return pos + 1 < src.length() ? src.charAt(pos + 1) : 0;
+        }
+
+        protected char lastOut() {
+            return out.length() > 0 ? out.charAt(out.length() - 1) : 0;
+        }
+
+        protected void copyQuoted(char pQuote) {
+            out.append(src.charAt(pos++));
+            while (pos < src.length()) {
+                char c = src.charAt(pos++);
+                out.append(c);
+                if (c == '\\' && pos < src.length()) {
+                    out.append(src.charAt(pos++));
+                } else if (c == pQuote || c == '\n') {
+                    break;
+                }
+            }
+        }
+
+        protected void copyTemplate() {
+            while (pos < src.length()) {
+                char c = src.charAt(pos++);
+                out.append(c);
+                if (c == '\\' && pos < src.length()) {
+                    out.append(src.charAt(pos++));
+                } else if (c == '`') {
+                    return;
+                } else if (c == '$' && pos < src.length() && src.charAt(pos) == '{') {
+                    out.append(src.charAt(pos++));
+                    templateDepth.push(new int[] { 0 });
+                    return;
+                }
+            }
+        }
+
+        protected void copyRegex() {
+            boolean lInClass = false;
+            out.append(src.charAt(pos++));
+            while (pos < src.length()) {
+                char c = src.charAt(pos++);
+                out.append(c);
+                if (c == '\\' && pos < src.length()) {
+                    out.append(src.charAt(pos++));
+                } else if (c == '[') {
+                    lInClass = true;
+                } else if (c == ']') {
+                    lInClass = false;
+                } else if ((c == '/' && !lInClass) || c == '\n') {
+                    break;
+                }
+            }
+        }
+
+        protected void skipBlockComment() {
+            int lEnd = src.indexOf("*/", pos + 2);
+            lEnd = lEnd < 0 ? src.length() : lEnd + 2;
+            boolean lHasLineBreak = src.substring(pos, lEnd).indexOf('\n') > -1;
+            pos = lEnd;
+            appendWhitespace(lHasLineBreak);
+        }
+
+        protected void skipLineComment() {
+            while (pos < src.length() && src.charAt(pos) != '\n') {
+                pos++;
+            }
+        }
+
+        protected void collapseWhitespace() {
+            boolean lHasLineBreak = false;
+            while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) {
+                lHasLineBreak = lHasLineBreak || src.charAt(pos) == '\n';
+                pos++;
+            }
+            appendWhitespace(lHasLineBreak);
+        }
+
+        /**
+         * Line breaks are kept for js, a space only where tokens would merge.
+         */
+        protected void appendWhitespace(boolean pLineBreak) {
+            char lPrev = lastOut();
+            char lNext = pos < src.length() ? src.charAt(pos) : 0;
+            if (lPrev == 0 || lPrev == '\n' || lNext == 0 || (lPrev == ' ' && !pLineBreak)) {
+                return;
+            }
+            if (lPrev == ' ') {
+                out.setLength(out.length() - 1);
+            }
+            if (isJs && pLineBreak) {
+                out.append('\n');
+            } else if (isJs && (isWordChar(lPrev) && isWordChar(lNext)
+                    || (lPrev == lNext && (lPrev == '+' || lPrev == '-' || lPrev == '/')))) {
+                out.append(' ');
+            } else if (!isJs && CssTightChars.indexOf(lPrev) < 0 && CssTightChars.indexOf(lNext) < 0
+                    && lPrev != ':') {
+                out.append(' ');
+            }
+        }
+
+        protected boolean isRegexStart() {
+            int i = out.length() - 1;
+            while (i >= 0 && Character.isWhitespace(out.charAt(i))) {
+                i--;
+            }
+            if (i < 0 || RegexPrefixChars.indexOf(out.charAt(i)) > -1) {
+                return true;
+            }
+            int lEnd = i + 1;
+            while (i >= 0 && isWordChar(out.charAt(i))) {
+                i--;
+            }
+            return RegexPrefixWords.contains(out.substring(i + 1, lEnd));
+        }
+
+        protected static boolean isWordChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '\\' || c > 127;
+        }
+    }
+
     /*********************************************************
      *********************************************************/
 
@@ -487,4 +1611,21 @@ public class JamnWebContentProvider implements JamnServer.ContentProvider {
     protected static String getStackTraceFrom(Throwable t) {
         return JamnServer.getStackTraceFrom(t);
     }
+
+    /**
+     * Resolve a relative or absolute reference found in a file to an absolute
+     * request path.
+     */
+    protected static String resolveReferencePath(String pFilePath, String pRef) {
+        String lPath = pRef.startsWith("/") ? pRef : pFilePath.substring(0, pFilePath.lastIndexOf('/') + 1) + pRef;
+        Deque<String> lSegments = new ArrayDeque<>();
+        for (String lSegment : lPath.split("/")) {
+            if (lSegment.equals("..")) {
+                lSegments.pollLast();
+            } else if (!lSegment.isEmpty() && !lSegment.equals(".")) {
+                lSegments.addLast(lSegment);
+            }
+        }
+        return "/" + String.join("/", lSegments);
+    }
 }
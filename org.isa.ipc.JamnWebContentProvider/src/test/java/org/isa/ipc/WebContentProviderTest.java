@@ -2,15 +2,35 @@
 package org.isa.ipc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.isa.ipc.JamnWebContentProvider.ArchiveFileProvider;
+import org.isa.ipc.JamnWebContentProvider.AssetPipeline;
 import org.isa.ipc.JamnWebContentProvider.DefaultFileEnricher;
+import org.isa.ipc.JamnWebContentProvider.OffHeapFileCache;
+import org.isa.ipc.JamnWebContentProvider.WebFile;
 import org.isa.ipc.sample.FileEnricherValueProvider;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -56,6 +76,29 @@ class WebContentProviderTest {
         Server.stop();
     }
 
+    /**
+     * A server on its own port for a test specific provider.
+     */
+    private static JamnServer startServer(int pPort, JamnWebContentProvider pProvider) {
+        JamnServer lServer = new JamnServer(pPort);
+        pProvider.setConfig(lServer.getConfig());
+        lServer.addContentProvider("WebContentProvider", pProvider);
+        lServer.start();
+        assertTrue(lServer.isRunning(), "Error Test Server start");
+        return lServer;
+    }
+
+    /**
+     * A cached provider that minifies, fingerprints and preloads.
+     */
+    private static JamnServer startPipelineServer() {
+        return startServer(8098, new JamnWebContentProvider("src/test/resources/http/sample")
+                .setDevelopmentMode(false)
+                .setAssetPipeline(new AssetPipeline(true, true))
+                .setModulePreloadEnabled(true)
+                .setFileEnricher(new DefaultFileEnricher(new FileEnricherValueProvider())));
+    }
+
     @Test
     void testRoot() throws Exception {
         HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/"))
@@ -66,4 +109,176 @@ class WebContentProviderTest {
         assertEquals(200, lResponse.statusCode(), "Error HTTP Status");
     }
 
+    @Test
+    void testDynamicTemplateValues() throws Exception {
+        // a provider with file cache
+        JamnServer lServer = startServer(8097, new JamnWebContentProvider("src/test/resources/http/sample")
+                .setDevelopmentMode(false)
+                .setFileEnricher(new DefaultFileEnricher(new FileEnricherValueProvider())));
+        try {
+            // the second request gets the cached template
+            for (String lUser : new String[] { "alice", "bob" }) {
+                HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI("http://localhost:8097/index.html"))
+                        .header("Sample-User", lUser).GET().build();
+
+                HttpResponse<String> lResponse = Client.send(lRequest, BodyHandlers.ofString());
+
+                assertEquals(200, lResponse.statusCode(), "Error HTTP Status");
+                assertTrue(lResponse.body().contains("<title>JamnWeb Sample}</title>"), "Error static value");
+                assertTrue(lResponse.body().contains("content=\"" + lUser + "\""), "Error dynamic value");
+            }
+        } finally {
+            lServer.stop();
+        }
+    }
+
+    @Test
+    void testFingerprintedAndPreloadedAssets() throws Exception {
+        JamnServer lServer = startPipelineServer();
+        try {
+            assertFingerprintedAndPreloadedAssets("http://localhost:8098");
+        } finally {
+            lServer.stop();
+        }
+    }
+
+    private void assertFingerprintedAndPreloadedAssets(String pURL) throws Exception {
+        HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(pURL + "/index.html")).GET().build();
+        HttpResponse<String> lResponse = Client.send(lRequest, BodyHandlers.ofString());
+
+        // the module reference in the importmap gets fingerprinted
+        Matcher lMatcher = Pattern.compile("\"(/jsmod/sample-app\\.[0-9a-f]{10}\\.mjs)\"").matcher(lResponse.body());
+        assertTrue(lMatcher.find(), "Error fingerprinted reference");
+        assertTrue(lResponse.body().contains("href=\"css/app."), "Error stylesheet reference");
+
+        // the importmap module is announced for preloading
+        assertEquals("<" + lMatcher.group(1) + ">; rel=modulepreload",
+                lResponse.headers().firstValue("Link").orElse(""), "Error Link header");
+
+        lRequest = HttpRequest.newBuilder().uri(new URI(pURL + lMatcher.group(1))).GET().build();
+        lResponse = Client.send(lRequest, BodyHandlers.ofString());
+
+        assertEquals(200, lResponse.statusCode(), "Error HTTP Status");
+        assertTrue(lResponse.headers().firstValue("Cache-Control").orElse("").contains("immutable"),
+                "Error Cache-Control");
+        // minified without comments
+        assertFalse(lResponse.body().contains("Private section"), "Error minification");
+        assertTrue(lResponse.body().contains("export function anchorAt"), "Error module content");
+    }
+
+    @Test
+    void testFingerprintedDynamicImports() throws Exception {
+        JamnServer lServer = startPipelineServer();
+        HttpResponse<String> lResponse;
+        try {
+            HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI("http://localhost:8098/jsmod/sample-lazy.mjs"))
+                    .GET().build();
+            lResponse = Client.send(lRequest, BodyHandlers.ofString());
+        } finally {
+            lServer.stop();
+        }
+
+        assertEquals(200, lResponse.statusCode(), "Error HTTP Status");
+        // static import, import() and module path literal load ONE fingerprinted url
+        Matcher lMatcher = Pattern.compile("sample-info(\\.[0-9a-f]{10})?\\.mjs").matcher(lResponse.body());
+        Pattern lFingerprinted = Pattern.compile("sample-info\\.[0-9a-f]{10}\\.mjs");
+        List<String> lRefs = new ArrayList<>();
+        while (lMatcher.find()) {
+            lRefs.add(lMatcher.group());
+        }
+        assertEquals(3, lRefs.size(), "Error module references");
+        assertTrue(lRefs.stream().allMatch(lRef -> lRef.equals(lRefs.get(0))), "Error different module urls");
+        assertTrue(lFingerprinted.matcher(lRefs.get(0)).matches(), "Error plain module reference");
+    }
+
+    @Test
+    void testDynamicImportsNotPreloaded() throws Exception {
+        JamnServer lServer = startPipelineServer();
+        try {
+            HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI("http://localhost:8098/jsmod/sample-lazy.mjs"))
+                    .GET().build();
+            HttpResponse<String> lResponse = Client.send(lRequest, BodyHandlers.ofString());
+            String lLinks = lResponse.headers().firstValue("Link").orElse("");
+
+            // the static import is preloaded - the import() only target is NOT
+            assertTrue(Pattern.compile("</jsmod/sample-info\\.[0-9a-f]{10}\\.mjs>; rel=modulepreload").matcher(lLinks)
+                    .find(), "Error static import preload");
+            assertFalse(lLinks.contains("sample-later"), "Error dynamic import preload");
+        } finally {
+            lServer.stop();
+        }
+    }
+
+    @Test
+    void testArchiveFileProvider() throws Exception {
+        byte[] lStyle = Files.readAllBytes(Path.of("src/test/resources/http/sample/css/app.css"));
+        byte[] lIcon = Files.readAllBytes(Path.of("src/test/resources/http/sample/favicon.ico"));
+        Path lArchive = Path.of("target/test-webroot.zip");
+
+        try (ZipOutputStream lZip = new ZipOutputStream(Files.newOutputStream(lArchive))) {
+            lZip.putNextEntry(new ZipEntry("http/css/app.css"));
+            lZip.write(lStyle);
+            ZipEntry lEntry = new ZipEntry("http/favicon.ico");
+            CRC32 lCrc = new CRC32();
+            lCrc.update(lIcon);
+            lEntry.setMethod(ZipEntry.STORED);
+            lEntry.setSize(lIcon.length);
+            lEntry.setCrc(lCrc.getValue());
+            lZip.putNextEntry(lEntry);
+            lZip.write(lIcon);
+        }
+
+        ArchiveFileProvider lProvider = new ArchiveFileProvider(lArchive, "http/");
+        assertEquals(2, lProvider.getEntryNames().size(), "Error archive index");
+
+        // stored entries are slices of the mapping
+        WebFile lFile = new WebFile("/favicon.ico");
+        lFile.setFilePath("/favicon.ico");
+        lProvider.readAllFileBytes(lFile);
+        assertTrue(lFile.hasDataBuffer(), "Error stored entry");
+        // the template marker check does NOT materialize the body
+        new DefaultFileEnricher(new FileEnricherValueProvider()).enrich(lFile);
+        assertTrue(lFile.hasDataBuffer(), "Error enriched stored entry");
+        assertArrayEquals(lIcon, lFile.getData(), "Error stored entry data");
+        assertTrue(lFile.hasDataBuffer(), "Error stored entry changed by data access");
+
+        // deflated entries provide a gzip body with the original deflate data
+        lFile = new WebFile("/css/app.css");
+        lFile.setFilePath("/css/app.css");
+        lProvider.readAllFileBytes(lFile);
+        assertArrayEquals(lStyle, lFile.getData(), "Error deflated entry data");
+
+        ByteArrayOutputStream lGzip = new ByteArrayOutputStream();
+        for (ByteBuffer lPart : lFile.getGzipData()) {
+            byte[] lBytes = new byte[lPart.remaining()];
+            lPart.get(lBytes);
+            lGzip.write(lBytes);
+        }
+        try (GZIPInputStream lIn = new GZIPInputStream(new ByteArrayInputStream(lGzip.toByteArray()))) {
+            assertEquals(new String(lStyle, StandardCharsets.UTF_8),
+                    new String(lIn.readAllBytes(), StandardCharsets.UTF_8), "Error gzip data");
+        }
+    }
+
+    @Test
+    void testOffHeapFileCache() throws Exception {
+        byte[] lStyle = Files.readAllBytes(Path.of("src/test/resources/http/sample/css/app.css"));
+        OffHeapFileCache lCache = new OffHeapFileCache(lStyle.length);
+
+        WebFile lFile = new WebFile("/css/app.css");
+        lFile.setData(lStyle);
+        lCache.put(lFile.getId(), lFile);
+        // beyond the size limit
+        lCache.put("/other.css", lFile);
+
+        assertTrue(lCache.contains("/css/app.css"), "Error cached file");
+        assertFalse(lCache.contains("/other.css"), "Error size limit");
+        assertEquals(lStyle.length, lCache.getSize(), "Error cache size");
+
+        WebFile lCached = lCache.get("/css/app.css");
+        assertTrue(lCached.hasDataBuffer() && lCached.getDataBuffer().isDirect(), "Error off heap body");
+        assertArrayEquals(lStyle, lCached.getData(), "Error cached data");
+        // a heap copy of one view does NOT affect the cache entry
+        assertTrue(lCache.get("/css/app.css").hasDataBuffer(), "Error cache entry");
+    }
 }
@@ -4,6 +4,7 @@ package org.isa.ipc.sample;
 import java.util.logging.Logger;
 
 import org.isa.ipc.JamnServer;
+import org.isa.ipc.JamnServer.RequestMessage;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
@@ -23,6 +24,10 @@ public class FileEnricherValueProvider implements JamnServer.ExprString.ValuePro
     @Override
     public String getValueFor(String pKey, Object pCtx) {
         try {
+            if ("request.user".equals(pKey) && pCtx instanceof RequestMessage lRequest) {
+                // a dynamic value rendered per request
+                return lRequest.header().get("Sample-User", "guest");
+            }
             if ("app.title".equals(pKey)) {
                 return "JamnWeb Sample";
             }
@@ -46,6 +51,11 @@ public class FileEnricherValueProvider implements JamnServer.ExprString.ValuePro
         return "";
     }
 
+    @Override
+    public boolean isDynamic(String pKey) {
+        return "request.user".equals(pKey);
+    }
+
     /**
      */
     private static String getStackTraceFrom(Throwable t) {
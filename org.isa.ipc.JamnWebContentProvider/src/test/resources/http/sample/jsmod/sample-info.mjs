@@ -0,0 +1,4 @@
+/**
+ * A sample module loaded statically and dynamically
+ */
+export const SampleInfo = "sample info";
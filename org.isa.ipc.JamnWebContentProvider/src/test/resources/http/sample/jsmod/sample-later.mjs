@@ -0,0 +1,4 @@
+/**
+ * A sample module loaded only dynamically
+ */
+export const SampleLater = "sample later";
@@ -0,0 +1,18 @@
+import { SampleInfo } from './sample-info.mjs';
+
+/**
+ * A sample module loading a module dynamically
+ */
+const lazyModule = '../jsmod/sample-info.mjs';
+
+export function loadInfo() {
+	return import('./sample-info.mjs');
+}
+
+export function loadLazy() {
+	return import(lazyModule);
+}
+
+export function loadLater() {
+	return import('./sample-later.mjs');
+}
@@ -3,30 +3,69 @@
 package org.isa.ipc;
 
 import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.APPLICATION_JSON;
+import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.APPLICATION_NDJSON;
 import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.TEXT_PLAIN;
 import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_200_OK;
 import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_204_NO_CONTENT;
 import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_400_BAD_REQUEST;
 import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_404_NOT_FOUND;
 import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_405_METHOD_NOT_ALLOWED;
+import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_429_TOO_MANY_REQUESTS;
 import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_500_INTERNAL_ERROR;
+import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_503_SERVICE_UNAVAILABLE;
+import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_504_GATEWAY_TIMEOUT;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
+import org.isa.ipc.JamnServer.HttpHeader;
 import org.isa.ipc.JamnServer.JsonToolWrapper;
 import org.isa.ipc.JamnServer.RequestMessage;
 import org.isa.ipc.JamnServer.ResponseMessage;
+import org.isa.ipc.JamnServer.UncheckedJsonException;
 
 /**
  * <pre>
@@ -72,12 +111,24 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
 
     protected JsonToolWrapper jsonTool;
     protected String urlRoot = "";
+    // calls taking longer are logged with a timing breakdown - 0 = disabled
+    protected long slowCallMillis = 0;
 
     /**
      * A map holding all registered services.
      */
     protected Map<String, ServiceObject> serviceRegistry = new HashMap<>();
 
+    /**
+     * The compiled trie of all services with path templates like "/api/doc/{name}".
+     */
+    protected PathTemplateNode templateRoot = new PathTemplateNode();
+
+    /**
+     * The named executors referenced by services to run separated from the server workers.
+     */
+    protected Map<String, Executor> executorRegistry = new HashMap<>();
+
     /**
      */
     public JamnWebServiceProvider setJsonTool(JsonToolWrapper pTool) {
@@ -92,6 +143,35 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
         return this;
     }
 
+    /**
+     */
+    public JamnWebServiceProvider setSlowCallThreshold(long pMillis) {
+        slowCallMillis = pMillis;
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Register an executor that services reference by name
+     * e.g. &#64;WebService(executor = "shell").
+     * Executors must be registered before the services using them.
+     * </pre>
+     */
+    public JamnWebServiceProvider registerExecutor(String pName, Executor pExecutor) {
+        executorRegistry.put(pName, pExecutor);
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Install the built-in batch service at [urlRoot]/batch.
+     * The entries of a batch are called concurrently on the given executor.
+     * </pre>
+     */
+    public JamnWebServiceProvider enableBatchService(Executor pExecutor) throws WebServiceDefinitionException {
+        return registerServices(new BatchService(this, pExecutor));
+    }
+
     /**
      * <pre>
      * The public interface method to register and install Services implemented in pServices.
@@ -131,12 +211,27 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
 
                 lServiceObj = new ServiceObject(lServiceAnno, lInstance, lRequestClass, lReponseClass, serviceMethod,
                         () -> jsonTool);
+                lServiceObj.invoker = createInvoker(lInstance, serviceMethod);
+                if (!lServiceAnno.executor().isEmpty()) {
+                    lServiceObj.executor = executorRegistry.get(lServiceAnno.executor());
+                    if (lServiceObj.executor == null) {
+                        throw new WebServiceDefinitionException(String.format("WebService executor [%s] not registered [%s]",
+                                lServiceAnno.executor(), lServiceObj.getName()));
+                    }
+                }
 
                 if (!urlRoot.isEmpty()) {
-                    lServiceObj.path = new StringBuilder(urlRoot).append(lServiceObj.path).toString();
+                    lServiceObj.setPath(new StringBuilder(urlRoot).append(lServiceObj.path).toString());
+                    for (int i = 0; i < lServiceObj.invalidates.length; i++) {
+                        lServiceObj.invalidates[i] = urlRoot + lServiceObj.invalidates[i];
+                    }
                 }
+                lServiceObj.invalidator = this::invalidateCache;
 
                 if (!serviceRegistry.containsKey(lServiceObj.path)) {
+                    if (lServiceObj.hasPathTemplate()) {
+                        templateRoot.add(lServiceObj);
+                    }
                     serviceRegistry.put(lServiceObj.path, lServiceObj);
                     final String info = String.format("WebService installed [%s] at [%s]",
                             lServiceObj.getName(),
@@ -153,9 +248,45 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
     }
 
     /**
+     * A path may contain a query string and match a path template.
      */
     public boolean isServicePath(String pPath) {
-        return serviceRegistry.containsKey(pPath);
+        return findService(RequestMessage.stripQuery(pPath)) != null;
+    }
+
+    /**
+     * Clear the response cache of the service at the path.
+     */
+    public void invalidateCache(String pPath) {
+        ServiceObject lService = serviceRegistry.get(pPath);
+        if (lService != null && lService.cache != null) {
+            lService.cache.clear();
+            LOG.fine(() -> String.format("WebService cache invalidated [%s]", pPath));
+        }
+    }
+
+    /**
+     */
+    public void invalidateAllCaches() {
+        serviceRegistry.keySet().forEach(this::invalidateCache);
+    }
+
+    /**
+     * <pre>
+     * Exact paths are looked up first then the path templates.
+     * </pre>
+     */
+    protected ServiceMatch findService(String pPath) {
+        ServiceObject lService = serviceRegistry.get(pPath);
+        if (lService != null && !lService.hasPathTemplate()) {
+            return new ServiceMatch(lService, Collections.emptyMap());
+        }
+        String[] lSegments = splitPath(pPath);
+        lService = templateRoot.match(lSegments, 0);
+        if (lService != null) {
+            return new ServiceMatch(lService, lService.getPathVariables(lSegments));
+        }
+        return null;
     }
 
     /**
@@ -166,18 +297,39 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
         return lNames;
     }
 
+    /**
+     * The metrics of the service at the path or an empty map.
+     */
+    public Map<String, Object> getServiceMetrics(String pPath) {
+        ServiceObject lService = serviceRegistry.get(pPath);
+        return lService != null ? lService.metrics.toMap() : Collections.emptyMap();
+    }
+
+    /**
+     * The metrics of all services sorted by path.
+     */
+    public Map<String, Map<String, Object>> getAllServiceMetrics() {
+        Map<String, Map<String, Object>> lMetrics = new LinkedHashMap<>();
+        for (String lPath : getAllServicePathNames()) {
+            lMetrics.put(lPath, getServiceMetrics(lPath));
+        }
+        return lMetrics;
+    }
+
     /**
      * Calling a WebService internally from java bypassing the http layer.
      */
     public String doDirectCall(String pPath, String pRequestBody) throws WebServiceException {
-        ServiceObject lService = null;
-        if (serviceRegistry.containsKey(pPath)) {
+        ServiceMatch lMatch = findService(RequestMessage.stripQuery(pPath));
+        if (lMatch != null) {
             try {
-                lService = serviceRegistry.get(pPath);
-                Object lResult = lService.callWith(pRequestBody);
+                Object lResult = lMatch.service.callWith(pRequestBody, lMatch.getParameters(
+                        RequestMessage.parseQueryParameters(pPath, StandardCharsets.UTF_8.name())));
                 if (lResult instanceof String result) {
                     return result;
                 }
+            } catch (WebServiceException e) {
+                throw e;
             } catch (Exception e) {
                 throw new WebServiceException("WebService direct call failure", e);
             }
@@ -198,6 +350,29 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
         public String[] methods() default { "GET, POST" };
 
         public String contentType() default APPLICATION_JSON;
+
+        // for services returning a CompletionStage - 0 = no timeout
+        public long timeoutMillis() default 30000;
+
+        // time to keep serialized responses per parameters and body - 0 = no caching
+        public long cacheTtlMillis() default 0;
+
+        public int cacheMaxEntries() default 64;
+
+        // the paths of cached services to invalidate after a successful call
+        public String[] invalidates() default {};
+
+        // concurrent identical calls share one execution and its serialized result
+        public boolean coalesce() default false;
+
+        // the max number of concurrent executions - 0 = unlimited
+        public int maxConcurrent() default 0;
+
+        // the time to wait for a free execution before answering 429 - 0 = reject immediately
+        public long maxWaitMillis() default 0;
+
+        // the name of a registered executor to run the service on instead of the request thread
+        public String executor() default "";
     }
 
     /*********************************************************
@@ -234,202 +409,1422 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
     protected static Class<?> getServiceRequestClassFrom(Method pMeth) throws WebServiceDefinitionException {
         Class<?>[] lClasses = pMeth.getParameterTypes();
         if (lClasses.length == 1) {
+            return hasSinkParameter(pMeth) ? null : lClasses[0];
+        } else if (lClasses.length == 2 && hasSinkParameter(pMeth)) {
             return lClasses[0];
         } else if (lClasses.length > 1) {
             throw new WebServiceDefinitionException(
-                    String.format("WebService method must declare 0 or 1 parameter [%s]", getServiceMethodName(pMeth)));
+                    String.format("WebService method must declare 0 or 1 parameter and an optional Consumer sink [%s]",
+                            getServiceMethodName(pMeth)));
         }
         return null;
     }
 
+    /**
+     * A last parameter of type Consumer is a sink for streamed result elements.
+     */
+    protected static boolean hasSinkParameter(Method pMeth) {
+        Class<?>[] lClasses = pMeth.getParameterTypes();
+        return lClasses.length > 0 && lClasses[lClasses.length - 1] == Consumer.class;
+    }
+
+    /**
+     */
+    protected static String[] splitPath(String pPath) {
+        String lPath = pPath.startsWith("/") ? pPath.substring(1) : pPath;
+        return lPath.split("/", -1);
+    }
+
+    /**
+     */
+    protected static boolean isPathVariable(String pSegment) {
+        return pSegment.length() > 2 && pSegment.startsWith("{") && pSegment.endsWith("}");
+    }
+
+    /**
+     * Path segments are decoded without treating '+' as space.
+     */
+    protected static String decodePathSegment(String pSegment) {
+        return URLDecoder.decode(pSegment.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
     /**
      */
     protected static Class<?> getServiceResponseClassFrom(Method pMeth) {
         return pMeth.getReturnType();
     }
 
+    /**
+     * The value class of e.g. CompletableFuture&lt;String&gt; or Object if undefined.
+     */
+    protected static Class<?> getAsyncResultClassFrom(Method pMeth) {
+        if (pMeth.getGenericReturnType() instanceof ParameterizedType lType
+                && lType.getActualTypeArguments()[0] instanceof Class<?> lClass) {
+            return lClass;
+        }
+        return Object.class;
+    }
+
+    /**
+     * <pre>
+     * Create a specialized invoker with a MethodHandle
+     * bound to the service instance and adapted to (Object)Object.
+     * </pre>
+     */
+    protected static ServiceInvoker createInvoker(Object pInstance, Method pMeth)
+            throws WebServiceDefinitionException {
+        MethodHandle lHandle;
+        try {
+            try {
+                lHandle = MethodHandles.lookup().unreflect(pMeth);
+            } catch (IllegalAccessException e) {
+                if (!pMeth.trySetAccessible()) {
+                    throw e;
+                }
+                lHandle = MethodHandles.lookup().unreflect(pMeth);
+            }
+        } catch (IllegalAccessException e) {
+            throw new WebServiceDefinitionException(
+                    String.format("WebService method NOT accessible [%s]", getServiceMethodName(pMeth)), e);
+        }
+
+        if (!Modifier.isStatic(pMeth.getModifiers())) {
+            lHandle = lHandle.bindTo(pInstance);
+        }
+        if (pMeth.getParameterCount() == 0) {
+            final MethodHandle lTarget = lHandle.asType(MethodType.methodType(Object.class));
+            return (pParam, pSink) -> lTarget.invokeExact();
+        } else if (pMeth.getParameterCount() == 2) {
+            final MethodHandle lTarget = lHandle
+                    .asType(MethodType.methodType(Object.class, Object.class, Object.class));
+            return (pParam, pSink) -> lTarget.invokeExact(pParam, pSink);
+        }
+        final MethodHandle lTarget = lHandle.asType(MethodType.methodType(Object.class, Object.class));
+        if (hasSinkParameter(pMeth)) {
+            return (pParam, pSink) -> lTarget.invokeExact(pSink);
+        }
+        return (pParam, pSink) -> lTarget.invokeExact(pParam);
+    }
+
     /*********************************************************
      * The internal classes for loading and providing WebService objects.
      *********************************************************/
     /**
-     * The internal class that holds a Service Instance.
+     * The generated call interface of a service method.
      */
-    protected static class ServiceObject {
-        protected Object instance = null;
-        protected String path = "";
-        protected String contentType = "";
-        protected Map<String, String> httpMethods = new HashMap<>(4);
-        protected Class<?> requestClass = null;
-        protected Class<?> responseClass = null;
-        protected Method serviceMethod = null;
+    @FunctionalInterface
+    protected static interface ServiceInvoker {
+        Object invoke(Object pParam, Object pSink) throws Throwable;
+    }
 
-        protected Supplier<JsonToolWrapper> json;
+    /**
+     * <pre>
+     * The content type handling of a service precomputed at registration time.
+     * Request and response data are processed as bytes without string round trips.
+     * </pre>
+     */
+    protected enum ContentKind {
+        JSON {
+            @Override
+            protected Object toParameter(ServiceObject pService, RequestMessage pRequest,
+                    Map<String, Object> pParams) throws WebServiceException {
+                if (!pService.hasParameter()) {
+                    return null;
+                }
+                try {
+                    return pParams.isEmpty()
+                            ? pService.json.get().toObject(pRequest.bodyData(), pService.requestClass)
+                            : pService.bindParameters(pRequest.bodyData(), pParams);
+                } catch (UncheckedJsonException e) {
+                    // e.g. a malformed body or an unknown parameter
+                    throw new WebServiceException(SC_400_BAD_REQUEST,
+                            String.format("Invalid WebService request data [%s] [%s]", pService.getName(),
+                                    e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+                }
+            }
 
-        protected ServiceObject(WebService pServiceAnno, Object pInstance, Class<?> pRequestClass,
-                Class<?> pResponseClass, Method pServiceMethod, Supplier<JsonToolWrapper> pJson) {
-            json = pJson;
-            instance = pInstance;
-            path = pServiceAnno.path().trim();
-            contentType = pServiceAnno.contentType().trim();
-            requestClass = pRequestClass;
-            responseClass = pResponseClass;
-            serviceMethod = pServiceMethod;
+            @Override
+            protected void write(ServiceObject pService, Object pResult, OutputStream pOut) {
+                pService.json.get().write(pResult, pOut);
+            }
+        },
+        NDJSON {
+            @Override
+            protected Object toParameter(ServiceObject pService, RequestMessage pRequest,
+                    Map<String, Object> pParams) throws WebServiceException {
+                return JSON.toParameter(pService, pRequest, pParams);
+            }
 
-            for (String meth : pServiceAnno.methods()) {
-                httpMethods.put(meth.toUpperCase(), meth.toUpperCase());
+            @Override
+            protected void write(ServiceObject pService, Object pResult, OutputStream pOut) throws IOException {
+                pService.json.get().write(pResult, pOut);
+                pOut.write('\n');
+            }
+        },
+        TEXT {
+            /**
+             * <pre>
+             * Only a String parameter gets the text.
+             * A parameter of any other type gets null - the service method is always
+             * invoked with its declared parameters, where formerly a no-arg call was attempted
+             * that failed for a method with a parameter.
+             * </pre>
+             */
+            @Override
+            protected Object toParameter(ServiceObject pService, RequestMessage pRequest,
+                    Map<String, Object> pParams) throws WebServiceException {
+                if (pService.requestClass != String.class) {
+                    return null;
+                }
+                String lText = pRequest.body();
+                // a single url parameter replaces an empty body
+                if (lText.isEmpty() && pParams.size() == 1
+                        && pParams.values().iterator().next() instanceof String lValue) {
+                    lText = lValue;
+                }
+                return lText;
+            }
+
+            @Override
+            protected void write(ServiceObject pService, Object pResult, OutputStream pOut) throws IOException {
+                if (pService.resultClass == String.class) {
+                    // if string defined return directly
+                    if (pResult != null) {
+                        pOut.write(((String) pResult).getBytes(StandardCharsets.UTF_8));
+                    }
+                } else {
+                    // this surrounds a blank string with ""
+                    pService.json.get().write(pResult, pOut);
+                }
+            }
+        },
+        UNSUPPORTED {
+            @Override
+            protected Object toParameter(ServiceObject pService, RequestMessage pRequest,
+                    Map<String, Object> pParams) throws WebServiceException {
+                throw new WebServiceException(SC_400_BAD_REQUEST,
+                        String.format("Unsupported WebService API Content Type [%s] [%s]", pService.getContentType(),
+                                pService.getName()));
             }
-        }
+
+            @Override
+            protected void write(ServiceObject pService, Object pResult, OutputStream pOut) {
+                // never called
+            }
+        };
 
         /**
          */
-        @Override
-        public String toString() {
-            return getName();
-        }
+        protected abstract Object toParameter(ServiceObject pService, RequestMessage pRequest,
+                Map<String, Object> pParams) throws WebServiceException;
 
         /**
          */
-        public String getName() {
-            return getServiceMethodName(serviceMethod);
-        }
+        protected abstract void write(ServiceObject pService, Object pResult, OutputStream pOut) throws IOException;
 
         /**
          */
-        public Class<?> getServiceClass() {
-            return instance.getClass();
+        protected static ContentKind of(String pContentType) {
+            if (pContentType.equalsIgnoreCase(APPLICATION_JSON)) {
+                return JSON;
+            } else if (pContentType.equalsIgnoreCase(APPLICATION_NDJSON)) {
+                return NDJSON;
+            } else if (pContentType.equalsIgnoreCase(TEXT_PLAIN)) {
+                return TEXT;
+            }
+            return UNSUPPORTED;
         }
+    }
+
+    /**
+     * <pre>
+     * A node of the path template trie.
+     * Literal segments take precedence over variables.
+     * </pre>
+     */
+    protected static class PathTemplateNode {
+        protected Map<String, PathTemplateNode> literals = new HashMap<>();
+        protected PathTemplateNode variable = null;
+        protected ServiceObject service = null;
 
         /**
          */
-        public boolean isMethodSupported(String pMethod) {
-            return httpMethods.containsKey(pMethod.toUpperCase());
+        protected void add(ServiceObject pService) throws WebServiceDefinitionException {
+            PathTemplateNode lNode = this;
+            for (String lSegment : pService.templateSegments) {
+                if (isPathVariable(lSegment)) {
+                    if (lNode.variable == null) {
+                        lNode.variable = new PathTemplateNode();
+                    }
+                    lNode = lNode.variable;
+                } else if (lSegment.contains("{") || lSegment.contains("}")) {
+                    throw new WebServiceDefinitionException(
+                            String.format("Invalid WebService path template segment [%s] [%s]", lSegment,
+                                    pService.getName()));
+                } else {
+                    lNode = lNode.literals.computeIfAbsent(lSegment, k -> new PathTemplateNode());
+                }
+            }
+            if (lNode.service != null) {
+                throw new WebServiceDefinitionException(
+                        String.format("WebService Path template of [%s] already defined for [%s]", pService.getName(),
+                                lNode.service.getName()));
+            }
+            lNode.service = pService;
         }
 
         /**
          */
-        public boolean isContentTypeSupported(String pContentType) {
-            return (contentType.equalsIgnoreCase(pContentType) || pContentType.isEmpty());
+        protected ServiceObject match(String[] pSegments, int pIdx) {
+            if (pIdx == pSegments.length) {
+                return service;
+            }
+            ServiceObject lService = null;
+            PathTemplateNode lNode = literals.get(pSegments[pIdx]);
+            if (lNode != null) {
+                lService = lNode.match(pSegments, pIdx + 1);
+            }
+            if (lService == null && variable != null && !pSegments[pIdx].isEmpty()) {
+                lService = variable.match(pSegments, pIdx + 1);
+            }
+            return lService;
+        }
+    }
+
+    /**
+     */
+    @FunctionalInterface
+    protected static interface StreamOpener {
+        OutputStream open() throws IOException;
+    }
+
+    /**
+     * <pre>
+     * The sink writing streamed result elements as JSON array or NDJSON lines.
+     * The output stream is opened with the first element.
+     * </pre>
+     */
+    protected static class ElementWriter implements Consumer<Object> {
+        protected StreamOpener opener;
+        protected OutputStream out = null;
+        protected JsonToolWrapper json;
+        protected boolean ndjson;
+        protected long count = 0;
+
+        protected ElementWriter(StreamOpener pOpener, JsonToolWrapper pJson, boolean pNdjson) {
+            opener = pOpener;
+            json = pJson;
+            ndjson = pNdjson;
         }
 
         /**
          */
-        public String getContentType() {
-            return contentType;
+        protected OutputStream out() throws IOException {
+            if (out == null) {
+                out = new CountingOutputStream(opener.open());
+            }
+            return out;
         }
 
         /**
          */
-        public boolean hasParameter() {
-            return (requestClass != null);
+        protected long getByteCount() {
+            return out != null ? ((CountingOutputStream) out).count : 0;
         }
 
         /**
-         * @throws InvocationTargetException
-         * @throws IllegalArgumentException
-         * @throws IllegalAccessException
-         */
-        protected Object callWith(String pRequestData)
-                throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-            Object lRet = null;
-            Object lParam = null;
-
-            if (getContentType().equalsIgnoreCase(APPLICATION_JSON)) {
-                if (hasParameter()) {
-                    lParam = json.get().toObject(pRequestData, requestClass);
-                    lRet = serviceMethod.invoke(instance, lParam);
-                } else {
-                    lRet = serviceMethod.invoke(instance);
-                }
-                lRet = json.get().toString(lRet);
-            } else if (getContentType().equalsIgnoreCase(TEXT_PLAIN)) {
-                if (hasParameter() && requestClass == String.class) {
-                    lRet = serviceMethod.invoke(instance, pRequestData);
-                } else {
-                    lRet = serviceMethod.invoke(instance);
+         */
+        @Override
+        public void accept(Object pElement) {
+            try {
+                OutputStream lOut = out();
+                if (!ndjson) {
+                    lOut.write(count == 0 ? '[' : ',');
                 }
-                if (responseClass == String.class) {
-                    // if string defined return directly
-                    return lRet;
+                json.write(pElement, lOut);
+                if (ndjson) {
+                    lOut.write('\n');
                 }
-                // this surrounds a blank string with ""
-                lRet = json.get().toString(lRet);
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }
 
-            return lRet;
+        /**
+         */
+        protected void finish() throws IOException {
+            if (!ndjson) {
+                out().write(count == 0 ? new byte[] { '[', ']' } : new byte[] { ']' });
+            } else {
+                out();
+            }
         }
     }
 
     /**
-     * Exceptions thrown during Service execution.
+     * An output stream counting the written bytes.
      */
-    protected static class WebServiceException extends Exception {
-        private static final long serialVersionUID = 1L;
-        private final String httpStatus;
-
-        WebServiceException(String pHttpStatus, String pMsg) {
-            super(pMsg);
-            httpStatus = pHttpStatus;
-        }
+    protected static class CountingOutputStream extends FilterOutputStream {
+        protected long count = 0;
 
-        WebServiceException(String pMsg, Throwable pCause) {
-            super(pMsg, pCause);
-            httpStatus = "direct call";
+        protected CountingOutputStream(OutputStream pOut) {
+            super(pOut);
         }
 
-        WebServiceException(String pMsg) {
-            super(pMsg);
-            httpStatus = "direct call";
+        @Override
+        public void write(int pByte) throws IOException {
+            out.write(pByte);
+            count++;
         }
 
-        public String getHttpStatus() {
-            return httpStatus;
+        @Override
+        public void write(byte[] pData, int pOffset, int pLength) throws IOException {
+            out.write(pData, pOffset, pLength);
+            count += pLength;
         }
     }
 
-    /*********************************************************
-     * The public classes.
-     *********************************************************/
     /**
-     * Exceptions thrown during Service initialization/creation.
+     * <pre>
+     * The timing breakdown of a single call.
+     * Each step records the time since the previous mark,
+     * the remaining time was spent waiting e.g. for a permit or an executor.
+     * </pre>
      */
-    public static class WebServiceDefinitionException extends Exception {
-        private static final long serialVersionUID = 1L;
+    protected static class CallTiming {
+        protected final long start = System.nanoTime();
+        protected long mark = start;
+        protected long deserializeNanos = 0;
+        protected long invokeNanos = 0;
+        protected long serializeNanos = 0;
+        // the response is completed by another thread
+        protected boolean detached = false;
+        // overrides of the http response values e.g. for streamed responses
+        protected String status = null;
+        protected long responseBytes = -1;
 
-        public WebServiceDefinitionException(String pMsg) {
-            super(pMsg);
+        /**
+         */
+        protected void mark() {
+            mark = System.nanoTime();
         }
 
-        public WebServiceDefinitionException(String pMsg, Throwable pCause) {
-            super(pMsg, pCause);
+        /**
+         */
+        protected long lap() {
+            long lNow = System.nanoTime();
+            long lNanos = lNow - mark;
+            mark = lNow;
+            return lNanos;
         }
-    }
 
-    /*********************************************************
-     * The actual JamnServer.ContentProvider Interface Implementation.
-     *********************************************************/
-    @Override
-    public void handleContentProcessing(RequestMessage pRequest, ResponseMessage pResponse) {
+        /**
+         */
+        protected void deserialized() {
+            deserializeNanos += lap();
+        }
 
-        ServiceObject lService = null;
-        Object lResult = null;
-        byte[] lData = null;
+        /**
+         */
+        protected void invoked() {
+            invokeNanos += lap();
+        }
 
-        try {
-            if (pRequest.isMethod("GET") || pRequest.isMethod("POST")) {
-                lService = getServiceInstanceFor(pRequest.getPath(), pRequest.getMethod(),
-                        pRequest.getContentType());
+        /**
+         */
+        protected void serialized() {
+            serializeNanos += lap();
+        }
 
-                lResult = lService.callWith(pRequest.body());
+        /**
+         */
+        protected long totalNanos() {
+            return System.nanoTime() - start;
+        }
+    }
 
-                if (lResult instanceof String result) {
-                    lData = result.getBytes();
-                    pResponse.setContentType(lService.getContentType());
-                    pResponse.writeToContent(lData);
-                } else {
-                    throw new WebServiceException(SC_500_INTERNAL_ERROR,
-                            String.format("Unsupported WebService API Return Type [%s] [%s]", lResult.getClass(),
-                                    lService.getName()));
+    /**
+     * <pre>
+     * The call statistics of a service.
+     * Latencies are counted in buckets with upper bounds in milliseconds.
+     * </pre>
+     */
+    protected static class ServiceMetrics {
+        protected static final long[] BUCKET_MILLIS = { 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000 };
+
+        protected final LongAdder calls = new LongAdder();
+        protected final LongAdder coalesced = new LongAdder();
+        protected final LongAdder sharedExecutions = new LongAdder();
+        protected final LongAdder sharedNanos = new LongAdder();
+        protected final LongAdder errors = new LongAdder();
+        protected final AtomicInteger inFlight = new AtomicInteger();
+        protected final LongAdder totalNanos = new LongAdder();
+        protected final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+        protected final LongAdder requestBytes = new LongAdder();
+        protected final LongAdder responseBytes = new LongAdder();
+        protected final LongAdder[] latencyBuckets = new LongAdder[BUCKET_MILLIS.length + 1];
+        protected final Map<String, LongAdder> errorsByStatus = new ConcurrentHashMap<>();
+
+        protected ServiceMetrics() {
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                latencyBuckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         */
+        protected CallTiming begin() {
+            inFlight.incrementAndGet();
+            return new CallTiming();
+        }
+
+        /**
+         * Returns the total nanos of the call.
+         */
+        protected long end(CallTiming pTiming, String pStatus, long pRequestBytes, long pResponseBytes) {
+            long lNanos = pTiming.totalNanos();
+            inFlight.decrementAndGet();
+            calls.increment();
+            totalNanos.add(lNanos);
+            maxNanos.accumulate(lNanos);
+            requestBytes.add(pRequestBytes);
+            responseBytes.add(pResponseBytes);
+
+            long lMillis = TimeUnit.NANOSECONDS.toMillis(lNanos);
+            int lIdx = 0;
+            while (lIdx < BUCKET_MILLIS.length && lMillis > BUCKET_MILLIS[lIdx]) {
+                lIdx++;
+            }
+            latencyBuckets[lIdx].increment();
+
+            if (pStatus == null || !pStatus.startsWith("2")) {
+                errors.increment();
+                errorsByStatus.computeIfAbsent(String.valueOf(pStatus), k -> new LongAdder()).increment();
+            }
+            return lNanos;
+        }
+
+        /**
+         * The execution of a coalescing service shared by its calls.
+         */
+        protected void sharedExecution(CallTiming pTiming) {
+            sharedExecutions.increment();
+            sharedNanos.add(pTiming.totalNanos());
+        }
+
+        /**
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> lMap = new LinkedHashMap<>();
+            long lCalls = calls.sum();
+            lMap.put("calls", lCalls);
+            lMap.put("inFlight", inFlight.get());
+            lMap.put("coalesced", coalesced.sum());
+            long lShared = sharedExecutions.sum();
+            lMap.put("sharedExecutions", lShared);
+            lMap.put("sharedAvgMillis", lShared > 0 ? TimeUnit.NANOSECONDS.toMillis(sharedNanos.sum() / lShared) : 0);
+            lMap.put("errors", errors.sum());
+            Map<String, Long> lErrors = new TreeMap<>();
+            errorsByStatus.forEach((status, count) -> lErrors.put(status, count.sum()));
+            lMap.put("errorsByStatus", lErrors);
+            lMap.put("avgMillis", lCalls > 0 ? TimeUnit.NANOSECONDS.toMillis(totalNanos.sum() / lCalls) : 0);
+            lMap.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+            Map<String, Long> lLatency = new LinkedHashMap<>();
+            for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+                lLatency.put("<=" + BUCKET_MILLIS[i], latencyBuckets[i].sum());
+            }
+            lLatency.put(">" + BUCKET_MILLIS[BUCKET_MILLIS.length - 1], latencyBuckets[BUCKET_MILLIS.length].sum());
+            lMap.put("latencyMillis", lLatency);
+            lMap.put("requestBytes", requestBytes.sum());
+            lMap.put("responseBytes", responseBytes.sum());
+            return lMap;
+        }
+    }
+
+    /**
+     * <pre>
+     * A bounded cache of serialized service responses.
+     * The key is made from the url parameters and the request body,
+     * the body is compared on a hit so hash collisions do not matter.
+     * </pre>
+     */
+    protected static class ResponseCache {
+        protected Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+        protected long ttlMillis;
+        protected int maxEntries;
+
+        protected ResponseCache(long pTtlMillis, int pMaxEntries) {
+            ttlMillis = pTtlMillis;
+            maxEntries = Math.max(1, pMaxEntries);
+        }
+
+        /**
+         */
+        protected static String keyFor(Map<String, Object> pParams, byte[] pBody) {
+            return new StringBuilder().append(pParams).append('#').append(Arrays.hashCode(pBody)).toString();
+        }
+
+        /**
+         */
+        protected byte[] get(Map<String, Object> pParams, byte[] pBody) {
+            CacheEntry lEntry = entries.get(keyFor(pParams, pBody));
+            if (lEntry != null && lEntry.expires > System.currentTimeMillis() && Arrays.equals(lEntry.body, pBody)) {
+                return lEntry.data;
+            }
+            return null;
+        }
+
+        /**
+         */
+        protected void put(Map<String, Object> pParams, byte[] pBody, byte[] pData) {
+            long lNow = System.currentTimeMillis();
+            if (entries.size() >= maxEntries) {
+                entries.values().removeIf(entry -> entry.expires <= lNow);
+            }
+            if (entries.size() >= maxEntries) {
+                // remove the oldest entry
+                entries.entrySet().stream().min((e1, e2) -> Long.compare(e1.getValue().expires, e2.getValue().expires))
+                        .ifPresent(entry -> entries.remove(entry.getKey()));
+            }
+            entries.put(keyFor(pParams, pBody), new CacheEntry(pBody, pData, lNow + ttlMillis));
+        }
+
+        /**
+         */
+        protected void clear() {
+            entries.clear();
+        }
+
+        /**
+         */
+        protected int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * <pre>
+     * The in-flight calls of a coalescing service.
+     * Identical calls (http method, url parameters and body) share one execution.
+     * A call is removed before its result is published, so results never get stale.
+     * </pre>
+     */
+    protected static class SingleFlight {
+        protected Map<String, InFlightCall> calls = new ConcurrentHashMap<>();
+        // the number of calls that joined a running execution
+        protected LongAdder joined;
+
+        protected SingleFlight(LongAdder pJoined) {
+            joined = pJoined;
+        }
+
+        /**
+         */
+        protected CompletableFuture<byte[]> share(RequestMessage pRequest, Map<String, Object> pParams,
+                Supplier<CompletableFuture<byte[]>> pCall) {
+            byte[] lBody = pRequest.bodyData();
+            String lKey = pRequest.getMethod() + ResponseCache.keyFor(pParams, lBody);
+            InFlightCall lCall = new InFlightCall(lBody);
+
+            InFlightCall lRunning = calls.putIfAbsent(lKey, lCall);
+            if (lRunning != null) {
+                if (Arrays.equals(lRunning.body, lBody)) {
+                    joined.increment();
+                    return lRunning.result.copy();
                 }
+                // same hash different body
+                return pCall.get();
+            }
+
+            try {
+                pCall.get().whenComplete((data, error) -> {
+                    calls.remove(lKey, lCall);
+                    if (error == null) {
+                        lCall.result.complete(data);
+                    } else {
+                        lCall.result.completeExceptionally(error);
+                    }
+                });
+            } catch (RuntimeException e) {
+                calls.remove(lKey, lCall);
+                lCall.result.completeExceptionally(e);
+            }
+            return lCall.result;
+        }
+
+        /**
+         */
+        protected int size() {
+            return calls.size();
+        }
+    }
+
+    /**
+     */
+    protected static class InFlightCall {
+        protected byte[] body;
+        protected CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        protected InFlightCall(byte[] pBody) {
+            body = pBody;
+        }
+    }
+
+    /**
+     */
+    protected static class CacheEntry {
+        protected byte[] body;
+        protected byte[] data;
+        protected long expires;
+
+        protected CacheEntry(byte[] pBody, byte[] pData, long pExpires) {
+            body = pBody;
+            data = pData;
+            expires = pExpires;
+        }
+    }
+
+    /**
+     * The result of a service lookup including the path variables.
+     */
+    protected static class ServiceMatch {
+        protected ServiceObject service;
+        protected Map<String, String> pathVariables;
+
+        protected ServiceMatch(ServiceObject pService, Map<String, String> pPathVariables) {
+            service = pService;
+            pathVariables = pPathVariables;
+        }
+
+        /**
+         * Path variables win over query parameters with the same name.
+         */
+        protected Map<String, Object> getParameters(Map<String, List<String>> pQueryParams) {
+            if (pathVariables.isEmpty() && pQueryParams.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            Map<String, Object> lParams = new LinkedHashMap<>();
+            pQueryParams.forEach((key, values) -> lParams.put(key, values.size() == 1 ? values.get(0) : values));
+            lParams.putAll(pathVariables);
+            return lParams;
+        }
+
+        /**
+         */
+        protected Map<String, Object> getParameters() {
+            return getParameters(Collections.emptyMap());
+        }
+    }
+
+    /**
+     * The internal class that holds a Service Instance.
+     */
+    protected static class ServiceObject {
+        protected Object instance = null;
+        protected String path = "";
+        protected String contentType = "";
+        protected Map<String, String> httpMethods = new HashMap<>(4);
+        protected Class<?> requestClass = null;
+        protected Class<?> responseClass = null;
+        // the result class or the value class of an asynchronous service
+        protected Class<?> resultClass = null;
+        protected boolean isAsync = false;
+        // results are written element by element
+        protected boolean isStreaming = false;
+        protected boolean hasSink = false;
+        protected long timeoutMillis = 0;
+        protected ResponseCache cache = null;
+        protected SingleFlight singleFlight = null;
+        // limits the concurrent executions or null
+        protected Semaphore permits = null;
+        protected long maxWaitMillis = 0;
+        protected Executor executor = null;
+        protected ServiceMetrics metrics = new ServiceMetrics();
+        protected String[] invalidates;
+        protected Consumer<String> invalidator = null;
+        protected Method serviceMethod = null;
+        protected ServiceInvoker invoker = null;
+        protected ContentKind contentKind;
+        // the segments of a path template or null
+        protected String[] templateSegments = null;
+
+        protected Supplier<JsonToolWrapper> json;
+
+        protected ServiceObject(WebService pServiceAnno, Object pInstance, Class<?> pRequestClass,
+                Class<?> pResponseClass, Method pServiceMethod, Supplier<JsonToolWrapper> pJson) {
+            json = pJson;
+            instance = pInstance;
+            setPath(pServiceAnno.path().trim());
+            contentType = pServiceAnno.contentType().trim();
+            contentKind = ContentKind.of(contentType);
+            requestClass = pRequestClass;
+            responseClass = pResponseClass;
+            serviceMethod = pServiceMethod;
+            isAsync = CompletionStage.class.isAssignableFrom(responseClass);
+            hasSink = hasSinkParameter(serviceMethod);
+            isStreaming = hasSink || Stream.class.isAssignableFrom(responseClass)
+                    || Iterator.class.isAssignableFrom(responseClass);
+            resultClass = isAsync ? getAsyncResultClassFrom(serviceMethod) : responseClass;
+            timeoutMillis = pServiceAnno.timeoutMillis();
+            if (pServiceAnno.cacheTtlMillis() > 0) {
+                cache = new ResponseCache(pServiceAnno.cacheTtlMillis(), pServiceAnno.cacheMaxEntries());
+            }
+            invalidates = pServiceAnno.invalidates().clone();
+            if (pServiceAnno.coalesce()) {
+                singleFlight = new SingleFlight(metrics.coalesced);
+            }
+            if (pServiceAnno.maxConcurrent() > 0) {
+                permits = new Semaphore(pServiceAnno.maxConcurrent(), true);
+                maxWaitMillis = pServiceAnno.maxWaitMillis();
+            }
+
+            for (String meth : pServiceAnno.methods()) {
+                httpMethods.put(meth.toUpperCase(), meth.toUpperCase());
+            }
+        }
+
+        /**
+         */
+        @Override
+        public String toString() {
+            return getName();
+        }
+
+        /**
+         */
+        public String getName() {
+            return getServiceMethodName(serviceMethod);
+        }
+
+        /**
+         */
+        public Class<?> getServiceClass() {
+            return instance.getClass();
+        }
+
+        /**
+         */
+        public boolean isMethodSupported(String pMethod) {
+            return httpMethods.containsKey(pMethod.toUpperCase());
+        }
+
+        /**
+         */
+        public boolean isContentTypeSupported(String pContentType) {
+            return (contentType.equalsIgnoreCase(pContentType) || pContentType.isEmpty());
+        }
+
+        /**
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         */
+        public boolean hasParameter() {
+            return (requestClass != null);
+        }
+
+        /**
+         * @throws InvocationTargetException
+         * @throws IOException
+         */
+        protected Object callWith(String pRequestData, Map<String, Object> pParams)
+                throws InvocationTargetException, IOException, WebServiceException {
+            RequestMessage lRequest = new RequestMessage(new HttpHeader());
+            lRequest.setBody(pRequestData);
+            ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+            callWith(lRequest, pParams, lOut);
+            return lOut.toString(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * <pre>
+         * Call the service writing the result directly to the output stream.
+         * The caller waits for the result of an asynchronous service.
+         * </pre>
+         */
+        protected void callWith(RequestMessage pRequest, Map<String, Object> pParams, OutputStream pOut)
+                throws InvocationTargetException, IOException, WebServiceException {
+            callWith(pRequest, pParams, pOut, new CallTiming());
+        }
+
+        /**
+         */
+        protected void callWith(RequestMessage pRequest, Map<String, Object> pParams, OutputStream pOut,
+                CallTiming pTiming) throws InvocationTargetException, IOException, WebServiceException {
+            if (isStreaming) {
+                ElementWriter lWriter = new ElementWriter(() -> pOut, json.get(), contentKind == ContentKind.NDJSON);
+                Object lParam = contentKind.toParameter(this, pRequest, pParams);
+                pTiming.deserialized();
+                streamTo(lParam, lWriter, pTiming);
+                lWriter.finish();
+                return;
+            }
+            if (writeCached(pRequest, pParams, pOut)) {
+                pTiming.serialized();
+                return;
+            }
+            acquirePermit();
+            try {
+                if (singleFlight != null) {
+                    CompletableFuture<byte[]> lShared = shareCall(pRequest, pParams, (CallTiming lTiming) -> {
+                        try {
+                            return CompletableFuture.completedFuture(callForBytes(pRequest, pParams, lTiming));
+                        } catch (Exception e) {
+                            return CompletableFuture.failedFuture(e);
+                        }
+                    });
+                    pOut.write(awaitShared(lShared));
+                    pTiming.invoked();
+                    return;
+                }
+                pTiming.mark();
+                Object lParam = contentKind.toParameter(this, pRequest, pParams);
+                pTiming.deserialized();
+                Object lResult = invoke(lParam);
+                if (isAsync) {
+                    lResult = awaitResult(toFuture(lResult));
+                }
+                pTiming.invoked();
+                writeResult(pRequest, pParams, lResult, pOut);
+                pTiming.serialized();
+            } finally {
+                releasePermit();
+            }
+        }
+
+        /**
+         * <pre>
+         * Wait up to maxWaitMillis for a free execution of a limited service.
+         * </pre>
+         */
+        protected void acquirePermit() throws WebServiceException, InterruptedIOException {
+            if (permits != null) {
+                try {
+                    if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                        throw new WebServiceException(SC_429_TOO_MANY_REQUESTS,
+                                String.format("WebService concurrency limit reached [%s]", getName()));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(String.format("WebService call interrupted [%s]", getName()));
+                }
+            }
+        }
+
+        /**
+         */
+        protected void releasePermit() {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+
+        /**
+         */
+        protected byte[] callForBytes(RequestMessage pRequest, Map<String, Object> pParams, CallTiming pTiming)
+                throws InvocationTargetException, IOException, WebServiceException {
+            pTiming.mark();
+            Object lParam = contentKind.toParameter(this, pRequest, pParams);
+            pTiming.deserialized();
+            Object lResult = invoke(lParam);
+            if (isAsync) {
+                lResult = awaitResult(toFuture(lResult));
+            }
+            pTiming.invoked();
+            ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+            writeResult(pRequest, pParams, lResult, lOut);
+            pTiming.serialized();
+            return lOut.toByteArray();
+        }
+
+        /**
+         * <pre>
+         * Call an asynchronous service without waiting for the result.
+         * The future delivers the serialized result.
+         * </pre>
+         */
+        protected CompletableFuture<byte[]> callAsync(RequestMessage pRequest, Map<String, Object> pParams,
+                CallTiming pTiming) {
+            try {
+                acquirePermit();
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            Function<CallTiming, CompletableFuture<byte[]>> lCall = (CallTiming lTiming) -> {
+                try {
+                    if (executor != null) {
+                        return CompletableFuture.supplyAsync(() -> {
+                            try {
+                                return callForBytes(pRequest, pParams, lTiming);
+                            } catch (Exception e) {
+                                throw new CompletionException(e);
+                            }
+                        }, executor);
+                    }
+                    lTiming.mark();
+                    Object lParam = contentKind.toParameter(this, pRequest, pParams);
+                    lTiming.deserialized();
+                    return toFuture(invoke(lParam)).thenApply(result -> {
+                        lTiming.invoked();
+                        byte[] lData = toBytes(pRequest, pParams, result);
+                        lTiming.serialized();
+                        return lData;
+                    });
+                } catch (RejectedExecutionException e) {
+                    return CompletableFuture.failedFuture(new WebServiceException(SC_503_SERVICE_UNAVAILABLE,
+                            String.format("WebService executor rejected call [%s]", getName())));
+                } catch (Exception e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            };
+            CompletableFuture<byte[]> lFuture;
+            if (singleFlight != null) {
+                lFuture = shareCall(pRequest, pParams, lCall).whenComplete((data, error) -> pTiming.invoked());
+            } else {
+                lFuture = lCall.apply(pTiming);
+            }
+            lFuture.whenComplete((data, error) -> releasePermit());
+            return lFuture;
+        }
+
+        /**
+         * <pre>
+         * Join or start the shared execution of a coalescing service.
+         * The execution has its own timing that is recorded separately,
+         * every call counts the time waited for it as its invoke time.
+         * </pre>
+         */
+        protected CompletableFuture<byte[]> shareCall(RequestMessage pRequest, Map<String, Object> pParams,
+                Function<CallTiming, CompletableFuture<byte[]>> pCall) {
+            return singleFlight.share(pRequest, pParams, () -> {
+                CallTiming lExecution = new CallTiming();
+                return pCall.apply(lExecution).whenComplete((data, error) -> metrics.sharedExecution(lExecution));
+            });
+        }
+
+        /**
+         */
+        protected byte[] toBytes(RequestMessage pRequest, Map<String, Object> pParams, Object pResult) {
+            ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+            try {
+                writeResult(pRequest, pParams, pResult, lOut);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return lOut.toByteArray();
+        }
+
+        /**
+         */
+        protected byte[] awaitShared(CompletableFuture<byte[]> pFuture)
+                throws InvocationTargetException, IOException, WebServiceException {
+            try {
+                return pFuture.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("WebService call interrupted [%s]", getName()));
+            } catch (ExecutionException e) {
+                Throwable lCause = e.getCause();
+                if (lCause instanceof InvocationTargetException lExp) {
+                    throw lExp;
+                } else if (lCause instanceof IOException lExp) {
+                    throw lExp;
+                } else if (lCause instanceof WebServiceException lExp) {
+                    throw lExp;
+                } else if (lCause instanceof RuntimeException lExp) {
+                    throw lExp;
+                }
+                throw new InvocationTargetException(lCause);
+            }
+        }
+
+        /**
+         * <pre>
+         * Write the result of a successful call.
+         * A cached service keeps the serialized bytes.
+         * </pre>
+         */
+        protected void writeResult(RequestMessage pRequest, Map<String, Object> pParams, Object pResult,
+                OutputStream pOut) throws IOException {
+            if (cache == null) {
+                contentKind.write(this, pResult, pOut);
+            } else {
+                ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+                contentKind.write(this, pResult, lOut);
+                byte[] lData = lOut.toByteArray();
+                cache.put(pParams, pRequest.bodyData(), lData);
+                pOut.write(lData);
+            }
+            for (String lPath : invalidates) {
+                invalidator.accept(lPath);
+            }
+        }
+
+        /**
+         * Returns true if a cached response was written.
+         */
+        protected boolean writeCached(RequestMessage pRequest, Map<String, Object> pParams, OutputStream pOut)
+                throws IOException {
+            if (cache != null) {
+                byte[] lData = cache.get(pParams, pRequest.bodyData());
+                if (lData != null) {
+                    pOut.write(lData);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * <pre>
+         * A copy of the service future with the service timeout applied.
+         * So the timeout does not affect the original future of the service.
+         * </pre>
+         */
+        @SuppressWarnings("unchecked")
+        protected CompletableFuture<Object> toFuture(Object pResult) {
+            if (pResult == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Object> lFuture = ((CompletionStage<Object>) pResult).toCompletableFuture().copy();
+            if (timeoutMillis > 0) {
+                lFuture.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            return lFuture;
+        }
+
+        /**
+         */
+        protected Object awaitResult(CompletableFuture<Object> pFuture)
+                throws InvocationTargetException, InterruptedIOException, WebServiceException {
+            try {
+                return pFuture.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("WebService call interrupted [%s]", getName()));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    throw new WebServiceException(SC_504_GATEWAY_TIMEOUT,
+                            String.format("WebService timeout [%s] [%s]", timeoutMillis, getName()));
+                }
+                throw new InvocationTargetException(e.getCause());
+            }
+        }
+
+        /**
+         */
+        public boolean isAsync() {
+            return isAsync;
+        }
+
+        /**
+         * Asynchronous services and services with an executor do not block the request thread.
+         */
+        public boolean isDetached() {
+            return isAsync || executor != null;
+        }
+
+        /**
+         */
+        public boolean isStreaming() {
+            return isStreaming;
+        }
+
+        /**
+         * <pre>
+         * Pass all result elements to the writer.
+         * A sink must be used during the call of the service method.
+         * </pre>
+         */
+        @SuppressWarnings("unchecked")
+        protected void streamTo(Object pParam, ElementWriter pWriter, CallTiming pTiming)
+                throws InvocationTargetException, WebServiceException, InterruptedIOException {
+            acquirePermit();
+            pTiming.mark();
+            try {
+                Object lResult = invoke(pParam, hasSink ? pWriter : null);
+                if (lResult instanceof Stream<?> lStream) {
+                    try (Stream<Object> lElements = (Stream<Object>) lStream) {
+                        lElements.forEachOrdered(pWriter);
+                    }
+                } else if (lResult instanceof Iterator<?> lIterator) {
+                    ((Iterator<Object>) lIterator).forEachRemaining(pWriter);
+                }
+                // serialization is interleaved with the element production
+                pTiming.invoked();
+            } finally {
+                releasePermit();
+            }
+        }
+
+        /**
+         * <pre>
+         * Merge path and query parameters into the JSON body
+         * and convert the fields to the request object.
+         * Parameters override body fields with the same name.
+         * </pre>
+         */
+        @SuppressWarnings("unchecked")
+        protected Object bindParameters(byte[] pBody, Map<String, Object> pParams) {
+            Map<String, Object> lFields = new LinkedHashMap<>();
+            if (pBody.length > 0) {
+                lFields.putAll(json.get().toObject(pBody, Map.class));
+            }
+            lFields.putAll(pParams);
+            return json.get().convert(lFields, requestClass);
+        }
+
+        /**
+         */
+        protected void setPath(String pPath) {
+            path = pPath;
+            templateSegments = path.contains("{") ? splitPath(path) : null;
+        }
+
+        /**
+         */
+        public boolean hasPathTemplate() {
+            return templateSegments != null;
+        }
+
+        /**
+         */
+        protected Map<String, String> getPathVariables(String[] pSegments) {
+            Map<String, String> lVariables = new LinkedHashMap<>();
+            for (int i = 0; i < templateSegments.length; i++) {
+                if (isPathVariable(templateSegments[i])) {
+                    String lName = templateSegments[i].substring(1, templateSegments[i].length() - 1);
+                    lVariables.put(lName, decodePathSegment(pSegments[i]));
+                }
+            }
+            return lVariables;
+        }
+
+        /**
+         * Exceptions thrown by the service method are wrapped like by reflection.
+         */
+        protected Object invoke(Object pParam) throws InvocationTargetException {
+            return invoke(pParam, null);
+        }
+
+        /**
+         */
+        protected Object invoke(Object pParam, Consumer<Object> pSink) throws InvocationTargetException {
+            try {
+                return invoker.invoke(pParam, pSink);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    /**
+     * Exceptions thrown during Service execution.
+     */
+    protected static class WebServiceException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final String httpStatus;
+
+        WebServiceException(String pHttpStatus, String pMsg) {
+            super(pMsg);
+            httpStatus = pHttpStatus;
+        }
+
+        WebServiceException(String pMsg, Throwable pCause) {
+            super(pMsg, pCause);
+            httpStatus = "direct call";
+        }
+
+        WebServiceException(String pMsg) {
+            super(pMsg);
+            httpStatus = "direct call";
+        }
+
+        public String getHttpStatus() {
+            return httpStatus;
+        }
+    }
+
+    /**
+     * <pre>
+     * Call a single batch entry like an http request.
+     * Errors are reported by the status of the result.
+     * </pre>
+     */
+    protected BatchResult callBatchEntry(BatchEntry pEntry) {
+        BatchResult lResult = new BatchResult(pEntry.path);
+        ServiceObject lService = null;
+        CallTiming lTiming = null;
+        RequestMessage lRequest = new RequestMessage(new HttpHeader());
+
+        try {
+            ServiceMatch lMatch = getServiceInstanceFor(RequestMessage.stripQuery(pEntry.path), pEntry.method, "");
+            lService = lMatch.service;
+            if (lService.getServiceClass() == BatchService.class) {
+                throw new WebServiceException(SC_400_BAD_REQUEST, "Nested WebService batch calls not supported");
+            }
+            lTiming = lService.metrics.begin();
+
+            if (pEntry.body instanceof String lText) {
+                lRequest.setBody(lText);
+            } else if (pEntry.body != null) {
+                ByteArrayOutputStream lBody = new ByteArrayOutputStream();
+                jsonTool.write(pEntry.body, lBody);
+                lRequest.setBody(lBody.toByteArray());
+            }
+            Map<String, List<String>> lQuery = RequestMessage.parseQueryParameters(pEntry.path,
+                    StandardCharsets.UTF_8.name());
+
+            ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+            lService.callWith(lRequest, lMatch.getParameters(lQuery), lOut, lTiming);
+            lTiming.responseBytes = lOut.size();
+            lResult.body = toBatchBody(lService, lOut);
+            lResult.status = SC_200_OK;
+        } catch (WebServiceException wse) {
+            LOG.fine(() -> String.format("WebService API Batch Error: [%s]", wse.getMessage()));
+            lResult.status = wse.getHttpStatus();
+        } catch (Exception e) {
+            String info = lService != null ? lService.getName() : pEntry.path;
+            LOG.severe(String.format("WebService Batch Entry internal/runtime ERROR: %s %s %s %s", e.toString(), LS,
+                    info, getStackTraceFrom(e)));
+            lResult.status = SC_500_INTERNAL_ERROR;
+        } finally {
+            if (lTiming != null) {
+                recordCall(lService, lTiming, lResult.status, lRequest.bodyData().length,
+                        Math.max(lTiming.responseBytes, 0));
+            }
+        }
+        return lResult;
+    }
+
+    /**
+     * <pre>
+     * JSON output is parsed to a generic value by the json tool
+     * and serialized again with the whole batch result,
+     * any other output is passed as string.
+     * </pre>
+     */
+    protected Object toBatchBody(ServiceObject pService, ByteArrayOutputStream pOut) {
+        if (pOut.size() == 0) {
+            return null;
+        }
+        if (pService.contentKind == ContentKind.JSON) {
+            return jsonTool.toObject(pOut.toByteArray(), Object.class);
+        }
+        return pOut.toString(StandardCharsets.UTF_8);
+    }
+
+    /*********************************************************
+     * The public classes.
+     *********************************************************/
+    /**
+     * <pre>
+     * The built-in batch service to call several services with one request.
+     * Request example: [{"path":"/api/about","method":"GET"}, {"path":"/api/echo","body":"Hello"}]
+     * 
+     * Each result contains the path, the http status and the service response
+ * as json value for JSON services - otherwise as string.
+     * </pre>
+     */
+    public static class BatchService {
+        public static final String PATH = "/batch";
+
+        protected JamnWebServiceProvider provider;
+        protected Executor executor;
+
+        public BatchService(JamnWebServiceProvider pProvider, Executor pExecutor) {
+            provider = pProvider;
+            executor = pExecutor;
+        }
+
+        /**
+         */
+        @WebService(path = PATH, methods = { "POST" }, contentType = APPLICATION_JSON)
+        public BatchResult[] callAll(BatchEntry[] pEntries) {
+            List<CompletableFuture<BatchResult>> lCalls = new ArrayList<>(pEntries.length);
+            for (BatchEntry lEntry : pEntries) {
+                lCalls.add(CompletableFuture.supplyAsync(() -> provider.callBatchEntry(lEntry), executor));
+            }
+
+            BatchResult[] lResults = new BatchResult[lCalls.size()];
+            for (int i = 0; i < lResults.length; i++) {
+                lResults[i] = lCalls.get(i).join();
+            }
+            return lResults;
+        }
+    }
+
+    /**
+     */
+    public static class BatchEntry {
+        public String path = "";
+        public String method = "POST";
+        // a string is passed as is - any other value as json
+        public Object body = null;
+    }
+
+    /**
+     */
+    public static class BatchResult {
+        public String path = "";
+        public String status = "";
+        // a generic json value for JSON services - otherwise the output string
+        public Object body = null;
+
+        public BatchResult() {
+        }
+
+        public BatchResult(String pPath) {
+            path = pPath;
+        }
+    }
+
+    /**
+     * Exceptions thrown during Service initialization/creation.
+     */
+    public static class WebServiceDefinitionException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public WebServiceDefinitionException(String pMsg) {
+            super(pMsg);
+        }
+
+        public WebServiceDefinitionException(String pMsg, Throwable pCause) {
+            super(pMsg, pCause);
+        }
+    }
+
+    /*********************************************************
+     * The actual JamnServer.ContentProvider Interface Implementation.
+     *********************************************************/
+    @Override
+    public void handleContentProcessing(RequestMessage pRequest, ResponseMessage pResponse) {
+
+        ServiceObject lService = null;
+        CallTiming lTiming = null;
+
+        try {
+            if (pRequest.isMethod("GET") || pRequest.isMethod("POST")) {
+                ServiceMatch lMatch = getServiceInstanceFor(pRequest.getPathWithoutQuery(), pRequest.getMethod(),
+                        pRequest.getContentType());
+                lService = lMatch.service;
+                lTiming = lService.metrics.begin();
+                Map<String, Object> lParams = lMatch.getParameters(pRequest.getQueryParameters());
+
+                if (lService.isStreaming()) {
+                    handleStreamingCall(lService, pRequest, lParams, pResponse, lTiming);
+                    return;
+                }
+                if (lService.isDetached()) {
+                    handleAsyncCall(lService, pRequest, lParams, pResponse, lTiming);
+                    return;
+                }
+                lService.callWith(pRequest, lParams, pResponse.getContentStream(), lTiming);
+                pResponse.setContentType(lService.getContentType());
                 pResponse.setStatus(SC_200_OK);
             } else if (pRequest.isMethod("OPTIONS")) {
                 pResponse.setStatus(SC_204_NO_CONTENT);
@@ -438,6 +1833,7 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
             }
         } catch (WebServiceException wse) {
             LOG.fine(() -> String.format("WebService API Error: [%s]", wse.getMessage()));
+            pResponse.resetContent();
             pResponse.setStatus(wse.getHttpStatus());
         } catch (Exception e) {
             String info = lService != null ? lService.getName() : "";
@@ -445,17 +1841,159 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
             LOG.severe(
                     String.format("WebService Request Handling internal/runtime ERROR: %s %s %s", e.toString(), LS,
                             info));
+            pResponse.resetContent();
             pResponse.setStatus(SC_500_INTERNAL_ERROR);
+        } finally {
+            if (lTiming != null && !lTiming.detached) {
+                recordCall(lService, lTiming, pRequest, pResponse);
+            }
         }
     }
 
     /**
      */
-    protected ServiceObject getServiceInstanceFor(String pPath, String pMethod, String pContentType)
+    protected void recordCall(ServiceObject pService, CallTiming pTiming, RequestMessage pRequest,
+            ResponseMessage pResponse) {
+        String lStatus = pTiming.status != null ? pTiming.status : pResponse.getStatus();
+        long lResponseBytes = pTiming.responseBytes >= 0 ? pTiming.responseBytes : pResponse.getContentSize();
+        recordCall(pService, pTiming, lStatus, pRequest.bodyData().length, lResponseBytes);
+    }
+
+    /**
+     * Update the service metrics and log a slow call with its timing breakdown.
+     */
+    protected void recordCall(ServiceObject pService, CallTiming pTiming, String pStatus, long pRequestBytes,
+            long pResponseBytes) {
+        long lNanos = pService.metrics.end(pTiming, pStatus, pRequestBytes, pResponseBytes);
+        if (slowCallMillis > 0 && TimeUnit.NANOSECONDS.toMillis(lNanos) >= slowCallMillis) {
+            long lWait = lNanos - pTiming.deserializeNanos - pTiming.invokeNanos - pTiming.serializeNanos;
+            LOG.warning(() -> String.format(
+                    "WebService slow call [%s] [%s] total [%d ms] wait [%d ms] deserialize [%d ms] invoke [%d ms] serialize [%d ms]",
+                    pService.getName(), pStatus, TimeUnit.NANOSECONDS.toMillis(lNanos),
+                    TimeUnit.NANOSECONDS.toMillis(lWait), TimeUnit.NANOSECONDS.toMillis(pTiming.deserializeNanos),
+                    TimeUnit.NANOSECONDS.toMillis(pTiming.invokeNanos),
+                    TimeUnit.NANOSECONDS.toMillis(pTiming.serializeNanos)));
+        }
+    }
+
+    /**
+     * <pre>
+     * Result elements are written to the connection while they are produced
+     * as a JSON array or as NDJSON lines using chunked transfer encoding.
+     * The header is sent with the first element, so errors before still get a status.
+     * An error after that aborts the response and the connection is closed.
+     * </pre>
+     */
+    protected void handleStreamingCall(ServiceObject pService, RequestMessage pRequest, Map<String, Object> pParams,
+            ResponseMessage pResponse, CallTiming pTiming)
+            throws InvocationTargetException, IOException, WebServiceException {
+
+        boolean lChunked = "1.1".equals(pRequest.getHttpVersion());
+        pResponse.setContentType(pService.getContentType());
+        pResponse.setStatus(SC_200_OK);
+
+        ElementWriter lWriter = new ElementWriter(() -> pResponse.startStream(lChunked), jsonTool,
+                pService.contentKind == ContentKind.NDJSON);
+        try {
+            Object lParam = pService.contentKind.toParameter(pService, pRequest, pParams);
+            pTiming.deserialized();
+            pService.streamTo(lParam, lWriter, pTiming);
+            lWriter.finish();
+            pResponse.finishStream();
+        } catch (InvocationTargetException | IOException | WebServiceException | RuntimeException e) {
+            if (!pResponse.isStreaming()) {
+                throw e;
+            }
+            LOG.severe(String.format("WebService streaming aborted: %s %s %s %s", e, LS, pService.getName(),
+                    getStackTraceFrom(e)));
+            pTiming.status = "aborted";
+            pResponse.abort();
+        } finally {
+            if (pResponse.isStreaming()) {
+                pTiming.responseBytes = lWriter.getByteCount();
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * The request thread is released while an asynchronous service
+     * or a service on its own executor is running.
+     * The response is sent when the service future completes.
+     * If the request processing does not support detached responses
+     * the request thread waits for the result.
+     * </pre>
+     */
+    protected void handleAsyncCall(ServiceObject pService, RequestMessage pRequest, Map<String, Object> pParams,
+            ResponseMessage pResponse, CallTiming pTiming) throws InvocationTargetException, IOException {
+
+        pResponse.setContentType(pService.getContentType());
+        if (pService.writeCached(pRequest, pParams, pResponse.getContentStream())) {
+            pResponse.setStatus(SC_200_OK);
+            return;
+        }
+
+        CompletableFuture<byte[]> lFuture = pService.callAsync(pRequest, pParams, pTiming);
+        if (lFuture.isDone() || !pResponse.isAsyncSupported()) {
+            // completes in the request thread
+            lFuture.handle((data, error) -> {
+                setAsyncResult(pService, data, error, pResponse);
+                return null;
+            }).join();
+        } else {
+            pResponse.startAsync();
+            pTiming.detached = true;
+            lFuture.whenComplete((data, error) -> {
+                setAsyncResult(pService, data, error, pResponse);
+                recordCall(pService, pTiming, pRequest, pResponse);
+                try {
+                    pResponse.completeAsync();
+                } catch (IOException e) {
+                    LOG.fine(() -> String.format("WebService async response failed: [%s] [%s]", e,
+                            pService.getName()));
+                }
+            });
+        }
+    }
+
+    /**
+     */
+    protected void setAsyncResult(ServiceObject pService, byte[] pData, Throwable pError,
+            ResponseMessage pResponse) {
+        Throwable lError = (pError instanceof CompletionException && pError.getCause() != null) ? pError.getCause()
+                : pError;
+        try {
+            if (lError == null) {
+                pResponse.writeToContent(pData);
+                pResponse.setStatus(SC_200_OK);
+                return;
+            }
+        } catch (Exception e) {
+            lError = e;
+        }
+
+        pResponse.resetContent();
+        if (lError instanceof WebServiceException wse) {
+            LOG.fine(() -> String.format("WebService API Error: [%s]", wse.getMessage()));
+            pResponse.setStatus(wse.getHttpStatus());
+        } else if (lError instanceof TimeoutException) {
+            LOG.warning(() -> String.format("WebService timeout [%s] [%s]", pService.timeoutMillis,
+                    pService.getName()));
+            pResponse.setStatus(SC_504_GATEWAY_TIMEOUT);
+        } else {
+            LOG.severe(String.format("WebService async internal/runtime ERROR: %s %s %s %s", lError, LS,
+                    pService.getName(), getStackTraceFrom(lError)));
+            pResponse.setStatus(SC_500_INTERNAL_ERROR);
+        }
+    }
+
+    /**
+     */
+    protected ServiceMatch getServiceInstanceFor(String pPath, String pMethod, String pContentType)
             throws WebServiceException {
-        ServiceObject lService = null;
-        if (serviceRegistry.containsKey(pPath)) {
-            lService = serviceRegistry.get(pPath);
+        ServiceMatch lMatch = findService(pPath);
+        if (lMatch != null) {
+            ServiceObject lService = lMatch.service;
 
             if (!lService.isMethodSupported(pMethod)) {
                 throw new WebServiceException(SC_405_METHOD_NOT_ALLOWED,
@@ -468,6 +2006,6 @@ public class JamnWebServiceProvider implements JamnServer.ContentProvider {
         } else {
             throw new WebServiceException(SC_404_NOT_FOUND, String.format("Unsupported WebService Path [%s]", pPath));
         }
-        return lService;
+        return lMatch;
     }
 }
@@ -2,13 +2,25 @@
 package org.isa.ipc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
 
 import org.isa.ipc.JamnServer.JsonToolWrapper;
 import org.isa.ipc.JamnServer.UncheckedJsonException;
@@ -32,6 +44,7 @@ class WebServiceProviderTest {
     private static HttpClient Client;
     private static JamnServer Server;
     private static String ServerURL;
+    private static JamnWebServiceProvider Provider;
 
     // JSON Tool
     private static JsonToolWrapper Jack = new JamnServer.JsonToolWrapper() {
@@ -56,6 +69,15 @@ class WebServiceProviderTest {
                 throw new UncheckedJsonException(UncheckedJsonException.TOJSON_ERROR, e);
             }
         }
+
+        @Override
+        public <T> T convert(Object pValue, Class<T> pType) throws UncheckedJsonException {
+            try {
+                return jack.convertValue(pValue, pType);
+            } catch (IllegalArgumentException e) {
+                throw new UncheckedJsonException(UncheckedJsonException.TOOBJ_ERROR, e);
+            }
+        }
     };
 
     @BeforeAll
@@ -70,13 +92,15 @@ class WebServiceProviderTest {
         ServerURL = "http://localhost:" + Server.getConfig().getPort();
 
         // create the WebService provider
-        JamnWebServiceProvider lWebServiceProvider = new JamnWebServiceProvider()
+        Provider = new JamnWebServiceProvider()
                 .setJsonTool(Jack)
+                .registerExecutor(SampleWebApiServices.SAMPLE_EXECUTOR, Executors.newFixedThreadPool(2))
                 // register the Web-API Services
-                .registerServices(SampleWebApiServices.class);
+                .registerServices(SampleWebApiServices.class)
+                .enableBatchService(Executors.newFixedThreadPool(2));
 
         // add the provider to the server
-        Server.addContentProvider("WebServiceProvider", lWebServiceProvider);
+        Server.addContentProvider("WebServiceProvider", Provider);
         // start server
         Server.start();
         assertTrue(Server.isRunning(), "Test Server start FAILED");
@@ -101,6 +125,241 @@ class WebServiceProviderTest {
         assertEquals("ECHO: " + lMessage, lResponse.body(), "HTTP Body");
     }
 
+    @Test
+    void testApiTextWithoutStringParameter() throws Exception {
+        HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/text-param"))
+                .headers("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString("text")).build();
+
+        HttpResponse<String> lResponse = Client.send(lRequest, BodyHandlers.ofString());
+
+        assertEquals(200, lResponse.statusCode(), "HTTP Status");
+        assertEquals("no parameter", lResponse.body(), "HTTP Body");
+    }
+
+    @Test
+    void testApiUnsupportedContentType() throws Exception {
+        HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/xml"))
+                .headers("Content-Type", "application/xml")
+                .POST(HttpRequest.BodyPublishers.ofString("<xml/>")).build();
+
+        assertEquals(400, Client.send(lRequest, BodyHandlers.ofString()).statusCode(), "HTTP Status");
+    }
+
+    @Test
+    void testApiAsync() throws Exception {
+        HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/async-echo"))
+                .headers("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString("later")).build();
+
+        HttpResponse<String> lResponse = Client.send(lRequest, BodyHandlers.ofString());
+
+        assertEquals(200, lResponse.statusCode(), "HTTP Status");
+        assertEquals("ASYNC ECHO: later", lResponse.body(), "HTTP Body");
+
+        // the service timeout
+        lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/async-timeout")).GET().build();
+        assertEquals(504, Client.send(lRequest, BodyHandlers.ofString()).statusCode(), "HTTP Status");
+    }
+
+    @Test
+    void testApiAsyncKeepAlive() throws Exception {
+        // two detached responses on the same keep-alive connection
+        try (Socket lSocket = new Socket("localhost", Server.getConfig().getPort())) {
+            lSocket.setSoTimeout(5000);
+            OutputStream lOut = lSocket.getOutputStream();
+            InputStream lIn = new BufferedInputStream(lSocket.getInputStream());
+
+            for (String lMessage : new String[] { "first", "second" }) {
+                lOut.write(("POST /api/async-echo HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n"
+                        + "Content-Type: text/plain\r\nContent-Length: " + lMessage.length() + "\r\n\r\n" + lMessage)
+                        .getBytes(StandardCharsets.UTF_8));
+                lOut.flush();
+
+                String lHeader = readResponseHeader(lIn);
+                assertTrue(lHeader.startsWith("HTTP/1.0 200"), "HTTP Status");
+                assertTrue(lHeader.toLowerCase().contains("connection: keep-alive"), "Connection header");
+                int lLength = Integer.parseInt(lHeader.replaceAll("(?is).*content-length:\\s*(\\d+).*", "$1"));
+                assertEquals("ASYNC ECHO: " + lMessage, new String(lIn.readNBytes(lLength), StandardCharsets.UTF_8),
+                        "HTTP Body");
+            }
+        }
+    }
+
+    private static String readResponseHeader(InputStream pIn) throws IOException {
+        StringBuilder lHeader = new StringBuilder();
+        while (!lHeader.toString().endsWith("\r\n\r\n")) {
+            int lByte = pIn.read();
+            if (lByte < 0) {
+                throw new IOException("Connection closed by server");
+            }
+            lHeader.append((char) lByte);
+        }
+        return lHeader.toString();
+    }
+
+    @Test
+    void testCachedApi() throws Exception {
+        HttpRequest lCounter = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/counter")).GET().build();
+
+        String lFirst = Client.send(lCounter, BodyHandlers.ofString()).body();
+        assertEquals(lFirst, Client.send(lCounter, BodyHandlers.ofString()).body(), "Cached response");
+
+        HttpRequest lRefresh = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/counter/refresh"))
+                .headers("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.noBody()).build();
+        assertEquals(200, Client.send(lRefresh, BodyHandlers.ofString()).statusCode(), "HTTP Status");
+
+        String lNext = Client.send(lCounter, BodyHandlers.ofString()).body();
+        assertEquals(Integer.parseInt(lFirst) + 1, Integer.parseInt(lNext), "Invalidated response");
+    }
+
+    @Test
+    void testCoalescedApi() throws Exception {
+        HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/slow-count")).GET().build();
+
+        long lCoalesced = (Long) Provider.getServiceMetrics("/api/slow-count").get("coalesced");
+
+        // hold the first execution until the other calls joined it
+        SampleWebApiServices.SlowCountGate.close(1);
+        List<CompletableFuture<HttpResponse<String>>> lCalls = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                lCalls.add(Client.sendAsync(lRequest, BodyHandlers.ofString()));
+            }
+            assertTrue(SampleWebApiServices.SlowCountGate.awaitEntered(), "Execution started");
+            long lDeadline = System.currentTimeMillis() + 5000;
+            while ((Long) Provider.getServiceMetrics("/api/slow-count").get("coalesced") < lCoalesced + 2
+                    && System.currentTimeMillis() < lDeadline) {
+                Thread.onSpinWait();
+            }
+        } finally {
+            SampleWebApiServices.SlowCountGate.open();
+        }
+        assertEquals(lCoalesced + 2, Provider.getServiceMetrics("/api/slow-count").get("coalesced"), "Coalesced");
+
+        // all concurrent calls get the result of one execution
+        String lFirst = lCalls.get(0).get().body();
+        for (CompletableFuture<HttpResponse<String>> lCall : lCalls) {
+            assertEquals(200, lCall.get().statusCode(), "HTTP Status");
+            assertEquals(lFirst, lCall.get().body(), "Shared result");
+        }
+    }
+
+    @Test
+    void testStreamedApi() throws Exception {
+        HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/numbers?count=3")).GET()
+                .build();
+        HttpResponse<String> lResponse = Client.send(lRequest, BodyHandlers.ofString());
+
+        assertEquals(200, lResponse.statusCode(), "HTTP Status");
+        assertEquals("chunked", lResponse.headers().firstValue("Transfer-Encoding").orElse(""), "Chunked");
+        assertEquals("{\"value\":1}\n{\"value\":2}\n{\"value\":3}\n", lResponse.body(), "NDJSON");
+
+        lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/numbers/array?count=2")).GET().build();
+        lResponse = Client.send(lRequest, BodyHandlers.ofString());
+
+        assertEquals(200, lResponse.statusCode(), "HTTP Status");
+        assertEquals("[{\"value\":1},{\"value\":2}]", lResponse.body(), "JSON array");
+    }
+
+    @Test
+    void testLimitedApi() throws Exception {
+        HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/limited")).GET().build();
+
+        // hold the first execution while the second call is made
+        SampleWebApiServices.LimitedGate.close(1);
+        CompletableFuture<HttpResponse<String>> lFirst;
+        HttpResponse<String> lSecond;
+        try {
+            lFirst = Client.sendAsync(lRequest, BodyHandlers.ofString());
+            assertTrue(SampleWebApiServices.LimitedGate.awaitEntered(), "Execution started");
+            lSecond = Client.send(lRequest, BodyHandlers.ofString());
+        } finally {
+            SampleWebApiServices.LimitedGate.open();
+        }
+
+        // only one execution at a time
+        assertEquals(429, lSecond.statusCode(), "HTTP Status rejected");
+        assertEquals(200, lFirst.get().statusCode(), "HTTP Status");
+        assertEquals("done", lFirst.get().body(), "Result");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testServiceMetrics() throws Exception {
+        // a server and provider with fresh metrics
+        JamnServer lServer = new JamnServer(8098);
+        JamnWebServiceProvider lProvider = new JamnWebServiceProvider()
+                .setJsonTool(Jack)
+                .registerExecutor(SampleWebApiServices.SAMPLE_EXECUTOR, Executors.newFixedThreadPool(2))
+                .registerServices(SampleWebApiServices.class);
+        lServer.addContentProvider("WebServiceProvider", lProvider);
+        lServer.start();
+        String lURL = "http://localhost:8098";
+
+        try {
+            HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(lURL + "/api/numbers?count=2")).GET()
+                    .build();
+            Client.send(lRequest, BodyHandlers.ofString());
+            Client.send(lRequest, BodyHandlers.ofString());
+            lRequest = HttpRequest.newBuilder().uri(new URI(lURL + "/api/async-timeout")).GET().build();
+            Client.send(lRequest, BodyHandlers.ofString());
+
+            Map<String, Object> lMetrics = lProvider.getServiceMetrics("/api/numbers");
+            assertEquals(2L, lMetrics.get("calls"), "Calls");
+            assertEquals(0L, lMetrics.get("errors"), "Errors");
+            assertEquals(2L * "{\"value\":1}\n{\"value\":2}\n".length(), lMetrics.get("responseBytes"),
+                    "Response bytes");
+            assertEquals(0, lMetrics.get("inFlight"), "In flight");
+            assertEquals(2L, sumOf((Map<String, Long>) lMetrics.get("latencyMillis")), "Latency buckets");
+
+            lMetrics = lProvider.getServiceMetrics("/api/async-timeout");
+            assertEquals(1L, lMetrics.get("calls"), "Calls");
+            assertEquals(Map.of("504", 1L), lMetrics.get("errorsByStatus"), "Errors by status");
+            // the call took at least the 100 ms service timeout
+            Map<String, Long> lLatency = (Map<String, Long>) lMetrics.get("latencyMillis");
+            assertEquals(1L, sumOf(lLatency), "Latency buckets");
+            for (String lBucket : new String[] { "<=1", "<=5", "<=10", "<=25", "<=50" }) {
+                assertEquals(0L, lLatency.get(lBucket), "Latency bucket " + lBucket);
+            }
+
+            // three coalesced calls with one shared execution
+            lRequest = HttpRequest.newBuilder().uri(new URI(lURL + "/api/slow-count")).GET().build();
+            SampleWebApiServices.SlowCountGate.close(1);
+            List<CompletableFuture<HttpResponse<String>>> lCalls = new ArrayList<>();
+            try {
+                for (int i = 0; i < 3; i++) {
+                    lCalls.add(Client.sendAsync(lRequest, BodyHandlers.ofString()));
+                }
+                assertTrue(SampleWebApiServices.SlowCountGate.awaitEntered(), "Execution started");
+                long lDeadline = System.currentTimeMillis() + 5000;
+                while ((Long) lProvider.getServiceMetrics("/api/slow-count").get("coalesced") < 2
+                        && System.currentTimeMillis() < lDeadline) {
+                    Thread.onSpinWait();
+                }
+            } finally {
+                SampleWebApiServices.SlowCountGate.open();
+            }
+            for (CompletableFuture<HttpResponse<String>> lCall : lCalls) {
+                assertEquals("1", lCall.get().body(), "Shared result");
+            }
+            lMetrics = lProvider.getServiceMetrics("/api/slow-count");
+            assertEquals(3L, lMetrics.get("calls"), "Calls");
+            assertEquals(2L, lMetrics.get("coalesced"), "Coalesced");
+            assertEquals(1L, lMetrics.get("sharedExecutions"), "Shared executions");
+            assertEquals(3L, sumOf((Map<String, Long>) lMetrics.get("latencyMillis")), "Latency buckets");
+
+            assertTrue(lProvider.getAllServiceMetrics().containsKey("/api/counter"), "All metrics");
+        } finally {
+            lServer.stop();
+        }
+    }
+
+    private static long sumOf(Map<String, Long> pBuckets) {
+        return pBuckets.values().stream().mapToLong(Long::longValue).sum();
+    }
+
     @Test
     void testGETApiAboutErrorNotFound() throws Exception {
         // Error Case - test for unknown service path
@@ -126,4 +385,58 @@ class WebServiceProviderTest {
                 SampleWebApiServices.AboutResponse.class);
         assertEquals("0.0.1", lAbout.version, "AboutResponse.version");
     }
+
+    @Test
+    void testPOSTApiBatch() throws Exception {
+        String lBatch = "[{\"path\":\"/api/about\",\"method\":\"GET\"},"
+                + "{\"path\":\"/api/echo\",\"body\":\"Batch\"},"
+                + "{\"path\":\"/api/doc/index\",\"method\":\"GET\",\"body\":{\"format\":\"html\"}},"
+                + "{\"path\":\"/about\"}]";
+
+        HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/batch"))
+                .headers("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(lBatch)).build();
+
+        HttpResponse<String> lResponse = Client.send(lRequest, BodyHandlers.ofString());
+        assertEquals(200, lResponse.statusCode(), "HTTP Status");
+
+        // result bodies are embedded json values - not json encoded strings
+        Map<?, ?>[] lResults = Jack.toObject(lResponse.body(), Map[].class);
+        assertEquals(4, lResults.length, "Batch results");
+        assertEquals("200", lResults[0].get("status"), "About status");
+        assertEquals("0.0.1", Jack.convert(lResults[0].get("body"), SampleWebApiServices.AboutResponse.class).version,
+                "About version");
+        assertEquals("ECHO: Batch", lResults[1].get("body"), "Echo body");
+        assertEquals("index.html", Jack.convert(lResults[2].get("body"), SampleWebApiServices.DocResponse.class).file,
+                "Doc file");
+        assertEquals("404", lResults[3].get("status"), "Unknown path status");
+        assertNull(lResults[3].get("body"), "Unknown path body");
+    }
+
+    @Test
+    void testGETApiPathTemplate() throws Exception {
+        HttpRequest lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/doc/read%20me?format=md"))
+                .GET().build();
+
+        HttpResponse<String> lResponse = Client.send(lRequest, BodyHandlers.ofString());
+
+        assertEquals(200, lResponse.statusCode(), "HTTP Status");
+        SampleWebApiServices.DocResponse lDoc = Jack.toObject(lResponse.body(),
+                SampleWebApiServices.DocResponse.class);
+        assertEquals("read me.md", lDoc.file, "DocResponse.file");
+
+        // a query on an exact path and an unknown template path
+        lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/about?lang=en")).GET().build();
+        assertEquals(200, Client.send(lRequest, BodyHandlers.ofString()).statusCode(), "HTTP Status");
+        lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/doc/readme/more")).GET().build();
+        assertEquals(404, Client.send(lRequest, BodyHandlers.ofString()).statusCode(), "HTTP Status");
+        // an unknown query parameter
+        lRequest = HttpRequest.newBuilder().uri(new URI(ServerURL + "/api/doc/readme?color=red")).GET().build();
+        assertEquals(400, Client.send(lRequest, BodyHandlers.ofString()).statusCode(), "HTTP Status");
+
+        // a direct call with a query
+        lDoc = Jack.toObject(Provider.doDirectCall("/api/doc/readme?format=txt", ""),
+                SampleWebApiServices.DocResponse.class);
+        assertEquals("readme.txt", lDoc.file, "Direct call DocResponse.file");
+    }
 }
@@ -3,12 +3,21 @@
 package org.isa.ipc.sample.web.api;
 
 import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.APPLICATION_JSON;
+import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.APPLICATION_NDJSON;
 import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.TEXT_PLAIN;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.isa.ipc.JamnWebServiceProvider.WebService;
 
@@ -28,6 +37,11 @@ public class SampleWebApiServices {
 
     public static final String PATHBASE_API = "/api";
     public static final String PATHBASE_API_SERVER = "/api/server";
+    public static final String SAMPLE_EXECUTOR = "sample";
+
+    // test hooks to hold slow calls inside a service
+    public static final CallGate SlowCountGate = new CallGate();
+    public static final CallGate LimitedGate = new CallGate();
 
     /***************************************************************************************
      * WebService - About
@@ -121,6 +135,229 @@ public class SampleWebApiServices {
         }
     }
 
+    /***************************************************************************************
+     * WebService - Document by path template
+     **************************************************************************************/
+    /**
+     * <pre>
+     * WebService - Document by path template
+     * path variable and query parameters are bound to the request object - accessible via get
+     * http://localhost:8099/api/doc/readme?format=md
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/doc/{name}", methods = { "GET" }, contentType = APPLICATION_JSON)
+    public DocResponse sendDoc(DocRequest pRequest) {
+        DocResponse lResponse = new DocResponse();
+        lResponse.file = pRequest.name + "." + pRequest.format;
+        return lResponse;
+    }
+
+    /**
+     */
+    public static class DocRequest {
+        public String name = "";
+        public String format = "txt";
+    }
+
+    /**
+     */
+    public static class DocResponse {
+        public String file = "";
+    }
+
+    /***************************************************************************************
+     * WebService - Asynchronous Echo
+     **************************************************************************************/
+    /**
+     * <pre>
+     * WebService - Asynchronous Echo
+     * the request thread is released until the future completes - accessible only via post
+     * http://localhost:8099/api/async-echo
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/async-echo", methods = { "POST" }, contentType = TEXT_PLAIN)
+    public CompletableFuture<String> sendAsyncEcho(String pRequest) {
+        return CompletableFuture.supplyAsync(() -> "ASYNC ECHO: " + pRequest,
+                CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * <pre>
+     * WebService - never completing future to demonstrate the service timeout
+     * http://localhost:8099/api/async-timeout
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/async-timeout", methods = { "GET" }, contentType = APPLICATION_JSON,
+            timeoutMillis = 100)
+    public CompletionStage<AboutResponse> sendNever() {
+        return new CompletableFuture<>();
+    }
+
+    /***************************************************************************************
+     * WebService - Cached counter
+     **************************************************************************************/
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * <pre>
+     * WebService - Cached counter
+     * the serialized response is cached and served without calling the method
+     * http://localhost:8099/api/counter
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/counter", methods = { "GET" }, contentType = TEXT_PLAIN,
+            cacheTtlMillis = 60000)
+    public String sendCounter() {
+        return String.valueOf(counter.incrementAndGet());
+    }
+
+    /**
+     * <pre>
+     * WebService - invalidates the cached counter
+     * http://localhost:8099/api/counter/refresh
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/counter/refresh", methods = { "POST" }, contentType = TEXT_PLAIN,
+            invalidates = { PATHBASE_API + "/counter" })
+    public String refreshCounter() {
+        return "refreshed";
+    }
+
+    /***************************************************************************************
+     * WebService - Coalesced slow call
+     **************************************************************************************/
+    private final AtomicInteger executions = new AtomicInteger();
+
+    /**
+     * <pre>
+     * WebService - Coalesced slow call
+     * concurrent identical calls share one execution
+     * http://localhost:8099/api/slow-count
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/slow-count", methods = { "GET" }, contentType = TEXT_PLAIN, coalesce = true)
+    public String sendSlowCount() throws InterruptedException {
+        int lCount = executions.incrementAndGet();
+        SlowCountGate.pass();
+        return String.valueOf(lCount);
+    }
+
+    /**
+     * <pre>
+     * WebService - text with a NOT String parameter
+     * the parameter is null
+     * http://localhost:8099/api/text-param
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/text-param", methods = { "POST" }, contentType = TEXT_PLAIN)
+    public String sendTextParam(NumbersRequest pRequest) {
+        return pRequest == null ? "no parameter" : "parameter";
+    }
+
+    /**
+     * <pre>
+     * WebService - with a content type NOT supported by the provider
+     * calls are rejected with 400
+     * http://localhost:8099/api/xml
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/xml", methods = { "POST" }, contentType = "application/xml")
+    public String sendXml(String pRequest) {
+        return pRequest;
+    }
+
+    /***************************************************************************************
+     * WebService - Streamed results
+     **************************************************************************************/
+    /**
+     * <pre>
+     * WebService - NDJSON stream
+     * every element is sent as one json line
+     * http://localhost:8099/api/numbers?count=5
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/numbers", methods = { "GET" }, contentType = APPLICATION_NDJSON)
+    public Stream<Number> sendNumbers(NumbersRequest pRequest) {
+        return IntStream.rangeClosed(1, pRequest.count).mapToObj(i -> new Number(i));
+    }
+
+    /**
+     * <pre>
+     * WebService - JSON array stream
+     * elements are passed to a sink and sent as one array
+     * http://localhost:8099/api/numbers/array?count=5
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/numbers/array", methods = { "GET" }, contentType = APPLICATION_JSON)
+    public void sendNumberArray(NumbersRequest pRequest, Consumer<Object> pSink) {
+        for (int i = 1; i <= pRequest.count; i++) {
+            pSink.accept(new Number(i));
+        }
+    }
+
+    public static class NumbersRequest {
+        public int count = 3;
+    }
+
+    public static class Number {
+        public int value;
+
+        public Number() {
+        }
+
+        public Number(int pValue) {
+            value = pValue;
+        }
+    }
+
+    /***************************************************************************************
+     * WebService - Limited slow call
+     **************************************************************************************/
+    /**
+     * <pre>
+     * WebService - Limited slow call
+     * runs on its own executor with one execution at a time
+     * further calls are rejected with 429
+     * http://localhost:8099/api/limited
+     * </pre>
+     */
+    @WebService(path = PATHBASE_API + "/limited", methods = { "GET" }, contentType = TEXT_PLAIN,
+            maxConcurrent = 1, executor = SAMPLE_EXECUTOR)
+    public String sendLimited() throws InterruptedException {
+        LimitedGate.pass();
+        return "done";
+    }
+
     /***************************************************************************************
      **************************************************************************************/
+    /**
+     * <pre>
+     * A gate that holds calls until it is opened.
+     * An open gate lets calls pass immediately.
+     * </pre>
+     */
+    public static class CallGate {
+        private volatile CountDownLatch entered = new CountDownLatch(0);
+        private volatile CountDownLatch opened = new CountDownLatch(0);
+
+        public void close(int pCalls) {
+            entered = new CountDownLatch(pCalls);
+            opened = new CountDownLatch(1);
+        }
+
+        public boolean awaitEntered() throws InterruptedException {
+            return entered.await(5, TimeUnit.SECONDS);
+        }
+
+        public void open() {
+            opened.countDown();
+        }
+
+        protected void pass() throws InterruptedException {
+            entered.countDown();
+            if (!opened.await(5, TimeUnit.SECONDS)) {
+                throw new InterruptedException("CallGate not opened");
+            }
+        }
+    }
 }
@@ -3,29 +3,60 @@ package org.isa.ipc;
 
 import static org.isa.ipc.JamnServer.HttpHeader.Field.HTTP_1_1;
 import static org.isa.ipc.JamnServer.HttpHeader.Field.SEC_WEBSOCKET_ACCEPT;
+import static org.isa.ipc.JamnServer.HttpHeader.Field.SEC_WEBSOCKET_EXTENSIONS;
 import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.UPGRADE;
 import static org.isa.ipc.JamnServer.HttpHeader.FieldValue.WEBSOCKET;
 import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_101_SWITCH_PROTOCOLS;
 import static org.isa.ipc.JamnServer.HttpHeader.Status.SC_500_INTERNAL_ERROR;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.isa.ipc.JamnServer.HttpHeader;
 import org.isa.ipc.JamnServer.RequestMessage;
@@ -86,6 +117,38 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
     // limit client -> server payload data size
     protected long maxUpStreamPayloadSize = 65000;
 
+    protected ScheduledExecutorService heartbeatScheduler = null;
+    protected ScheduledFuture<?> heartbeatTask = null;
+
+    // permessage-deflate (RFC 7692)
+    protected boolean deflateEnabled = false;
+    protected int deflateLevel = Deflater.DEFAULT_COMPRESSION;
+    protected boolean deflateNoContextTakeover = false;
+
+    // the outbound frame queue of each connection
+    protected int outboundCapacity = 1024;
+    protected OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    // the writer tasks draining the outbound queues
+    protected Executor outboundExecutor = Executors.newCachedThreadPool((Runnable pTask) -> {
+        Thread lThread = new Thread(pTask, "wso-writer");
+        lThread.setDaemon(true);
+        return lThread;
+    });
+
+    // selector mode - the io loops multiplexing the connections
+    protected WsoSelectorLoop[] selectorLoops = new WsoSelectorLoop[0];
+    protected AtomicInteger nextSelectorLoop = new AtomicInteger();
+    // how messages are handed over to the processors
+    protected DispatchMode dispatchMode = DispatchMode.SYNC;
+    // max messages of a connection in processing - reading pauses above
+    protected int maxInFlight = 64;
+    // the message processing tasks of not SYNC dispatch modes
+    protected Executor dispatchExecutor = Executors.newCachedThreadPool((Runnable pTask) -> {
+        Thread lThread = new Thread(pTask, "wso-dispatch");
+        lThread.setDaemon(true);
+        return lThread;
+    });
+
     /**
      */
     public JamnWebSocketProvider() {
@@ -112,6 +175,117 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
         return this;
     }
 
+    /**
+     * <pre>
+     * Ping connections idle for pIntervalMillis
+     * and close connections that did not send anything (e.g. a pong) for pTimeoutMillis.
+     * So the threads and sockets of dead peers are freed.
+     * An interval of 0 stops the heartbeat.
+     * </pre>
+     */
+    public synchronized JamnWebSocketProvider setHeartbeat(long pIntervalMillis, long pTimeoutMillis) {
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel(false);
+            heartbeatTask = null;
+        }
+        if (pIntervalMillis > 0) {
+            if (heartbeatScheduler == null) {
+                heartbeatScheduler = Executors.newSingleThreadScheduledExecutor((Runnable pTask) -> {
+                    Thread lThread = new Thread(pTask, "wso-heartbeat");
+                    lThread.setDaemon(true);
+                    return lThread;
+                });
+            }
+            heartbeatTask = heartbeatScheduler.scheduleAtFixedRate(
+                    () -> connectionManager.checkHeartbeats(pIntervalMillis, pTimeoutMillis),
+                    pIntervalMillis, pIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Every connection sends its frames through a bounded queue drained by a writer task.
+     * The policy defines what happens to a producer when the queue of a slow client is full.
+     * </pre>
+     */
+    public JamnWebSocketProvider setOutboundQueue(int pCapacity, OverflowPolicy pPolicy) {
+        outboundCapacity = pCapacity;
+        overflowPolicy = pPolicy;
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Enable the permessage-deflate extension for clients offering it.
+     * With no context takeover every message is compressed on its own,
+     * that costs ratio but saves the compression window memory of a connection between messages.
+     * NOTE: the window size is fixed to 15 bits by java.util.zip,
+     * offers requiring a smaller server window are declined.
+     * </pre>
+     */
+    public JamnWebSocketProvider setPerMessageDeflate(boolean pEnabled, int pLevel, boolean pNoContextTakeover) {
+        deflateEnabled = pEnabled;
+        deflateLevel = pLevel;
+        deflateNoContextTakeover = pNoContextTakeover;
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Multiplex the upgraded connections over pThreads selector loops
+     * instead of blocking one server worker thread per connection.
+     * The complete messages of a connection are processed in order by the dispatch executor.
+     * 
+     * Requires channel based server sockets (JamnServer config: socket.channel.enabled=true).
+     * Connections without a channel, e.g. SSL sockets, fall back to the blocking mode.
+     * 0 threads = blocking mode.
+     * </pre>
+     */
+    public synchronized JamnWebSocketProvider setSelectorMode(int pThreads) throws IOException {
+        for (WsoSelectorLoop lLoop : selectorLoops) {
+            lLoop.shutdown();
+        }
+        selectorLoops = new WsoSelectorLoop[Math.max(pThreads, 0)];
+        for (int i = 0; i < selectorLoops.length; i++) {
+            selectorLoops[i] = new WsoSelectorLoop("wso-selector-" + i);
+            selectorLoops[i].start();
+        }
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Define how the messages of a connection are processed.
+     *  - SYNC       : by the reading thread - the connection reads nothing else meanwhile
+     *  - ORDERED    : one after another on the dispatch executor
+     *  - CONCURRENT : in parallel on the dispatch executor
+     * 
+     * With more than pMaxInFlight messages in processing a connection stops reading
+     * so a client can't flood the server.
+     * Selector mode connections never process on the reading thread, SYNC then means ORDERED.
+     * </pre>
+     */
+    public JamnWebSocketProvider setDispatch(DispatchMode pMode, int pMaxInFlight) {
+        dispatchMode = pMode;
+        maxInFlight = Math.max(pMaxInFlight, 1);
+        return this;
+    }
+
+    /**
+     */
+    public JamnWebSocketProvider setDispatchExecutor(Executor pExecutor) {
+        dispatchExecutor = pExecutor;
+        return this;
+    }
+
+    /**
+     */
+    public JamnWebSocketProvider setOutboundExecutor(Executor pExecutor) {
+        outboundExecutor = pExecutor;
+        return this;
+    }
+
     /**
      */
     public JamnWebSocketProvider setAccessController(WsoAccessController pCtrl) {
@@ -139,6 +313,54 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
         }
     }
 
+    /**
+     * <pre>
+     * Subscribe a connection to a topic.
+     * The subscription ends with the connection.
+     * </pre>
+     */
+    public void subscribe(String pConnectionId, String pTopic) {
+        connectionManager.subscribe(pConnectionId, pTopic);
+    }
+
+    /**
+     */
+    public void unsubscribe(String pConnectionId, String pTopic) {
+        connectionManager.unsubscribe(pConnectionId, pTopic);
+    }
+
+    /**
+     * <pre>
+     * Send a text message to all subscribers of a topic.
+     * The frame is encoded once and shared by all connections.
+     * Publishing never waits for a slow connection - its overflow policy applies,
+     * where BLOCK skips the message for a connection with a full queue.
+     * Returns the number of connections the message was queued for.
+     * </pre>
+     */
+    public int publish(String pTopic, byte[] pMessage) {
+        return connectionManager.publish(pTopic, new SharedMessage(WebSocketHandler.Opcode.TEXT, pMessage));
+    }
+
+    /**
+     */
+    public int publishBinary(String pTopic, byte[] pData) {
+        return connectionManager.publish(pTopic, new SharedMessage(WebSocketHandler.Opcode.BINARY, pData));
+    }
+
+    /**
+     */
+    public Set<String> getSubscribers(String pTopic) {
+        return Collections.unmodifiableSet(connectionManager.topics.getOrDefault(pTopic, Collections.emptySet()));
+    }
+
+    /**
+     * The open connection e.g. to send binary data or to close it - or null.
+     */
+    public WsoConnection getConnection(String pConnectionId) {
+        return connectionManager.openConnections.get(pConnectionId);
+    }
+
     /**
      */
     public Set<String> getConnectionPathNames() {
@@ -175,45 +397,154 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
      */
     private static class WsoConnectionManager {
         // connectionId -> connection
-        protected Map<String, WsoConnection> openConnections = Collections.synchronizedMap(new HashMap<>());
+        protected Map<String, WsoConnection> openConnections = new ConcurrentHashMap<>();
 
         // path -> processor
-        protected Map<String, WsoMessageProcessor> processorMap = Collections.synchronizedMap(new HashMap<>());
+        protected Map<String, WsoMessageProcessor> processorMap = new ConcurrentHashMap<>();
+
+        // topic -> connectionIds
+        protected Map<String, Set<String>> topics = new ConcurrentHashMap<>();
+
+        // connectionId -> topics
+        protected Map<String, Set<String>> subscriptions = new ConcurrentHashMap<>();
 
         /**
          */
-        protected synchronized void connectionEstablished(String pConnectionId, WsoConnection pConnection) {
+        protected void connectionEstablished(String pConnectionId, WsoConnection pConnection) {
             openConnections.put(pConnectionId, pConnection);
         }
 
         /**
          */
-        protected synchronized void connectionClosed(String pConnectionId) {
-            openConnections.remove(pConnectionId);
+        protected void connectionClosed(String pConnectionId) {
+            // remove the connection first - a concurrent subscribe then detects the close
+            // and publishing from onClose never reaches the closed connection
+            WsoConnection lConnection = openConnections.remove(pConnectionId);
+            Set<String> lTopics = subscriptions.remove(pConnectionId);
+            if (lTopics != null) {
+                for (String lTopic : lTopics) {
+                    removeSubscriber(lTopic, pConnectionId);
+                }
+            }
+            if (lConnection != null) {
+                WsoMessageProcessor lProcessor = processorMap.getOrDefault(lConnection.getPath(), null);
+                if (lProcessor != null) {
+                    try {
+                        lProcessor.onClose(pConnectionId);
+                    } catch (RuntimeException e) {
+                        LOG.severe(() -> String.format("WebSocket onClose ERROR [%s] [%s]", e, pConnectionId));
+                    }
+                }
+            }
             LOG.info(() -> String.format("Closed WebSocket connection [%s]", pConnectionId));
         }
 
+        /**
+         */
+        protected void subscribe(String pConnectionId, String pTopic) {
+            if (openConnections.containsKey(pConnectionId)) {
+                subscriptions.computeIfAbsent(pConnectionId, k -> ConcurrentHashMap.newKeySet()).add(pTopic);
+                topics.computeIfAbsent(pTopic, k -> ConcurrentHashMap.newKeySet()).add(pConnectionId);
+                // the connection may have been closed in between
+                if (!openConnections.containsKey(pConnectionId)) {
+                    unsubscribe(pConnectionId, pTopic);
+                    subscriptions.computeIfPresent(pConnectionId, (id, names) -> names.isEmpty() ? null : names);
+                }
+            }
+        }
+
+        /**
+         */
+        protected void unsubscribe(String pConnectionId, String pTopic) {
+            Set<String> lTopics = subscriptions.get(pConnectionId);
+            if (lTopics != null) {
+                lTopics.remove(pTopic);
+            }
+            removeSubscriber(pTopic, pConnectionId);
+        }
+
+        /**
+         */
+        protected void removeSubscriber(String pTopic, String pConnectionId) {
+            topics.computeIfPresent(pTopic, (topic, ids) -> {
+                ids.remove(pConnectionId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+
+        /**
+         * <pre>
+         * Fan out a message to the outbound queues of all subscribers without waiting.
+         * The overflow policy applies per subscriber, with BLOCK a busy one is skipped.
+         * </pre>
+         */
+        protected int publish(String pTopic, SharedMessage pMessage) {
+            int lCount = 0;
+            for (String lConnectionId : topics.getOrDefault(pTopic, Collections.emptySet())) {
+                if (openConnections.get(lConnectionId) instanceof WebSocketHandler lHandler) {
+                    try {
+                        if (lHandler.publishFrame(pMessage.frameFor(lHandler.deflate))) {
+                            lCount++;
+                        }
+                    } catch (IOException e) {
+                        LOG.fine(() -> String.format("WebSocket publish to [%s] failed [%s]", lConnectionId,
+                                e.getMessage()));
+                    }
+                }
+            }
+            return lCount;
+        }
+
         /**
          * <pre>
          * This method is called for every incoming client "message" read from a WebSocketConnection.
          * </pre>
          */
-        protected void processMessageFor(String pConnectionId, byte[] pMessage) {
+        protected void processMessageFor(String pConnectionId, byte[] pMessage, boolean pBinary) {
             WsoMessageProcessor lProcessor;
             WsoConnection lConnection = openConnections.getOrDefault(pConnectionId, null);
 
             if (lConnection != null) {
                 lProcessor = processorMap.getOrDefault(lConnection.getPath(), null);
                 if (lProcessor != null) {
-                    byte[] lResponse = lProcessor.onMessage(pConnectionId, pMessage);
-                    // if response available - send it back
+                    byte[] lResponse = pBinary ? lProcessor.onBinaryMessage(pConnectionId, pMessage)
+                            : lProcessor.onMessage(pConnectionId, pMessage);
+                    // if response available - send it back the same way
                     if (lResponse != null && lResponse.length > 0) {
-                        sendMessageFor(pConnectionId, lResponse);
+                        if (pBinary) {
+                            lConnection.sendBinary(lResponse);
+                        } else {
+                            lConnection.sendMessage(lResponse);
+                        }
                     }
                 }
             }
         }
 
+        /**
+         * The processor of the connection if it wants to receive messages in chunks or null.
+         */
+        protected WsoStreamingProcessor getStreamingProcessor(String pConnectionId) {
+            WsoConnection lConnection = openConnections.getOrDefault(pConnectionId, null);
+            if (lConnection != null
+                    && processorMap.get(lConnection.getPath()) instanceof WsoStreamingProcessor lProcessor) {
+                return lProcessor;
+            }
+            return null;
+        }
+
+        /**
+         * Called by the heartbeat scheduler.
+         */
+        protected void checkHeartbeats(long pIntervalMillis, long pTimeoutMillis) {
+            long lNow = System.currentTimeMillis();
+            for (WsoConnection lConnection : openConnections.values()) {
+                if (lConnection instanceof WebSocketHandler lHandler) {
+                    lHandler.heartbeat(lNow, pIntervalMillis, pTimeoutMillis);
+                }
+            }
+        }
+
         /**
          * <pre>
          * </pre>
@@ -246,9 +577,7 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
          * Processor that implements it's behavior.
          */
         protected void addMessageProcessor(WsoMessageProcessor pProcessor, String pPath) {
-            if (!processorMap.containsKey(pPath)) {
-                processorMap.put(pPath, pProcessor);
-            } else {
+            if (processorMap.putIfAbsent(pPath, pProcessor) != null) {
                 throw new UncheckedWebSocketException(
                         String.format("WebSocket Message Processor already defined for path [%s]", pPath));
             }
@@ -325,133 +654,1174 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
         protected long getMaxUpStreamPayloadSize() {
             return maxUpStreamPayloadSize;
         }
-    }
-
-    /**
-     * <pre>
-     * The handler implements the wso protocol level.
-     * It is responsible for 
-     *  - doing the handshake
-     *  - reading message bytes and create wso packet frames
-     *  - encoding and sending message bytes
-     * </pre>
-     */
-    protected static class WebSocketHandler implements WsoConnection {
 
-        protected String connectionId = "";
-        protected String initUrlPath = "";
-        protected OutputStream outStream;
-        protected WsoAccessController accessCtrl;
-        protected WsoConnectionManager connectionManager;
-        protected long maxUpStreamPayloadSize;
-
-        protected WebSocketHandler() {
+        protected PerMessageDeflate negotiateDeflate(String pOffers) {
+            return !deflateEnabled ? null
+                    : PerMessageDeflate.negotiate(pOffers, deflateLevel, deflateNoContextTakeover);
         }
 
-        public WebSocketHandler(String pInitUrlPath, ProviderAdapter pAdapter) {
-            this();
-            initUrlPath = pInitUrlPath;
-            accessCtrl = pAdapter.getWsoAccessController();
-            connectionManager = pAdapter.getWsoConnectionManager();
-            maxUpStreamPayloadSize = pAdapter.getMaxUpStreamPayloadSize();
+        protected WsoOutboundQueue createOutboundQueue(OutputStream pOut, Runnable pOnFailure) {
+            return new WsoOutboundQueue(pOut, outboundCapacity, overflowPolicy, outboundExecutor, pOnFailure);
         }
 
         /**
+         * Returns null in blocking mode.
          */
-        @Override
-        public String geConnectiontId() {
-            return connectionId;
+        protected WsoSelectorLoop nextSelectorLoop() {
+            WsoSelectorLoop[] lLoops = selectorLoops;
+            return lLoops.length == 0 ? null
+                    : lLoops[Math.floorMod(nextSelectorLoop.getAndIncrement(), lLoops.length)];
         }
 
-        @Override
-        public String getPath() {
-            return initUrlPath;
+        protected WsoInbox createInbox() {
+            return new WsoInbox(dispatchExecutor);
         }
 
-        @Override
-        public void sendMessage(byte[] pMessage) {
-            if (outStream != null) {
-                try {
-                    byte[] encodedBytes = encodeWsoMessage(pMessage);
-
-                    outStream.write(encodedBytes);
-                    outStream.flush();
-                } catch (IOException e) {
-                    throw new UncheckedWebSocketException(String.format("WebSocket send message error: [%s]",
-                            geConnectiontId()), e);
-                }
-            }
+        protected Executor getDispatchExecutor() {
+            return dispatchExecutor;
         }
 
-        /**
-         * Interface method for (default)request processor.
-         */
-        protected void handleRequest(RequestMessage pRequest, Socket pSocket, Map<String, String> pComData)
-                throws IOException {
-            // setting a marker for the top level server socket thread
-            pComData.put(JamnServer.WEBSOCKET_PROVIDER, "");
+        protected DispatchMode getDispatchMode(boolean pSelectorMode) {
+            return (pSelectorMode && dispatchMode == DispatchMode.SYNC) ? DispatchMode.ORDERED : dispatchMode;
+        }
 
-            outStream = pSocket.getOutputStream();
-            // create a unique connectionId
-            connectionId = initUrlPath + " - " + Integer.toHexString(pSocket.hashCode()) + "-"
-                    + pSocket.toString();
+        protected int getMaxInFlight() {
+            return maxInFlight;
+        }
+    }
 
-            try {
-                // check accessibility
-                StringBuilder lErrorMsg = new StringBuilder();
-                if (!accessCtrl.isSupportedPath(initUrlPath, lErrorMsg)
-                        || !accessCtrl.isAccessGranted(pRequest.header().getAttributes(), lErrorMsg)) {
-                    throw new WebSocketConnectionRejectedException(
-                            String.format("WebSocket connection rejected [%s] [%s] [%s]", getPath(), lErrorMsg,
-                                    connectionId));
-                }
+    /**
+     * How the messages of a connection are handed over to the processor.
+     */
+    public enum DispatchMode {
+        // on the reading thread
+        SYNC,
+        // serial per connection on the dispatch executor
+        ORDERED,
+        // parallel on the dispatch executor
+        CONCURRENT
+    }
 
-                processWsoHandshake(connectionId, pRequest, pComData);
+    /**
+     * What happens when the outbound queue of a connection is full.
+     */
+    public enum OverflowPolicy {
+        // the producer waits until the queue has space again
+        BLOCK,
+        // the oldest queued single frame data message is discarded
+        // if there is none the connection is closed
+        DROP_OLDEST,
+        // the slow connection is closed
+        DISCONNECT
+    }
 
-                // from here io is websocket specific
-                // and NO longer bound to the http protocol
+    /**
+     * <pre>
+     * A message published to many connections.
+     * The plain and the compressed frame are each encoded once and shared.
+     * A compressed frame does not depend on a connection context,
+     * so it is only shared with connections without context takeover.
+     * </pre>
+     */
+    protected static class SharedMessage {
+        protected final WebSocketHandler.Opcode opcode;
+        protected final byte[] data;
+        protected byte[] plainFrame = null;
+        protected byte[] compressedFrame = null;
+
+        protected SharedMessage(WebSocketHandler.Opcode pOpcode, byte[] pData) {
+            opcode = pOpcode;
+            data = pData;
+        }
 
-                // the processing blocks reading the InStream until connection is closed
-                // every read is considered as a "message"
-                // and is forwarded/published to the ConnectionManager for processing
-                pSocket.setSoTimeout(0);
-                processWsoMessageRequests(pSocket.getInputStream());
+        /**
+         */
+        protected synchronized byte[] frameFor(PerMessageDeflate pDeflate) {
+            if (pDeflate != null && pDeflate.serverNoContextTakeover && pDeflate.isWorthCompressing(data)) {
+                if (compressedFrame == null) {
+                    compressedFrame = WebSocketHandler.encodeWsoFrame(opcode,
+                            PerMessageDeflate.compressOnce(data, pDeflate.level), true);
+                }
+                return compressedFrame;
+            }
+            if (plainFrame == null) {
+                plainFrame = WebSocketHandler.encodeWsoFrame(opcode, data, false);
+            }
+            return plainFrame;
+        }
+    }
 
-                // returning from reading lInStream
-                // means the stream returned -1, end of stream and closed
-                outStream.flush();
-                outStream.close();
+    /**
+     * <pre>
+     * The permessage-deflate extension context of a connection (RFC 7692).
+     * A compressed message is a raw deflate stream flushed with SYNC_FLUSH
+     * without the trailing 0x00 0x00 0xff 0xff.
+     * </pre>
+     */
+    protected static class PerMessageDeflate {
+        protected static final String EXTENSION_NAME = "permessage-deflate";
+        protected static final byte[] TAIL = { 0x00, 0x00, (byte) 0xff, (byte) 0xff };
+        // smaller messages are sent uncompressed
+        protected static final int MIN_COMPRESS_SIZE = 128;
+
+        protected final int level;
+        protected final boolean serverNoContextTakeover;
+        protected final boolean clientNoContextTakeover;
+        // an accepted server_max_window_bits offer must be answered (RFC 7692 7.1.2.1)
+        protected boolean serverMaxWindowBits = false;
+        protected final Deflater deflater;
+        protected final Inflater inflater = new Inflater(true);
+        protected final byte[] buffer = new byte[8192];
+        // reading and sending happen in different threads
+        protected final byte[] inflateBuffer = new byte[8192];
+
+        protected PerMessageDeflate(int pLevel, boolean pServerNoContextTakeover, boolean pClientNoContextTakeover) {
+            level = pLevel;
+            serverNoContextTakeover = pServerNoContextTakeover;
+            clientNoContextTakeover = pClientNoContextTakeover;
+            deflater = new Deflater(pLevel, true);
+        }
 
-            } catch (Exception e) {
-                throw new UncheckedWebSocketException(String.format("WebSocket request handling error: [%s]",
-                        connectionId), e);
-            } finally {
-                // remove connection from the ConnectionManager
-                connectionManager.connectionClosed(connectionId);
-                try {
-                    pSocket.close();
-                } catch (IOException e) {
-                    LOG.severe(() -> String.format("Finally closing WebSocket failed [%s] [%s]", e.getMessage(),
-                            connectionId));
+        /**
+         * <pre>
+         * Accept the first supported offer of the Sec-WebSocket-Extensions header or return null.
+         * e.g. "permessage-deflate; client_max_window_bits, x-webkit-deflate-frame"
+         * </pre>
+         */
+        protected static PerMessageDeflate negotiate(String pOffers, int pLevel, boolean pNoContextTakeover) {
+            if (pOffers == null || pOffers.isEmpty()) {
+                return null;
+            }
+            for (String lOffer : pOffers.split(",")) {
+                String[] lParams = lOffer.trim().split(";");
+                if (!lParams[0].trim().equalsIgnoreCase(EXTENSION_NAME)) {
+                    continue;
+                }
+                boolean lAcceptable = true;
+                boolean lServerNoContext = pNoContextTakeover;
+                boolean lClientNoContext = false;
+                boolean lServerMaxWindowBits = false;
+                for (int i = 1; i < lParams.length; i++) {
+                    String[] lParam = lParams[i].trim().split("=");
+                    String lName = lParam[0].trim().toLowerCase();
+                    String lValue = lParam.length > 1 ? lParam[1].trim().replace("\"", "") : "";
+                    if (lName.equals("server_no_context_takeover")) {
+                        lServerNoContext = true;
+                    } else if (lName.equals("client_no_context_takeover")) {
+                        lClientNoContext = true;
+                    } else if (lName.equals("server_max_window_bits")) {
+                        // java.util.zip always uses a 15 bit window
+                        lAcceptable = lValue.equals("15");
+                        lServerMaxWindowBits = true;
+                    } else if (!lName.equals("client_max_window_bits")) {
+                        lAcceptable = false;
+                    }
+                }
+                if (lAcceptable) {
+                    PerMessageDeflate lDeflate = new PerMessageDeflate(pLevel, lServerNoContext, lClientNoContext);
+                    lDeflate.serverMaxWindowBits = lServerMaxWindowBits;
+                    return lDeflate;
                 }
             }
+            return null;
         }
 
         /**
+         * The Sec-WebSocket-Extensions response value.
          */
-        protected String createWebSocketAcceptKey(String pRequestKey)
-                throws NoSuchAlgorithmException {
-            String lKey = pRequestKey + HttpHeader.MAGIC_WEBSOCKET_GUID;
-            byte[] lSha1 = MessageDigest.getInstance("SHA-1").digest(lKey.getBytes(StandardCharsets.UTF_8));
-            lKey = Base64.getEncoder().encodeToString(lSha1);
-            return lKey;
+        protected String getResponseHeaderValue() {
+            StringBuilder lValue = new StringBuilder(EXTENSION_NAME);
+            if (serverNoContextTakeover) {
+                lValue.append("; server_no_context_takeover");
+            }
+            if (clientNoContextTakeover) {
+                lValue.append("; client_no_context_takeover");
+            }
+            if (serverMaxWindowBits) {
+                lValue.append("; server_max_window_bits=15");
+            }
+            return lValue.toString();
         }
 
         /**
          */
-        protected void processWsoHandshake(String pConnectionId, RequestMessage pRequest,
-                Map<String, String> pComData)
-                throws IOException, NoSuchAlgorithmException {
+        protected boolean isWorthCompressing(byte[] pData) {
+            return pData.length >= MIN_COMPRESS_SIZE;
+        }
+
+        /**
+         * The caller must keep the order of compressing and sending messages.
+         */
+        protected byte[] compress(byte[] pData) {
+            byte[] lData = deflate(deflater, pData, buffer);
+            if (serverNoContextTakeover) {
+                deflater.reset();
+            }
+            return lData;
+        }
+
+        /**
+         */
+        protected static byte[] compressOnce(byte[] pData, int pLevel) {
+            Deflater lDeflater = new Deflater(pLevel, true);
+            try {
+                return deflate(lDeflater, pData, new byte[8192]);
+            } finally {
+                lDeflater.end();
+            }
+        }
+
+        /**
+         */
+        protected static byte[] deflate(Deflater pDeflater, byte[] pData, byte[] pBuffer) {
+            ByteArrayOutputStream lOut = new ByteArrayOutputStream(pData.length / 2 + 16);
+            pDeflater.setInput(pData);
+            int lCount;
+            do {
+                lCount = pDeflater.deflate(pBuffer, 0, pBuffer.length, Deflater.SYNC_FLUSH);
+                lOut.write(pBuffer, 0, lCount);
+            } while (lCount == pBuffer.length);
+
+            byte[] lData = lOut.toByteArray();
+            // remove the empty block tail
+            return Arrays.copyOf(lData, lData.length - TAIL.length);
+        }
+
+        /**
+         * Inflate a complete message limited to pMaxSize bytes.
+         */
+        protected byte[] decompress(byte[] pData, long pMaxSize) throws IOException {
+            return decompress(pData, pData.length, true, pMaxSize);
+        }
+
+        /**
+         * Inflate the next pLength bytes of a message - each part limited to pMaxSize bytes.
+         */
+        protected byte[] decompress(byte[] pData, int pLength, boolean pLast, long pMaxSize) throws IOException {
+            ByteArrayOutputStream lOut = new ByteArrayOutputStream(pLength * 2);
+            try {
+                inflater.setInput(pData, 0, pLength);
+                inflate(lOut, pMaxSize);
+                if (pLast) {
+                    inflater.setInput(TAIL);
+                    inflate(lOut, pMaxSize);
+                }
+            } catch (DataFormatException e) {
+                throw new FatalWsoException("Invalid compressed message", e);
+            }
+            if (pLast && (clientNoContextTakeover || inflater.finished())) {
+                inflater.reset();
+            }
+            return lOut.toByteArray();
+        }
+
+        /**
+         */
+        protected void inflate(ByteArrayOutputStream pOut, long pMaxSize) throws IOException, DataFormatException {
+            int lCount;
+            while ((lCount = inflater.inflate(inflateBuffer)) > 0 || !inflater.needsInput()) {
+                pOut.write(inflateBuffer, 0, lCount);
+                if (pOut.size() > pMaxSize) {
+                    throw new FatalWsoException(
+                            String.format("Max message size exceeded: inflated [%s] > [%s]", pOut.size(), pMaxSize));
+                }
+                if (lCount == 0 && inflater.finished()) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         */
+        protected void end() {
+            deflater.end();
+            inflater.end();
+        }
+    }
+
+    /**
+     * <pre>
+     * The bounded outbound queue of encoded frames of a connection.
+     * A writer task drains the queue coalescing all available frames into one buffered socket write.
+     * So frames of concurrent producers stay intact and producers do not wait for the network.
+     * </pre>
+     */
+    protected static class WsoOutboundQueue {
+        protected static final int WRITE_BUFFER_SIZE = 65536;
+
+        protected final BlockingQueue<byte[]> queue;
+        protected final OverflowPolicy policy;
+        protected final OutputStream out;
+        protected final Executor executor;
+        protected final Runnable onFailure;
+        protected final AtomicBoolean scheduled = new AtomicBoolean(false);
+        protected final ReentrantLock writeLock = new ReentrantLock();
+        protected final AtomicLong dropped = new AtomicLong();
+        protected volatile boolean closed = false;
+        // a dropped fragment would corrupt the message
+        protected volatile boolean fragmenting = false;
+        // a dropped compressed frame would corrupt the client inflate context
+        protected volatile boolean keepCompressed = false;
+
+        protected WsoOutboundQueue(OutputStream pOut, int pCapacity, OverflowPolicy pPolicy, Executor pExecutor,
+                Runnable pOnFailure) {
+            out = new BufferedOutputStream(pOut, WRITE_BUFFER_SIZE);
+            queue = new ArrayBlockingQueue<>(pCapacity);
+            policy = pPolicy;
+            executor = pExecutor;
+            onFailure = pOnFailure;
+        }
+
+        /**
+         * <pre>
+         * Queue a frame for writing.
+         * Returns false if a frame that must not block could not be queued.
+         * </pre>
+         */
+        protected boolean offer(byte[] pFrame, boolean pMayBlock) throws IOException {
+            if (closed) {
+                throw new IOException("WebSocket connection closed");
+            }
+            if (!queue.offer(pFrame)) {
+                if (!pMayBlock) {
+                    return false;
+                } else if (policy == OverflowPolicy.BLOCK || fragmenting) {
+                    putBlocking(pFrame);
+                } else {
+                    applyOverflowPolicy(pFrame);
+                }
+            }
+            schedule();
+            return true;
+        }
+
+        /**
+         * <pre>
+         * Queue a published frame without waiting.
+         * A full queue with the BLOCK policy or during a fragmented send skips the frame
+         * so one slow subscriber does NOT hold up the others.
+         * Returns false if the frame was skipped.
+         * </pre>
+         */
+        protected boolean offerPublished(byte[] pFrame) throws IOException {
+            if (closed) {
+                throw new IOException("WebSocket connection closed");
+            }
+            if (!queue.offer(pFrame)) {
+                if (policy == OverflowPolicy.BLOCK || fragmenting) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                applyOverflowPolicy(pFrame);
+            }
+            schedule();
+            return true;
+        }
+
+        /**
+         */
+        protected boolean isFull() {
+            return queue.remainingCapacity() == 0;
+        }
+
+        /**
+         */
+        protected void applyOverflowPolicy(byte[] pFrame) throws IOException {
+            if (policy == OverflowPolicy.DROP_OLDEST) {
+                while (!queue.offer(pFrame)) {
+                    if (!dropOldest()) {
+                        overflow();
+                    }
+                }
+            } else {
+                overflow();
+            }
+        }
+
+        /**
+         */
+        protected void overflow() throws IOException {
+            closed = true;
+            onFailure.run();
+            throw new IOException(String.format("WebSocket outbound queue full [%s]", queue.size()));
+        }
+
+        /**
+         * <pre>
+         * Remove the oldest frame that can be dropped without breaking the connection.
+         * Control frames, fragments and on context takeover connections
+         * compressed frames are never dropped.
+         * Returns false if there is no such frame.
+         * </pre>
+         */
+        protected boolean dropOldest() {
+            for (byte[] lFrame : queue) {
+                if (isDroppable(lFrame)) {
+                    if (queue.remove(lFrame)) {
+                        dropped.incrementAndGet();
+                    }
+                    return true;
+                }
+            }
+            return queue.remainingCapacity() > 0; // drained meanwhile
+        }
+
+        /**
+         */
+        protected boolean isDroppable(byte[] pFrame) {
+            int lOpcode = pFrame[0] & 0x0F;
+            boolean lFin = (pFrame[0] & 0x80) != 0;
+            boolean lRsv1 = (pFrame[0] & 0x40) != 0;
+            return lFin && (lOpcode == WebSocketHandler.Opcode.TEXT.getCode()
+                    || lOpcode == WebSocketHandler.Opcode.BINARY.getCode())
+                    && !(lRsv1 && keepCompressed);
+        }
+
+        /**
+         */
+        protected void setFragmenting(boolean pFragmenting) {
+            fragmenting = pFragmenting;
+        }
+
+        /**
+         */
+        protected void setKeepCompressed(boolean pKeepCompressed) {
+            keepCompressed = pKeepCompressed;
+        }
+
+        /**
+         */
+        protected void putBlocking(byte[] pFrame) throws IOException {
+            try {
+                while (!queue.offer(pFrame, 100, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        throw new IOException("WebSocket connection closed");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("WebSocket send interrupted");
+            }
+        }
+
+        /**
+         */
+        protected void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    drain();
+                }
+            }
+        }
+
+        /**
+         * The writer task.
+         */
+        protected void drain() {
+            writeLock.lock();
+            try {
+                scheduled.set(false);
+                writeAll();
+            } catch (IOException e) {
+                closed = true;
+                queue.clear();
+                onFailure.run();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        /**
+         */
+        protected void writeAll() throws IOException {
+            byte[] lFrame;
+            while ((lFrame = queue.poll()) != null) {
+                out.write(lFrame);
+            }
+            out.flush();
+        }
+
+        /**
+         * <pre>
+         * Write the still queued frames e.g. a close frame
+         * waiting max pMillis for a running writer task.
+         * </pre>
+         */
+        protected void close(long pMillis) {
+            try {
+                if (writeLock.tryLock(pMillis, TimeUnit.MILLISECONDS)) {
+                    try {
+                        if (!closed) {
+                            writeAll();
+                        }
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // the connection is closing anyway
+            } finally {
+                closed = true;
+                queue.clear();
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * A selector thread reading the channels of n connections.
+     * Frames are decoded on the loop thread,
+     * complete messages are handed over to the inbox of the connection.
+     * </pre>
+     */
+    protected static class WsoSelectorLoop extends Thread {
+        protected final Selector selector;
+        // registrations must run on the loop thread
+        protected final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        protected volatile boolean running = true;
+
+        protected WsoSelectorLoop(String pName) throws IOException {
+            super(pName);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        /**
+         */
+        protected void register(SocketChannel pChannel, WebSocketHandler pHandler) {
+            execute(() -> {
+                try {
+                    pHandler.selectorKey = pChannel.register(selector, SelectionKey.OP_READ, pHandler);
+                } catch (IOException e) {
+                    pHandler.abort();
+                }
+            });
+        }
+
+        /**
+         * Run a task on the loop thread.
+         */
+        protected void execute(Runnable pTask) {
+            pending.add(pTask);
+            selector.wakeup();
+        }
+
+        /**
+         */
+        protected void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    Runnable lTask;
+                    while ((lTask = pending.poll()) != null) {
+                        lTask.run();
+                    }
+                    Iterator<SelectionKey> lKeys = selector.selectedKeys().iterator();
+                    while (lKeys.hasNext()) {
+                        SelectionKey lKey = lKeys.next();
+                        lKeys.remove();
+                        WebSocketHandler lHandler = (WebSocketHandler) lKey.attachment();
+                        try {
+                            if (lKey.isValid() && lKey.isReadable()) {
+                                lHandler.onReadable(lKey);
+                            }
+                        } catch (CancelledKeyException e) {
+                            // closed concurrently
+                        } catch (RuntimeException e) {
+                            LOG.severe(() -> String.format("WebSocket selector ERROR [%s] [%s]", e,
+                                    lHandler.connectionId));
+                            lKey.cancel();
+                            lHandler.abort();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOG.severe(() -> String.format("WebSocket selector loop failed [%s] [%s]", e, getName()));
+            } finally {
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * The serial task queue of a selector mode connection.
+     * The tasks of one connection run one after another on the dispatch executor
+     * so the messages of a connection are processed in arrival order
+     * without binding a thread to an idle connection.
+     * </pre>
+     */
+    protected static class WsoInbox implements Executor {
+        // tasks run in a row before the thread is given back to the executor
+        protected static final int BATCH_SIZE = 64;
+
+        protected final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        protected final AtomicBoolean scheduled = new AtomicBoolean(false);
+        protected final Executor executor;
+
+        protected WsoInbox(Executor pExecutor) {
+            executor = pExecutor;
+        }
+
+        @Override
+        public void execute(Runnable pTask) {
+            tasks.add(pTask);
+            schedule();
+        }
+
+        /**
+         */
+        protected void schedule() {
+            if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Discard the queued tasks.
+         */
+        protected void cancel() {
+            tasks.clear();
+        }
+
+        /**
+         */
+        protected void drain() {
+            try {
+                Runnable lTask;
+                int lCount = 0;
+                while (lCount++ < BATCH_SIZE && (lTask = tasks.poll()) != null) {
+                    try {
+                        lTask.run();
+                    } catch (RuntimeException e) {
+                        LOG.severe(() -> String.format("WebSocket dispatch ERROR [%s]%s%s", e, LS,
+                                getStackTraceFrom(e)));
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * An OutputStream writing to a selector mode channel.
+     * A writer waits on its own selector while the socket send buffer is full,
+     * so the writer tasks of the outbound queues never block a selector loop.
+     * </pre>
+     */
+    protected static class ChannelOutputStream extends OutputStream {
+        protected static final long WRITE_TIMEOUT_MILLIS = 30000;
+
+        protected final SocketChannel channel;
+        protected Selector writeSelector = null;
+
+        protected ChannelOutputStream(SocketChannel pChannel) {
+            channel = pChannel;
+        }
+
+        @Override
+        public void write(int pByte) throws IOException {
+            write(new byte[] { (byte) pByte }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] pData, int pOffset, int pLength) throws IOException {
+            ByteBuffer lBuffer = ByteBuffer.wrap(pData, pOffset, pLength);
+            while (lBuffer.hasRemaining()) {
+                if (channel.write(lBuffer) == 0) {
+                    awaitWritable();
+                }
+            }
+        }
+
+        /**
+         */
+        protected void awaitWritable() throws IOException {
+            if (writeSelector == null) {
+                writeSelector = Selector.open();
+                channel.register(writeSelector, SelectionKey.OP_WRITE);
+            }
+            if (writeSelector.select(WRITE_TIMEOUT_MILLIS) == 0) {
+                throw new SocketTimeoutException("WebSocket channel write timed out");
+            }
+            writeSelector.selectedKeys().clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writeSelector != null) {
+                writeSelector.close();
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * The handler implements the wso protocol level.
+     * It is responsible for 
+     *  - doing the handshake
+     *  - reading message bytes and create wso packet frames
+     *  - encoding and sending message bytes
+     * </pre>
+     */
+    protected static class WebSocketHandler implements WsoConnection {
+
+        // max time to write queued frames when a connection closes
+        protected static final long CLOSE_FLUSH_MILLIS = 1000;
+
+        protected String connectionId = "";
+        protected String initUrlPath = "";
+        protected Socket socket;
+        protected OutputStream outStream;
+        // the time of the last frame received from the client
+        protected volatile long lastReceived = System.currentTimeMillis();
+        protected volatile boolean closeSent = false;
+        protected WsoOutboundQueue outbound;
+        protected ProviderAdapter adapter;
+        // the negotiated permessage-deflate context or null
+        protected PerMessageDeflate deflate = null;
+        protected WsoAccessController accessCtrl;
+        protected WsoConnectionManager connectionManager;
+        protected long maxUpStreamPayloadSize;
+        protected final AtomicBoolean closed = new AtomicBoolean(false);
+
+        // the frame and message buffers are reused for the whole connection
+        protected final WsoFrame frame = new WsoFrame();
+        protected final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        protected boolean fragmented = false;
+        // the opcode and compression of the first frame of a fragmented message
+        protected Opcode messageOpcode = Opcode.TEXT;
+        protected boolean compressed = false;
+
+        // message dispatch
+        protected DispatchMode dispatchMode = DispatchMode.SYNC;
+        protected int maxInFlight = 1;
+        protected final AtomicInteger inFlight = new AtomicInteger();
+        // the threads processing messages of this connection
+        protected final Set<Thread> processing = new HashSet<>();
+        // ORDERED only
+        protected WsoInbox inbox = null;
+        // the serial parts of streamed messages in CONCURRENT mode
+        protected WsoInbox streamInbox = null;
+        // the processor of the current streamed message
+        protected WsoStreamingProcessor streamer = null;
+        // data messages are sent one at a time
+        protected final ReentrantLock messageLock = new ReentrantLock();
+
+        // selector mode only
+        protected static final int IN_BUFFER_SIZE = 8192;
+        protected WsoSelectorLoop selectorLoop = null;
+        protected SelectionKey selectorKey = null;
+        protected ByteBuffer inBuffer = null;
+        protected ChannelOutputStream channelOut = null;
+        // reading paused by the in flight limit
+        protected volatile boolean paused = false;
+
+        protected WebSocketHandler() {
+        }
+
+        public WebSocketHandler(String pInitUrlPath, ProviderAdapter pAdapter) {
+            this();
+            initUrlPath = pInitUrlPath;
+            accessCtrl = pAdapter.getWsoAccessController();
+            connectionManager = pAdapter.getWsoConnectionManager();
+            maxUpStreamPayloadSize = pAdapter.getMaxUpStreamPayloadSize();
+            adapter = pAdapter;
+        }
+
+        /**
+         */
+        @Override
+        public String geConnectiontId() {
+            return connectionId;
+        }
+
+        @Override
+        public String getPath() {
+            return initUrlPath;
+        }
+
+        @Override
+        public void sendMessage(byte[] pMessage) {
+            send(Opcode.TEXT, pMessage);
+        }
+
+        @Override
+        public void sendText(String pText) {
+            send(Opcode.TEXT, pText.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void sendBinary(byte[] pData) {
+            send(Opcode.BINARY, pData);
+        }
+
+        @Override
+        public void ping(byte[] pData) {
+            send(Opcode.PING, pData);
+        }
+
+        /**
+         * <pre>
+         * Start the closing handshake.
+         * The connection ends when the client answers the close frame.
+         * </pre>
+         */
+        @Override
+        public void close(int pCode, String pReason) {
+            byte[] lReason = pReason != null ? pReason.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            byte[] lPayload = new byte[2 + Math.min(lReason.length, WsoFrame.MAX_CONTROL_PAYLOAD_LENGTH - 2)];
+            lPayload[0] = (byte) ((pCode >> 8) & 0xFF);
+            lPayload[1] = (byte) (pCode & 0xFF);
+            System.arraycopy(lReason, 0, lPayload, 2, lPayload.length - 2);
+            closeSent = true;
+            send(Opcode.CLOSE, lPayload);
+        }
+
+        /**
+         */
+        protected void send(Opcode pOpcode, byte[] pData) {
+            if (outbound != null) {
+                boolean lLocked = false;
+                try {
+                    if (!pOpcode.isControl()) {
+                        // control frames may be sent between fragments
+                        messageLock.lock();
+                        lLocked = true;
+                    }
+                    if (deflate != null && !pOpcode.isControl() && deflate.isWorthCompressing(pData)) {
+                        // the client inflates in the order of compression
+                        synchronized (deflate) {
+                            // closing ends the deflater under the same lock
+                            if (closed.get()) {
+                                throw new IOException("WebSocket connection closed");
+                            }
+                            outbound.offer(encodeWsoFrame(pOpcode, deflate.compress(pData), true), true);
+                        }
+                    } else {
+                        outbound.offer(encodeWsoFrame(pOpcode, pData), true);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedWebSocketException(String.format("WebSocket send message error: [%s]",
+                            geConnectiontId()), e);
+                } finally {
+                    if (lLocked) {
+                        messageLock.unlock();
+                    }
+                }
+            }
+        }
+
+        /**
+         * <pre>
+         * Send the data of the stream as one message in fragments of pFragmentSize bytes.
+         * Only one fragment at a time is in memory and the queue is filled blocking,
+         * so the memory use does not depend on the message size.
+         * Other messages wait until the last fragment is queued.
+         * Fragmented messages are not compressed.
+         * A read error closes the connection - a started message can't be withdrawn.
+         * </pre>
+         */
+        @Override
+        public void sendFragmented(InputStream pData, boolean pBinary, int pFragmentSize) throws IOException {
+            int lSize = Math.max(pFragmentSize, 1);
+            byte[] lCurrent = new byte[lSize];
+            byte[] lNext = new byte[lSize];
+            Opcode lOpcode = pBinary ? Opcode.BINARY : Opcode.TEXT;
+            messageLock.lock();
+            outbound.setFragmenting(true);
+            try {
+                int lLength = readFragment(pData, lCurrent);
+                while (true) {
+                    // read ahead to know the last fragment
+                    int lNextLength = lLength < lSize ? 0 : readFragment(pData, lNext);
+                    boolean lLast = lNextLength == 0;
+                    outbound.offer(encodeWsoFrame(lOpcode, lCurrent, 0, lLength, lLast, false), true);
+                    if (lLast) {
+                        break;
+                    }
+                    lOpcode = Opcode.CONTINUATION;
+                    byte[] lSwap = lCurrent;
+                    lCurrent = lNext;
+                    lNext = lSwap;
+                    lLength = lNextLength;
+                }
+            } catch (IOException e) {
+                close(CLOSE_INTERNAL_ERROR, "Message send failed");
+                throw e;
+            } finally {
+                outbound.setFragmenting(false);
+                messageLock.unlock();
+            }
+        }
+
+        /**
+         * Fill the buffer as far as possible - returns the number of bytes read.
+         */
+        protected static int readFragment(InputStream pIn, byte[] pBuffer) throws IOException {
+            return pIn.readNBytes(pBuffer, 0, pBuffer.length);
+        }
+
+        /**
+         * <pre>
+         * Ping an idle connection and close the socket of an unresponsive one.
+         * Closing the socket ends the blocking read of the connection thread.
+         * </pre>
+         */
+        protected void heartbeat(long pNow, long pIntervalMillis, long pTimeoutMillis) {
+            if (inFlight.get() >= maxInFlight) {
+                // not idle but waiting for its own messages to be processed
+                return;
+            }
+            long lIdle = pNow - lastReceived;
+            if (lIdle >= pTimeoutMillis) {
+                LOG.info(() -> String.format("WebSocket connection unresponsive for [%s] ms [%s]", lIdle,
+                        connectionId));
+                abort();
+            } else if (lIdle >= pIntervalMillis) {
+                try {
+                    // the heartbeat never blocks - a full queue is no reason to ping
+                    outbound.offer(encodeWsoFrame(Opcode.PING, new byte[0]), false);
+                } catch (IOException e) {
+                    abort();
+                }
+            }
+        }
+
+        /**
+         */
+        protected void abort() {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                LOG.fine(() -> String.format("WebSocket abort failed [%s] [%s]", e.getMessage(), connectionId));
+            }
+            if (selectorLoop != null) {
+                // a closed channel gets no more read events
+                adapter.getDispatchExecutor().execute(this::closeConnection);
+            }
+        }
+
+        /**
+         * Interface method for (default)request processor.
+         */
+        protected void handleRequest(RequestMessage pRequest, Socket pSocket, Map<String, String> pComData)
+                throws IOException {
+            // setting a marker for the top level server socket thread
+            pComData.put(JamnServer.WEBSOCKET_PROVIDER, "");
+
+            socket = pSocket;
+            outStream = pSocket.getOutputStream();
+            // selector mode requires a channel based socket
+            WsoSelectorLoop lLoop = pSocket.getChannel() != null ? adapter.nextSelectorLoop() : null;
+            dispatchMode = adapter.getDispatchMode(lLoop != null);
+            maxInFlight = adapter.getMaxInFlight();
+            if (dispatchMode == DispatchMode.ORDERED) {
+                inbox = adapter.createInbox();
+            }
+            if (lLoop != null) {
+                channelOut = new ChannelOutputStream(pSocket.getChannel());
+                outbound = adapter.createOutboundQueue(channelOut, this::abort);
+            } else {
+                outbound = adapter.createOutboundQueue(outStream, this::abort);
+            }
+            // create a unique connectionId
+            connectionId = initUrlPath + " - " + Integer.toHexString(pSocket.hashCode()) + "-"
+                    + pSocket.toString();
+            boolean lDetached = false;
+
+            try {
+                // check accessibility
+                StringBuilder lErrorMsg = new StringBuilder();
+                if (!accessCtrl.isSupportedPath(initUrlPath, lErrorMsg)
+                        || !accessCtrl.isAccessGranted(pRequest.header().getAttributes(), lErrorMsg)) {
+                    throw new WebSocketConnectionRejectedException(
+                            String.format("WebSocket connection rejected [%s] [%s] [%s]", getPath(), lErrorMsg,
+                                    connectionId));
+                }
+
+                processWsoHandshake(connectionId, pRequest, pComData);
+
+                // from here io is websocket specific
+                // and NO longer bound to the http protocol
+
+                if (lLoop != null) {
+                    // hand over the connection to a selector loop
+                    // and give the server worker thread back
+                    inBuffer = ByteBuffer.allocate(IN_BUFFER_SIZE);
+                    selectorLoop = lLoop;
+                    pSocket.getChannel().configureBlocking(false);
+                    pComData.put(JamnServer.SOCKET_DETACHED, "true");
+                    lDetached = true;
+                    lLoop.register(pSocket.getChannel(), this);
+                    return;
+                }
+
+                // the processing blocks reading the InStream until connection is closed
+                // every read is considered as a "message"
+                // and is forwarded/published to the ConnectionManager for processing
+                pSocket.setSoTimeout(0);
+                processWsoMessageRequests(pSocket.getInputStream());
+
+                // returning from reading lInStream
+                // means the stream returned -1, end of stream and closed
+                // or a close frame was received - so write the still queued frames
+                outbound.close(CLOSE_FLUSH_MILLIS);
+
+            } catch (Exception e) {
+                throw new UncheckedWebSocketException(String.format("WebSocket request handling error: [%s]",
+                        connectionId), e);
+            } finally {
+                if (!lDetached) {
+                    closeConnection();
+                }
+            }
+        }
+
+        /**
+         * Release the connection resources - called once for a connection.
+         */
+        protected void closeConnection() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            cancelDispatch();
+            // remove connection from the ConnectionManager
+            connectionManager.connectionClosed(connectionId);
+            outbound.close(0);
+            if (deflate != null) {
+                synchronized (deflate) {
+                    deflate.end();
+                }
+            }
+            try {
+                if (channelOut != null) {
+                    channelOut.close();
+                }
+                socket.close();
+            } catch (IOException e) {
+                LOG.severe(() -> String.format("Finally closing WebSocket failed [%s] [%s]", e.getMessage(),
+                        connectionId));
+            }
+        }
+
+        /**
+         * <pre>
+         * Selector mode - called by the selector loop for a readable channel.
+         * Decodes all complete frames of the received bytes
+         * and keeps an incomplete frame in the buffer until the rest arrives.
+         * </pre>
+         */
+        protected void onReadable(SelectionKey pKey) {
+            int lCount;
+            try {
+                lCount = ((SocketChannel) pKey.channel()).read(inBuffer);
+            } catch (IOException e) {
+                lCount = -1;
+            }
+            if (lCount == -1) {
+                finishSelectorConnection(pKey);
+            } else {
+                decodeFrames(pKey);
+            }
+        }
+
+        /**
+         * Selector mode - decode the buffered frames until the buffer is empty or reading is paused.
+         */
+        protected void decodeFrames(SelectionKey pKey) {
+            boolean run = true;
+            inBuffer.flip();
+            while (run && !paused && inBuffer.hasRemaining()) {
+                try {
+                    if (!frame.readFrom(inBuffer, maxUpStreamPayloadSize)) {
+                        break;
+                    }
+                    lastReceived = System.currentTimeMillis();
+                    LOG.fine(frame::getDescription);
+                    run = processFrame(frame);
+                } catch (Exception e) {
+                    run = !connectionManager.processErrorFor(connectionId, frame.getAvailablePacketDataOnError(), e);
+                }
+            }
+
+            if (!run) {
+                finishSelectorConnection(pKey);
+            } else {
+                inBuffer.compact();
+                int lRequired = frame.getRequiredLength();
+                if (lRequired > inBuffer.capacity()) {
+                    // a frame larger than the buffer
+                    inBuffer = ByteBuffer.allocate(lRequired).put(inBuffer.flip());
+                } else if (inBuffer.position() == 0 && inBuffer.capacity() > IN_BUFFER_SIZE) {
+                    inBuffer = ByteBuffer.allocate(IN_BUFFER_SIZE);
+                }
+            }
+        }
+
+        /**
+         */
+        protected void finishSelectorConnection(SelectionKey pKey) {
+            pKey.cancel();
+            // write the still queued frames - not on the loop thread
+            adapter.getDispatchExecutor().execute(() -> {
+                outbound.close(CLOSE_FLUSH_MILLIS);
+                closeConnection();
+            });
+        }
+
+        /**
+         * Selector mode - called on the loop thread when the in flight messages dropped below the limit.
+         */
+        protected void resumeReading() {
+            if (paused && inFlight.get() < maxInFlight && selectorKey != null && selectorKey.isValid()) {
+                paused = false;
+                selectorKey.interestOps(SelectionKey.OP_READ);
+                // frames already buffered get no new read event
+                decodeFrames(selectorKey);
+            }
+        }
+
+        /**
+         */
+        protected String createWebSocketAcceptKey(String pRequestKey)
+                throws NoSuchAlgorithmException {
+            String lKey = pRequestKey + HttpHeader.MAGIC_WEBSOCKET_GUID;
+            byte[] lSha1 = MessageDigest.getInstance("SHA-1").digest(lKey.getBytes(StandardCharsets.UTF_8));
+            lKey = Base64.getEncoder().encodeToString(lSha1);
+            return lKey;
+        }
+
+        /**
+         */
+        protected void processWsoHandshake(String pConnectionId, RequestMessage pRequest,
+                Map<String, String> pComData)
+                throws IOException, NoSuchAlgorithmException {
 
             ResponseMessage lHandshakeResponse = new ResponseMessage(outStream);
             lHandshakeResponse.header()
@@ -461,6 +1831,12 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
                     .setUpgrade(WEBSOCKET)
                     .set(SEC_WEBSOCKET_ACCEPT, createWebSocketAcceptKey(pRequest.header().getWebSocketKey()));
 
+            deflate = adapter.negotiateDeflate(pRequest.header().get(SEC_WEBSOCKET_EXTENSIONS));
+            if (deflate != null) {
+                lHandshakeResponse.header().set(SEC_WEBSOCKET_EXTENSIONS, deflate.getResponseHeaderValue());
+                outbound.setKeepCompressed(!deflate.serverNoContextTakeover);
+            }
+
             lHandshakeResponse
                     .addContextData(pComData.get(JamnServer.SOCKET_IDTEXT))
                     .addContextData(pConnectionId)
@@ -474,87 +1850,357 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
 
                 LOG.info(() -> String.format("%sWebSocket connection established [%s]%s", LS, pConnectionId, LS));
             } catch (Exception e) {
-                lHandshakeResponse.header().setHttpStatus(SC_500_INTERNAL_ERROR);
-                lHandshakeResponse.send();
-                throw e;
+                lHandshakeResponse.header().setHttpStatus(SC_500_INTERNAL_ERROR);
+                lHandshakeResponse.send();
+                throw e;
+            }
+        }
+
+        /**
+         * <pre>
+         * The websocket listening loop.
+         * Every frame is read exactly - first the 2-14 byte header then the payload.
+         * So frames arriving together in one tcp packet or split over several packets
+         * are both handled correctly and the stream always stays aligned to frame boundaries.
+         * 
+         * The provider supports wso frames with
+         *  - text and binary messages
+         *  - fragmented messages
+         *    starting fragmentation when the fin bit = false
+         *    stopping fragmentation when the fin bit gets = true again
+         *  - control frames (close, ping, pong) also between fragments
+         * </pre>
+         */
+        protected void processWsoMessageRequests(InputStream pInStream) throws IOException {
+            boolean run = true;
+
+            while (run) {
+                try {
+                    if (!frame.readFrom(pInStream, maxUpStreamPayloadSize)) {
+                        // end of stream
+                        run = false;
+                    } else {
+                        lastReceived = System.currentTimeMillis();
+                        LOG.fine(frame::getDescription);
+                        run = processFrame(frame);
+                    }
+                } catch (SocketException | EOFException se) {
+                    run = false;
+                } catch (Exception e) {
+                    run = !connectionManager.processErrorFor(connectionId, frame.getAvailablePacketDataOnError(), e);
+                }
+            }
+        }
+
+        /**
+         * <pre>
+         * Process one frame - the same for blocking and selector mode.
+         * Returns false if the connection is to be closed.
+         * </pre>
+         */
+        protected boolean processFrame(WsoFrame pFrame) throws IOException {
+            if (pFrame.isRsv1() && (deflate == null || pFrame.isControlFrame()
+                    || pFrame.hasOpcode(Opcode.CONTINUATION))) {
+                throw new FatalWsoException(String.format("Invalid frame: unexpected RSV1 [%s]", pFrame.opcode));
+            } else if (pFrame.isControlFrame()) {
+                return processControlFrame(pFrame);
+            } else if (pFrame.hasOpcode(Opcode.CONTINUATION) != fragmented) {
+                throw new FatalWsoException(String.format("Invalid frame sequence: opcode [%s] fragmented [%s]",
+                        pFrame.opcode, fragmented));
+            } else if (isStreamed()) {
+                processStreamFrame(pFrame);
+            } else if (pFrame.isFin() && !fragmented) {
+                // hand over a complete websocket message for processing
+                dispatchMessage(toMessageData(pFrame.getPayloadData(), pFrame.isRsv1()),
+                        pFrame.hasOpcode(Opcode.BINARY));
+            } else {
+                if (!fragmented) {
+                    messageOpcode = pFrame.opcode;
+                    compressed = pFrame.isRsv1();
+                }
+                if (message.size() + pFrame.payloadLength > maxUpStreamPayloadSize) {
+                    throw new FatalWsoException(String.format("Max message size exceeded: [%s] > [%s]",
+                            message.size() + pFrame.payloadLength, maxUpStreamPayloadSize));
+                }
+                message.write(pFrame.payload, 0, pFrame.payloadLength);
+                fragmented = !pFrame.isFin();
+                if (!fragmented) {
+                    // stopping fragmentation
+                    byte[] lData = message.toByteArray();
+                    message.reset();
+                    dispatchMessage(toMessageData(lData, compressed), messageOpcode == Opcode.BINARY);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * A new message is streamed if the processor of the connection is a streaming processor.
+         */
+        protected boolean isStreamed() {
+            if (!fragmented) {
+                streamer = connectionManager.getStreamingProcessor(connectionId);
+            }
+            return streamer != null;
+        }
+
+        /**
+         * <pre>
+         * Hand over every frame of a message as a chunk to a streaming processor.
+         * Nothing is assembled - the max payload size limits the frames not the message.
+         * The parts are dispatched like messages, so the in flight limit
+         * also bounds the chunks waiting for a slow processor.
+         * </pre>
+         */
+        protected void processStreamFrame(WsoFrame pFrame) throws IOException {
+            WsoStreamingProcessor lStreamer = streamer;
+            if (!fragmented) {
+                messageOpcode = pFrame.opcode;
+                compressed = pFrame.isRsv1();
+                boolean lBinary = messageOpcode == Opcode.BINARY;
+                dispatch(() -> lStreamer.onMessageStart(connectionId, lBinary), new byte[0], true);
+            }
+            byte[] lChunk = compressed
+                    ? deflate.decompress(pFrame.payload, pFrame.payloadLength, pFrame.isFin(), maxUpStreamPayloadSize)
+                    : pFrame.getPayloadData();
+            if (lChunk.length > 0) {
+                dispatch(() -> lStreamer.onChunk(connectionId, lChunk), lChunk, true);
+            }
+
+            fragmented = !pFrame.isFin();
+            if (!fragmented) {
+                streamer = null;
+                boolean lBinary = messageOpcode == Opcode.BINARY;
+                dispatch(() -> {
+                    byte[] lResponse = lStreamer.onMessageEnd(connectionId);
+                    if (lResponse != null && lResponse.length > 0) {
+                        if (lBinary) {
+                            sendBinary(lResponse);
+                        } else {
+                            sendMessage(lResponse);
+                        }
+                    }
+                }, new byte[0], true);
+            }
+        }
+
+        /**
+         * <pre>
+         * Hand over a complete message according to the dispatch mode.
+         * SYNC processes on the reading thread,
+         * otherwise the message is queued to the inbox or directly to the dispatch executor.
+         * </pre>
+         */
+        protected void dispatchMessage(byte[] pMessage, boolean pBinary) throws IOException {
+            dispatch(() -> connectionManager.processMessageFor(connectionId, pMessage, pBinary), pMessage, false);
+        }
+
+        /**
+         * pOrdered tasks keep their order also in CONCURRENT mode.
+         */
+        protected void dispatch(Runnable pWork, byte[] pMessage, boolean pOrdered) throws IOException {
+            if (dispatchMode == DispatchMode.SYNC) {
+                pWork.run();
+                return;
+            }
+            acquireInFlight();
+            Runnable lTask = () -> processDispatched(pWork, pMessage);
+            try {
+                if (inbox != null) {
+                    inbox.execute(lTask);
+                } else if (pOrdered) {
+                    if (streamInbox == null) {
+                        streamInbox = adapter.createInbox();
+                    }
+                    streamInbox.execute(lTask);
+                } else {
+                    adapter.getDispatchExecutor().execute(lTask);
+                }
+            } catch (RejectedExecutionException e) {
+                releaseInFlight();
+                throw new FatalWsoException("WebSocket message dispatch rejected", e);
+            }
+        }
+
+        /**
+         * The dispatched message task - skipped when the connection closed meanwhile.
+         */
+        protected void processDispatched(Runnable pWork, byte[] pMessage) {
+            Thread lThread = Thread.currentThread();
+            try {
+                synchronized (processing) {
+                    if (closed.get()) {
+                        return;
+                    }
+                    processing.add(lThread);
+                }
+                pWork.run();
+            } catch (Exception e) {
+                if (!closed.get() && connectionManager.processErrorFor(connectionId, pMessage, e)) {
+                    abort();
+                }
+            } finally {
+                synchronized (processing) {
+                    if (processing.remove(lThread)) {
+                        // a cancel interrupt must not hit the next task of a pooled thread
+                        Thread.interrupted();
+                    }
+                }
+                releaseInFlight();
             }
         }
 
         /**
          * <pre>
-         * The websocket listening loop.
-         * The provider supports basic wso frames with
-         *  - text messages
-         *  - the close opcode
-         *  - and fragmented messages
-         *    starting fragmentation when the fin byte = false
-         *    stopping fragmentation when the fin byte gets = true again
+         * Count a message in processing.
+         * At the limit a blocking reader waits - a selector mode connection stops reading.
          * </pre>
          */
-        protected void processWsoMessageRequests(InputStream pInStream) throws IOException {
+        protected void acquireInFlight() throws IOException {
+            if (selectorLoop == null) {
+                synchronized (inFlight) {
+                    while (inFlight.get() >= maxInFlight && !closed.get()) {
+                        try {
+                            inFlight.wait(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("WebSocket dispatch interrupted");
+                        }
+                    }
+                }
+            }
+            if (inFlight.incrementAndGet() >= maxInFlight && selectorLoop != null) {
+                paused = true;
+                selectorKey.interestOps(0);
+            }
+        }
 
-            WsoFrame lFrame = new WsoFrame(WsoFrame.EmptyPacket);
-            WsoFrame lFragmentedFrame = null;
-            byte[] lPacket;
-            int lReadPacketLength;
-            boolean run = true;
+        /**
+         */
+        protected void releaseInFlight() {
+            int lCount = inFlight.decrementAndGet();
+            if (selectorLoop == null) {
+                synchronized (inFlight) {
+                    inFlight.notifyAll();
+                }
+            } else if (paused && lCount < maxInFlight) {
+                selectorLoop.execute(this::resumeReading);
+            }
+        }
 
-            while (run) {
-                try {
-                    lPacket = new byte[1024];
-                    lReadPacketLength = pInStream.read(lPacket);
+        /**
+         * Discard the queued messages and interrupt the running ones of a closed connection.
+         */
+        protected void cancelDispatch() {
+            if (inbox != null) {
+                inbox.cancel();
+            }
+            if (streamInbox != null) {
+                streamInbox.cancel();
+            }
+            synchronized (processing) {
+                for (Thread lThread : processing) {
+                    lThread.interrupt();
+                }
+            }
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
 
-                    lFrame = new WsoFrame(lReadPacketLength, lPacket);
-                    lFrame.decodeHeader();
-                    LOG.fine(lFrame.getDescription());
+        /**
+         */
+        protected byte[] toMessageData(byte[] pPayload, boolean pCompressed) throws IOException {
+            return pCompressed ? deflate.decompress(pPayload, maxUpStreamPayloadSize) : pPayload;
+        }
 
-                    if (lFrame.hasOpcode(Opcode.CLOSE)) {
-                        lPacket = encodeWsoMessage(lPacket);
-                        outStream.write(lPacket);
-                        outStream.flush();
-                    } else {
-                        // try to read all still missing message bytes
-                        lFrame.completePayload(pInStream, maxUpStreamPayloadSize);
-                        if (lFrame.isFin()) {
-                            if (lFragmentedFrame != null) {
-                                // stopping fragmentation
-                                lFragmentedFrame.addFragment(lFrame);
-                                lFrame = lFragmentedFrame;
-                                lFragmentedFrame = null;
-                            }
-                            // hand over a complete websocket message for processing
-                            connectionManager.processMessageFor(connectionId, lFrame.getPayloadData());
-                        } else {
-                            // starting fragment processing
-                            if (lFragmentedFrame == null) {
-                                lFragmentedFrame = lFrame;
-                            } else {
-                                lFragmentedFrame.addFragment(lFrame);
-                            }
-                        }
-                    }
-                } catch (SocketException se) {
-                    run = false;
-                } catch (Exception e) {
-                    run = !connectionManager.processErrorFor(connectionId, lFrame.getAvailablePacketDataOnError(), e);
+        /**
+         * <pre>
+         * Answer a ping with a pong and a close with a close echoing the status code.
+         * A close answering a close sent by the server is not echoed.
+         * Returns false if the connection is to be closed.
+         * </pre>
+         */
+        protected boolean processControlFrame(WsoFrame pFrame) throws IOException {
+            if (pFrame.hasOpcode(Opcode.CLOSE)) {
+                if (!closeSent) {
+                    byte[] lCode = Arrays.copyOf(pFrame.payload, Math.min(pFrame.payloadLength, 2));
+                    closeSent = true;
+                    writeFrame(encodeWsoFrame(Opcode.CLOSE, lCode));
+                }
+                return false;
+            } else if (pFrame.hasOpcode(Opcode.PING)) {
+                writeFrame(encodeWsoFrame(Opcode.PONG, pFrame.getPayloadData()));
+            }
+            return true;
+        }
+
+        /**
+         * All frames are written through the outbound queue so frames of different threads do not interleave.
+         */
+        protected void writeFrame(byte[] pFrameData) throws IOException {
+            // a selector loop must not wait for a full queue
+            outbound.offer(pFrameData, !(Thread.currentThread() instanceof WsoSelectorLoop));
+        }
+
+        /**
+         * <pre>
+         * Queue a published frame without waiting.
+         * A data frame must not get between the fragments of a message,
+         * so a connection sending a fragmented message or with a full queue is skipped.
+         * </pre>
+         */
+        protected boolean publishFrame(byte[] pFrameData) throws IOException {
+            if (!messageLock.tryLock()) {
+                if (outbound.fragmenting || outbound.isFull()) {
+                    outbound.dropped.incrementAndGet();
+                    return false;
                 }
+                messageLock.lock();
+            }
+            try {
+                return outbound.offerPublished(pFrameData);
+            } finally {
+                messageLock.unlock();
             }
         }
 
         /**
-         * Create a server->client websocket frame package with message payload data.
-         * No masking, always text.
+         * Create a server->client websocket text frame package with message payload data.
+         */
+        protected byte[] encodeWsoMessage(byte[] pMessageData) {
+            return encodeWsoFrame(Opcode.TEXT, pMessageData);
+        }
+
+        /**
+         * Create a server->client websocket frame package with payload data.
+         * No masking, always fin.
          * inspired by works like
          * https://stackoverflow.com/questions/43163592/standalone-websocket-server-without-jee-application-server
          */
-        protected byte[] encodeWsoMessage(byte[] pMessageData) {
+        protected static byte[] encodeWsoFrame(Opcode pOpcode, byte[] pMessageData) {
+            return encodeWsoFrame(pOpcode, pMessageData, false);
+        }
 
-            int payloadLen = pMessageData.length;
+        /**
+         * RSV1 marks a compressed message of the permessage-deflate extension.
+         */
+        protected static byte[] encodeWsoFrame(Opcode pOpcode, byte[] pMessageData, boolean pRsv1) {
+            return encodeWsoFrame(pOpcode, pMessageData, 0, pMessageData.length, true, pRsv1);
+        }
+
+        /**
+         * A frame of pLength bytes from pOffset - fin=false for all but the last fragment of a message.
+         */
+        protected static byte[] encodeWsoFrame(Opcode pOpcode, byte[] pMessageData, int pOffset, int pLength,
+                boolean pFin, boolean pRsv1) {
+
+            int payloadLen = pLength;
             int headerLen = 2; // minimum wso message 2 bytes
             byte[] headerBytes = new byte[10];
 
-            // byte-1: - fin=true, opcode=text
-            headerBytes[0] = (byte) (0b10000000 | (byte) Opcode.TEXT.getCode()); // => 10000001 = 0x81
+            // byte-1: - fin, rsv1, opcode
+            headerBytes[0] = (byte) ((pFin ? 0b10000000 : 0) | (pRsv1 ? 0b01000000 : 0) | (byte) pOpcode.getCode());
 
             // byte-2: payload len
             if (payloadLen <= 125) {
@@ -584,7 +2230,7 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
             byte[] framePacket = new byte[packetLength];
 
             System.arraycopy(headerBytes, 0, framePacket, 0, headerLen);
-            System.arraycopy(pMessageData, 0, framePacket, headerLen, payloadLen);
+            System.arraycopy(pMessageData, pOffset, framePacket, headerLen, payloadLen);
 
             return framePacket;
         }
@@ -609,6 +2255,10 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
                 return code;
             }
 
+            public boolean isControl() {
+                return (code & 0x8) != 0;
+            }
+
             public static Opcode fromCode(int code) {
                 for (Opcode op : values()) {
                     if (op.getCode() == code) {
@@ -623,41 +2273,163 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
          * <pre>
          * A basic implementation of wso frame data structure.
          * Decoding and keeping wso header and payload byte data.
+         * 
+         * A frame object is reused for all frames of a connection.
+         * The payload buffer only grows when a larger frame arrives.
          * </pre>
          */
         protected static class WsoFrame {
-            protected static final byte[] EmptyPacket = new byte[] { (byte) 0x81, 0x0 };
+            // 2 bytes + max 8 bytes extended length + 4 bytes mask
+            protected static final int MAX_HEADER_LENGTH = 14;
+            protected static final int MAX_CONTROL_PAYLOAD_LENGTH = 125;
+            // a long view on byte arrays - the byte order only has to match for data and key
+            private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class,
+                    ByteOrder.nativeOrder());
+
+            private final byte[] header = new byte[MAX_HEADER_LENGTH];
+            private final byte[] maskingKey = new byte[4];
+            protected byte[] payload = new byte[1024];
+
+            protected Opcode opcode;
+            private boolean isMasked;
+            protected int payloadLength;
+            private int headerLength;
+            // the number of payload bytes read so far
+            private int readLength;
+            // the buffer size needed for an incomplete frame
+            private int requiredLength;
 
-            private int readPacketLength;
-            private byte[] packet;
-            private byte[] maskingKey;
-            private ByteArrayOutputStream fragments = null;
+            /**
+             * <pre>
+             * Read exactly one frame from the stream.
+             * Returns false if the stream ended before a new frame started.
+             * An end of stream inside a frame throws an EOFException.
+             * </pre>
+             */
+            public boolean readFrom(InputStream pInStream, long pMaxPayloadSize) throws IOException {
+                opcode = null;
+                payloadLength = 0;
+                readLength = 0;
+
+                int lFirst = pInStream.read();
+                if (lFirst == -1) {
+                    return false;
+                }
+                header[0] = (byte) lFirst;
+                readFully(pInStream, header, 1, 1);
+                headerLength = 2;
 
-            private Opcode opcode;
-            private boolean isMasked;
-            private int payloadLength;
-            private int headerOffset;
+                decodeHeader(pInStream, pMaxPayloadSize);
 
-            public WsoFrame(byte[] pPacket) throws IOException {
-                this(pPacket.length, pPacket);
+                if (payload.length < payloadLength) {
+                    payload = new byte[payloadLength];
+                }
+                readFully(pInStream, payload, 0, payloadLength);
+                readLength = payloadLength;
+
+                if (isMasked) {
+                    unmask(payload, payloadLength, maskingKey);
+                }
+                return true;
             }
 
-            public WsoFrame(int pReadLen, byte[] pPacket) throws IOException {
-                // WS minimal frame = 2 bytes
-                if (pReadLen < 2) {
-                    throw new FatalWsoException(
-                            String.format("Invalid frame: insufficient packet length [%s]", pReadLen));
+            /**
+             * <pre>
+             * Decode exactly one frame from the buffer.
+             * Returns false and leaves the buffer position unchanged if the frame is not complete yet,
+             * getRequiredLength() then tells the buffer size needed for the frame.
+             * </pre>
+             */
+            public boolean readFrom(ByteBuffer pBuffer, long pMaxPayloadSize) throws IOException {
+                opcode = null;
+                payloadLength = 0;
+                readLength = 0;
+                requiredLength = 0;
+
+                int lStart = pBuffer.position();
+                if (pBuffer.remaining() < 2) {
+                    return false;
+                }
+                int lSecond = pBuffer.get(lStart + 1);
+                int lLength = lSecond & 0b01111111;
+                int lHeaderLength = 2 + (lLength == 126 ? 2 : 0) + (lLength == 127 ? 8 : 0)
+                        + ((lSecond & 0b10000000) != 0 ? 4 : 0);
+                if (pBuffer.remaining() < lHeaderLength) {
+                    return false;
+                }
+                pBuffer.get(header, 0, lHeaderLength);
+                headerLength = 2;
+                // the header bytes are already in place
+                decodeHeader(new ByteArrayInputStream(header, 2, lHeaderLength - 2), pMaxPayloadSize);
+
+                if (pBuffer.remaining() < payloadLength) {
+                    requiredLength = headerLength + payloadLength;
+                    pBuffer.position(lStart);
+                    return false;
+                }
+                if (payload.length < payloadLength) {
+                    payload = new byte[payloadLength];
+                }
+                pBuffer.get(payload, 0, payloadLength);
+                readLength = payloadLength;
+
+                if (isMasked) {
+                    unmask(payload, payloadLength, maskingKey);
+                }
+                return true;
+            }
+
+            /**
+             * The size of an incomplete frame or 0.
+             */
+            public int getRequiredLength() {
+                return requiredLength;
+            }
+
+            /**
+             */
+            protected static void readFully(InputStream pInStream, byte[] pBuffer, int pOffset, int pLength)
+                    throws IOException {
+                int lRead = 0;
+                while (lRead < pLength) {
+                    int lCount = pInStream.read(pBuffer, pOffset + lRead, pLength - lRead);
+                    if (lCount == -1) {
+                        throw new EOFException(
+                                String.format("WebSocket stream ended inside a frame [%s] of [%s]", lRead, pLength));
+                    }
+                    lRead += lCount;
+                }
+            }
+
+            /**
+             * <pre>
+             * Unmask in place 8 bytes at a time.
+             * The 4 byte key repeated twice is one long - so the key phase stays aligned
+             * and only the last less than 8 bytes are unmasked one by one.
+             * </pre>
+             */
+            protected static void unmask(byte[] pData, int pLength, byte[] pMaskingKey) {
+                int i = 0;
+                if (pLength >= 8) {
+                    byte[] lKeyBytes = new byte[8];
+                    for (int k = 0; k < 8; k++) {
+                        lKeyBytes[k] = pMaskingKey[k & 0x3];
+                    }
+                    long lKey = (long) LONG_VIEW.get(lKeyBytes, 0);
+                    for (int lEnd = pLength - 7; i < lEnd; i += 8) {
+                        LONG_VIEW.set(pData, i, (long) LONG_VIEW.get(pData, i) ^ lKey);
+                    }
+                }
+                for (; i < pLength; i++) {
+                    pData[i] = (byte) (pData[i] ^ pMaskingKey[i & 0x3]);
                 }
-                packet = new byte[pReadLen];
-                System.arraycopy(pPacket, 0, packet, 0, pReadLen);
-                readPacketLength = pReadLen;
             }
 
             /**
              */
             public boolean isFin() {
                 // byte0 - bit 0
-                return (packet[0] & 0b10000000) != 0;
+                return (header[0] & 0b10000000) != 0;
             }
 
             /**
@@ -668,75 +2440,96 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
 
             /**
              */
-            public void decodeHeader() throws IOException {
+            public boolean isControlFrame() {
+                return opcode.isControl();
+            }
+
+            /**
+             */
+            protected void decodeHeader(InputStream pInStream, long pMaxPayloadSize) throws IOException {
                 decodeRSV();
                 decodeOpcode();
                 decodeIsMasked();
-                decodePayloadLength();
-                decodeMask();
+                decodePayloadLength(pInStream, pMaxPayloadSize);
+                decodeMask(pInStream);
             }
 
             /**
              */
-            protected void decodeRSV() {
+            protected void decodeRSV() throws IOException {
                 // byte0 - bit 1-3
-                // RSV bits are ignored, could be checked: (byte0 & 0b01110000) != 0
+                // RSV1 is used by permessage-deflate, RSV2 and RSV3 are not defined
+                if ((header[0] & 0b00110000) != 0) {
+                    throw new FatalWsoException("Invalid frame: RSV2/RSV3 set without extension");
+                }
+            }
+
+            /**
+             */
+            public boolean isRsv1() {
+                return (header[0] & 0b01000000) != 0;
             }
 
             /**
              */
-            protected void decodeOpcode() {
+            protected void decodeOpcode() throws IOException {
                 // byte0 - bit 4-7
-                int value = packet[0] & 0b00001111;
-                opcode = Opcode.fromCode(value);
+                int value = header[0] & 0b00001111;
+                try {
+                    opcode = Opcode.fromCode(value);
+                } catch (IllegalArgumentException e) {
+                    // the payload length of an unknown frame can't be trusted
+                    throw new FatalWsoException(String.format("Invalid frame: unknown opcode [%s]", value), e);
+                }
             }
 
             /**
              */
             protected void decodeIsMasked() {
                 // byte1 - bit 0
-                isMasked = (packet[1] & 0b10000000) != 0;
+                isMasked = (header[1] & 0b10000000) != 0;
             }
 
             /**
              */
-            protected void decodePayloadLength() throws IOException {
+            protected void decodePayloadLength(InputStream pInStream, long pMaxPayloadSize) throws IOException {
                 // byte1 - bit 1-7
-                payloadLength = packet[1] & 0b01111111;
-
-                // Start reading after the first two bytes
-                headerOffset = 2;
+                long lLength = header[1] & 0b01111111;
 
                 // Extended Payload Length (if any)
-                if (payloadLength == 126) {
-                    if (readPacketLength < 4) {
-                        throw new FatalWsoException(
-                                "Invalid frame: insufficient bytes for 16-bit payload length.");
-                    }
-                    payloadLength = ((packet[headerOffset] & 0xFF) << 8) | (packet[headerOffset + 1] & 0xFF);
-                    headerOffset += 2;
-                } else if (payloadLength == 127) {
-                    if (readPacketLength < 10) {
-                        throw new FatalWsoException(
-                                "Invalid frame: insufficient bytes for 64-bit payload length.");
-                    }
-                    payloadLength = 0;
-                    for (int i = 0; i < 8; i++) {
-                        payloadLength = (payloadLength << 8) | (packet[headerOffset + i] & 0xFF);
+                int lExtended = 0;
+                if (lLength == 126) {
+                    lExtended = 2;
+                } else if (lLength == 127) {
+                    lExtended = 8;
+                }
+                if (lExtended > 0) {
+                    readFully(pInStream, header, headerLength, lExtended);
+                    lLength = 0;
+                    for (int i = 0; i < lExtended; i++) {
+                        lLength = (lLength << 8) | (header[headerLength + i] & 0xFF);
                     }
-                    headerOffset += 8;
+                    headerLength += lExtended;
+                }
+
+                if (opcode.isControl() && (lLength > MAX_CONTROL_PAYLOAD_LENGTH || !isFin())) {
+                    throw new FatalWsoException(
+                            String.format("Invalid control frame: len [%s] fin [%s]", lLength, isFin()));
+                }
+                if (lLength < 0 || lLength > pMaxPayloadSize || lLength > Integer.MAX_VALUE - 8) {
+                    throw new FatalWsoException(
+                            String.format("Max message size exceeded: [%s] > [%s]", lLength, pMaxPayloadSize));
                 }
+                payloadLength = (int) lLength;
             }
 
             /**
              */
-            protected void decodeMask() throws IOException {
+            protected void decodeMask(InputStream pInStream) throws IOException {
                 if (isMasked) {
-                    if (packet.length < headerOffset + 4) {
-                        throw new FatalWsoException("Invalid frame insufficient bytes for masking key.");
-                    }
-                    maskingKey = Arrays.copyOfRange(packet, headerOffset, headerOffset + 4);
-                    headerOffset += 4;
+                    readFully(pInStream, header, headerLength, 4);
+                    System.arraycopy(header, headerLength, maskingKey, 0, 4);
+                    headerLength += 4;
                 }
             }
 
@@ -745,120 +2538,27 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
                 StringBuilder lBuilder = new StringBuilder(String.format("Wso Frame [%s]%s", this.hashCode(), ls));
                 lBuilder.append("Fin: ").append(this.isFin()).append(ls);
                 lBuilder.append("Opcode: ").append(this.opcode).append(ls);
-                lBuilder.append(String.format("Packet read len[%s], Head len[%s], Data len[%s]", readPacketLength,
-                        headerOffset, readPacketLength - headerOffset)).append(ls);
+                lBuilder.append(String.format("Head len[%s], Data len[%s]", headerLength, readLength)).append(ls);
                 lBuilder.append("Payload length: ").append(payloadLength).append(ls);
-                if (hasFragments()) {
-                    lBuilder.append("Fragments size: ").append(fragments.size()).append(ls);
-                }
 
                 return lBuilder.toString();
             }
 
             /**
+             * A copy of the unmasked payload of the current frame.
              */
-            public boolean hasFragments() {
-                return (fragments != null && fragments.size() > 0);
-            }
-
-            /**
-             */
-            public void addFragment(WsoFrame pFrame) throws IOException {
-                if (fragments == null) {
-                    fragments = new ByteArrayOutputStream();
-                }
-                fragments.write(pFrame.getPayloadData());
-            }
-
-            /**
-             */
-            public void completePayload(InputStream pInStream, long pMaxPayloadSize) throws IOException {
-
-                int totalPacketLength = headerOffset + payloadLength;
-                int remainingBytes = totalPacketLength - readPacketLength;
-                int readLen = 0;
-                int attempts = 0;
-                byte[] buffer;
-
-                if (totalPacketLength > pMaxPayloadSize) {
-                    throw new FatalWsoException(
-                            String.format("Max message size exceeded: [%s] > [%s]", totalPacketLength,
-                                    pMaxPayloadSize));
-                }
-                if (remainingBytes > 0) {
-                    buffer = new byte[totalPacketLength];
-                    System.arraycopy(packet, 0, buffer, 0, readPacketLength);
-
-                    while (readLen != -1 && readLen < remainingBytes) {
-                        attempts++;
-                        readLen += pInStream.read(buffer, readPacketLength + readLen, remainingBytes - readLen);
-                    }
-
-                    if (readLen == remainingBytes && buffer.length == totalPacketLength) {
-                        readPacketLength = totalPacketLength;
-                        packet = buffer;
-                    } else {
-                        throw new FatalWsoException(String.format(
-                                "Content differnce: readLen[%s], remainingBytes[%s], buffer.length[%s], totalPacketLength[%s], attempts[%s]%s",
-                                readLen, remainingBytes, buffer.length, totalPacketLength, attempts,
-                                System.lineSeparator() + this.getDescription()));
-                    }
-                }
-            }
-
-            /**
-             */
-            public byte[] getPayloadData() throws IOException {
-                if (packet.length < headerOffset + payloadLength) {
-                    throw new FatalWsoException(
-                            String.format("Invalid wso packet: len[%s] < headerOffset[%s] + payloadLength[%s]",
-                                    packet.length, headerOffset, payloadLength));
-                }
-
-                byte[] payloadData = new byte[payloadLength];
-                System.arraycopy(packet, headerOffset, payloadData, 0, payloadLength);
-
-                // Unmask payload
-                if (isMasked) {
-                    for (int i = 0; i < payloadData.length; i++) {
-                        payloadData[i] = (byte) (payloadData[i] ^ maskingKey[i % 4]);
-                    }
-                }
-
-                if (hasFragments()) {
-                    byte[] fragmentBytes = fragments.toByteArray();
-                    byte[] buffer = new byte[payloadData.length + fragmentBytes.length];
-                    System.arraycopy(payloadData, 0, buffer, 0, payloadData.length);
-                    System.arraycopy(fragmentBytes, 0, buffer, payloadData.length, fragmentBytes.length);
-                    payloadData = buffer;
-                }
-
-                return payloadData;
+            public byte[] getPayloadData() {
+                return Arrays.copyOf(payload, payloadLength);
             }
 
             /**
              * <pre>
-             * Try to get the first chunk of already read package bytes
+             * Get the already read and unmasked payload bytes
              * to get some more informations for error handling.
              * </pre>
              */
             public byte[] getAvailablePacketDataOnError() {
-
-                byte[] payloadData = new byte[packet.length];
-                try {
-                    System.arraycopy(packet, headerOffset, payloadData, 0, packet.length - headerOffset);
-
-                    // Unmask payload
-                    if (isMasked) {
-                        for (int i = 0; i < payloadData.length; i++) {
-                            payloadData[i] = (byte) (payloadData[i] ^ maskingKey[i % 4]);
-                        }
-                    }
-                } catch (Exception e) {
-                    // nothing to do
-                }
-
-                return payloadData;
+                return Arrays.copyOf(payload, readLength);
             }
 
         }
@@ -877,12 +2577,77 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
          */
         public byte[] onMessage(String pConnectionId, byte[] pMessage);
 
+        /**
+         * Called for binary messages, a response is sent back as binary message.
+         */
+        public default byte[] onBinaryMessage(String pConnectionId, byte[] pMessage) {
+            return onMessage(pConnectionId, pMessage);
+        }
+
         /**
          */
         public default byte[] onError(String pConnectionId, byte[] pMessage, Exception pExp, AtomicBoolean pClose) {
             return new byte[0];
         }
 
+        /**
+         * <pre>
+         * Called once when a connection closed.
+         * Queued messages of the connection are discarded and running ones interrupted,
+         * so a processor only has to cancel work it started on its own.
+         * </pre>
+         */
+        public default void onClose(String pConnectionId) {
+        }
+
+    }
+
+    /**
+     * <pre>
+     * A processor receiving messages in chunks instead of complete byte arrays,
+     * e.g. to write a large upload directly to a file.
+     * The chunks of a message are delivered in order - one chunk per received frame.
+     * A message ending with a closed connection gets no onMessageEnd but an onClose.
+     * </pre>
+     */
+    public static interface WsoStreamingProcessor extends WsoMessageProcessor {
+
+        /**
+         */
+        public void onMessageStart(String pConnectionId, boolean pBinary);
+
+        /**
+         */
+        public void onChunk(String pConnectionId, byte[] pChunk);
+
+        /**
+         * A response is sent back the same way - text or binary.
+         */
+        public byte[] onMessageEnd(String pConnectionId);
+
+        /**
+         * A complete text message is delivered as one chunk.
+         */
+        @Override
+        public default byte[] onMessage(String pConnectionId, byte[] pMessage) {
+            return onCompleteMessage(pConnectionId, pMessage, false);
+        }
+
+        /**
+         * A complete binary message is delivered as one chunk.
+         */
+        @Override
+        public default byte[] onBinaryMessage(String pConnectionId, byte[] pMessage) {
+            return onCompleteMessage(pConnectionId, pMessage, true);
+        }
+
+        /**
+         */
+        public default byte[] onCompleteMessage(String pConnectionId, byte[] pMessage, boolean pBinary) {
+            onMessageStart(pConnectionId, pBinary);
+            onChunk(pConnectionId, pMessage);
+            return onMessageEnd(pConnectionId);
+        }
     }
 
     /**
@@ -890,6 +2655,12 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
      * </pre>
      */
     public static interface WsoConnection {
+        // close status codes
+        public static final int CLOSE_NORMAL = 1000;
+        public static final int CLOSE_GOING_AWAY = 1001;
+        public static final int CLOSE_PROTOCOL_ERROR = 1002;
+        public static final int CLOSE_TOO_BIG = 1009;
+        public static final int CLOSE_INTERNAL_ERROR = 1011;
 
         /**
          */
@@ -905,6 +2676,52 @@ public class JamnWebSocketProvider implements JamnServer.ContentProvider {
          */
         public void sendMessage(byte[] pMessage);
 
+        /**
+         */
+        public default void sendText(String pText) {
+            sendMessage(pText.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * A connection without binary support sends the data as plain message.
+         */
+        public default void sendBinary(byte[] pData) {
+            sendMessage(pData);
+        }
+
+        /**
+         * <pre>
+         * Send a large message from a stream in fragments.
+         * A connection without fragment support sends the data as one message.
+         * </pre>
+         */
+        public default void sendFragmented(InputStream pData, boolean pBinary, int pFragmentSize) throws IOException {
+            byte[] lData = pData.readAllBytes();
+            if (pBinary) {
+                sendBinary(lData);
+            } else {
+                sendMessage(lData);
+            }
+        }
+
+        /**
+         * <pre>
+         * The client answers with a pong.
+         * A connection without control frame support ignores the call.
+         * </pre>
+         */
+        public default void ping(byte[] pData) {
+        }
+
+        /**
+         * <pre>
+         * Send a close frame with status code and reason.
+         * A connection without control frame support ignores the call.
+         * </pre>
+         */
+        public default void close(int pCode, String pReason) {
+        }
+
     }
 
     /**
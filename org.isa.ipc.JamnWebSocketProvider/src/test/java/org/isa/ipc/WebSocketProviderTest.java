@@ -1,19 +1,44 @@
 /* Authored by iqbserve.de */
 package org.isa.ipc;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+import org.isa.ipc.JamnWebSocketProvider.DispatchMode;
+import org.isa.ipc.JamnWebSocketProvider.OverflowPolicy;
+import org.isa.ipc.JamnWebSocketProvider.WsoOutboundQueue;
+import org.isa.ipc.JamnWebSocketProvider.WsoConnection;
+import org.isa.ipc.JamnWebSocketProvider.WsoMessageProcessor;
+import org.isa.ipc.JamnWebSocketProvider.WsoStreamingProcessor;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -113,6 +138,492 @@ class WebSocketProviderTest {
         assertEquals("ECHO: Hello WebSocket", Data, "Socket call FAILED");
     }
 
+    @Test
+    @Order(3)
+    void testCoalescedAndSplitFrames() throws Exception {
+        try (Socket lSocket = openRawWebSocket()) {
+            ByteArrayOutputStream lFrames = new ByteArrayOutputStream();
+            // two messages, a ping between two fragments and the end of the fragmented message
+            lFrames.write(maskedFrame(0x81, "one"));
+            lFrames.write(maskedFrame(0x81, "two"));
+            lFrames.write(maskedFrame(0x01, "thr"));
+            lFrames.write(maskedFrame(0x89, "ping"));
+            byte[] lLast = maskedFrame(0x80, "ee");
+
+            OutputStream lOut = lSocket.getOutputStream();
+            // all frames in one write
+            lOut.write(lFrames.toByteArray());
+            lOut.flush();
+            // the last frame split in two writes
+            lOut.write(lLast, 0, 3);
+            lOut.flush();
+            Thread.sleep(50);
+            lOut.write(lLast, 3, lLast.length - 3);
+            lOut.flush();
+
+            InputStream lIn = lSocket.getInputStream();
+            assertEquals("ECHO: one", readFrame(lIn, 0x81), "First message");
+            assertEquals("ECHO: two", readFrame(lIn, 0x81), "Second message");
+            assertEquals("ping", readFrame(lIn, 0x8A), "Pong");
+            assertEquals("ECHO: three", readFrame(lIn, 0x81), "Fragmented message");
+
+            lOut.write(maskedFrame(0x88, ""));
+            lOut.flush();
+            assertEquals("", readFrame(lIn, 0x88), "Close");
+        }
+    }
+
+    @Test
+    @Order(4)
+    void testBinaryMessage() throws Exception {
+        try (Socket lSocket = openRawWebSocket()) {
+            OutputStream lOut = lSocket.getOutputStream();
+            lOut.write(maskedFrame(0x82, "data"));
+            lOut.flush();
+
+            // the binary response of the default callback
+            InputStream lIn = lSocket.getInputStream();
+            assertEquals("ECHO: data", readFrame(lIn, 0x82), "Binary message");
+        }
+    }
+
+    @Test
+    @Order(5)
+    void testHeartbeatReapsUnresponsiveConnection() throws Exception {
+        JamnServer lServer = new JamnServer(8094);
+        // ping idle connections and close them when unresponsive
+        JamnWebSocketProvider lProvider = new JamnWebSocketProvider().setHeartbeat(500, 1000);
+        lProvider.addMessageProcessor((String pConnectionId, byte[] pMessage) -> ("ECHO: " + new String(pMessage))
+                .getBytes());
+        lServer.addContentProvider("WebSocketProvider", lProvider);
+        lServer.start();
+
+        try (Socket lSocket = openRawWebSocket(8094, "", new StringBuilder())) {
+            lSocket.setSoTimeout(3000);
+            InputStream lIn = lSocket.getInputStream();
+
+            // the idle connection gets pinged
+            assertEquals("", readFrame(lIn, 0x89), "Ping");
+            // and is closed by the server without a pong
+            assertEquals(-1, lIn.read(), "Connection closed");
+        } finally {
+            lServer.stop();
+        }
+    }
+
+    @Test
+    @Order(6)
+    void testConcurrentSenders() throws Exception {
+        JamnServer lServer = new JamnServer(8093);
+        JamnWebSocketProvider lProvider = new JamnWebSocketProvider();
+        lProvider.addMessageProcessor((String pConnectionId, byte[] pMessage) -> {
+            // concurrent server side senders
+            for (int t = 0; t < 4; t++) {
+                final int lThread = t;
+                new Thread(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        lProvider.getConnection(pConnectionId).sendText("burst-" + lThread + "-" + i);
+                    }
+                }).start();
+            }
+            return new byte[0];
+        });
+        lServer.addContentProvider("WebSocketProvider", lProvider);
+        lServer.start();
+
+        try (Socket lSocket = openRawWebSocket(8093, "", new StringBuilder())) {
+            lSocket.getOutputStream().write(maskedFrame(0x81, "burst"));
+            lSocket.getOutputStream().flush();
+
+            // all frames arrive intact and in order per sender
+            InputStream lIn = lSocket.getInputStream();
+            int[] lNext = new int[4];
+            for (int i = 0; i < 200; i++) {
+                String[] lParts = readFrame(lIn, 0x81).split("-");
+                assertEquals("burst", lParts[0], "Frame content");
+                int lThread = Integer.parseInt(lParts[1]);
+                assertEquals(lNext[lThread]++, Integer.parseInt(lParts[2]), "Frame order");
+            }
+        } finally {
+            lServer.stop();
+        }
+    }
+
+    @Test
+    @Order(7)
+    void testPublishToTopic() throws Exception {
+        CountDownLatch lClosed = new CountDownLatch(1);
+
+        JamnServer lServer = new JamnServer(8095);
+        JamnWebSocketProvider lProvider = new JamnWebSocketProvider();
+        lProvider.addMessageProcessor(new WsoMessageProcessor() {
+            @Override
+            public byte[] onMessage(String pConnectionId, byte[] pMessage) {
+                lProvider.subscribe(pConnectionId, new String(pMessage));
+                return "subscribed".getBytes();
+            }
+
+            @Override
+            public void onClose(String pConnectionId) {
+                // a late subscribe of the closed connection is ignored
+                lProvider.subscribe(pConnectionId, "news");
+                lClosed.countDown();
+            }
+        });
+        lServer.addContentProvider("WebSocketProvider", lProvider);
+        lServer.start();
+
+        try (Socket lFirst = openRawWebSocket(8095, "", new StringBuilder());
+                Socket lSecond = openRawWebSocket(8095, "", new StringBuilder())) {
+            for (Socket lSocket : new Socket[] { lFirst, lSecond }) {
+                lSocket.getOutputStream().write(maskedFrame(0x81, "news"));
+                lSocket.getOutputStream().flush();
+                assertEquals("subscribed", readFrame(lSocket.getInputStream(), 0x81), "Subscription");
+            }
+
+            assertEquals(2, lProvider.publish("news", "headline".getBytes()), "Subscribers");
+            assertEquals("headline", readFrame(lFirst.getInputStream(), 0x81), "First subscriber");
+            assertEquals("headline", readFrame(lSecond.getInputStream(), 0x81), "Second subscriber");
+
+            // closed connections are removed from the topic before the processor is closed
+            lFirst.getOutputStream().write(maskedFrame(0x88, ""));
+            lFirst.getOutputStream().flush();
+            assertEquals("", readFrame(lFirst.getInputStream(), 0x88), "Close");
+            assertTrue(lClosed.await(2, TimeUnit.SECONDS), "Processor closed");
+            assertEquals(1, lProvider.getSubscribers("news").size(), "Remaining subscribers");
+        } finally {
+            lServer.stop();
+        }
+    }
+
+    @Test
+    @Order(8)
+    void testPerMessageDeflate() throws Exception {
+        JamnServer lServer = new JamnServer(8092);
+        // compress messages for clients offering permessage-deflate
+        JamnWebSocketProvider lProvider = new JamnWebSocketProvider()
+                .setPerMessageDeflate(true, Deflater.DEFAULT_COMPRESSION, false);
+        lProvider.addMessageProcessor((String pConnectionId, byte[] pMessage) -> ("ECHO: " + new String(pMessage))
+                .getBytes());
+        lServer.addContentProvider("WebSocketProvider", lProvider);
+        lServer.start();
+
+        StringBuilder lHeader = new StringBuilder();
+        try (Socket lSocket = openRawWebSocket(8092,
+                "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n", lHeader)) {
+            assertTrue(lHeader.toString().contains("Sec-WebSocket-Extensions: permessage-deflate"),
+                    "Extension negotiation");
+
+            String lText = "compress me ".repeat(30);
+            // the client side compression context
+            Deflater lDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            Inflater lInflater = new Inflater(true);
+            OutputStream lOut = lSocket.getOutputStream();
+            InputStream lIn = lSocket.getInputStream();
+
+            // two messages to use the context of the first for the second
+            for (int i = 0; i < 2; i++) {
+                lDeflater.setInput(lText.getBytes(StandardCharsets.UTF_8));
+                byte[] lBuffer = new byte[1024];
+                int lLength = lDeflater.deflate(lBuffer, 0, lBuffer.length, Deflater.SYNC_FLUSH);
+                lOut.write(maskedFrame(0xC1, Arrays.copyOf(lBuffer, lLength - 4)));
+                lOut.flush();
+
+                // the compressed response with the removed sync flush tail
+                ByteArrayOutputStream lCompressed = new ByteArrayOutputStream();
+                lCompressed.write(readFrameData(lIn, 0xC1));
+                lCompressed.write(new byte[] { 0, 0, (byte) 0xff, (byte) 0xff });
+                lInflater.setInput(lCompressed.toByteArray());
+                ByteArrayOutputStream lMessage = new ByteArrayOutputStream();
+                while ((lLength = lInflater.inflate(lBuffer)) > 0) {
+                    lMessage.write(lBuffer, 0, lLength);
+                }
+                assertEquals("ECHO: " + lText, lMessage.toString(StandardCharsets.UTF_8), "Compressed message " + i);
+            }
+            // small messages are not compressed
+            lOut.write(maskedFrame(0x81, "small"));
+            lOut.flush();
+            assertEquals("ECHO: small", readFrame(lIn, 0x81), "Uncompressed message");
+            lDeflater.end();
+            lInflater.end();
+
+            // an accepted server_max_window_bits offer is answered
+            StringBuilder lWindowHeader = new StringBuilder();
+            try (Socket lWindowSocket = openRawWebSocket(8092,
+                    "Sec-WebSocket-Extensions: permessage-deflate; server_max_window_bits=15\r\n", lWindowHeader)) {
+                assertTrue(lWindowHeader.toString().contains("server_max_window_bits=15"), "Window bits response");
+            }
+        } finally {
+            lServer.stop();
+        }
+    }
+
+    @Test
+    @Order(9)
+    void testSelectorMode() throws Exception {
+        // a server with channel based sockets and 2 workers
+        Properties lProps = new Properties();
+        lProps.setProperty("port", "8098");
+        lProps.setProperty("worker", "2");
+        lProps.setProperty(JamnServer.Config.SOCKET_CHANNEL_ENABLED, "true");
+        JamnServer lServer = new JamnServer(lProps);
+
+        JamnWebSocketProvider lProvider = new JamnWebSocketProvider().setSelectorMode(1);
+        lProvider.addMessageProcessor((String pConnectionId, byte[] pMessage) -> ("ECHO: " + new String(pMessage))
+                .getBytes());
+        lServer.addContentProvider("WebSocketProvider", lProvider);
+        lServer.start();
+
+        List<Socket> lSockets = new ArrayList<>();
+        try {
+            // more connections than server workers
+            for (int i = 0; i < 10; i++) {
+                lSockets.add(openRawWebSocket(8098, "", new StringBuilder()));
+            }
+            for (int i = 0; i < lSockets.size(); i++) {
+                lSockets.get(i).getOutputStream().write(maskedFrame(0x81, "msg-" + i));
+                lSockets.get(i).getOutputStream().flush();
+            }
+            for (int i = 0; i < lSockets.size(); i++) {
+                assertEquals("ECHO: msg-" + i, readFrame(lSockets.get(i).getInputStream(), 0x81),
+                        "Selector mode message " + i);
+            }
+
+            // a message larger than the read buffer split in two writes
+            String lText = "x".repeat(20000);
+            byte[] lFrame = maskedFrame(0x81, lText);
+            OutputStream lOut = lSockets.get(0).getOutputStream();
+            lOut.write(lFrame, 0, 5000);
+            lOut.flush();
+            Thread.sleep(50);
+            lOut.write(lFrame, 5000, lFrame.length - 5000);
+            lOut.flush();
+            assertEquals("ECHO: " + lText, readFrame(lSockets.get(0).getInputStream(), 0x81), "Large message");
+
+            lOut.write(maskedFrame(0x88, ""));
+            lOut.flush();
+            assertEquals("", readFrame(lSockets.get(0).getInputStream(), 0x88), "Close");
+        } finally {
+            for (Socket lSocket : lSockets) {
+                lSocket.close();
+            }
+            lServer.stop();
+        }
+    }
+
+    @Test
+    @Order(10)
+    void testOrderedDispatch() throws Exception {
+        CountDownLatch lInterrupted = new CountDownLatch(1);
+        CountDownLatch lClosed = new CountDownLatch(1);
+
+        JamnServer lServer = new JamnServer(8097);
+        JamnWebSocketProvider lProvider = new JamnWebSocketProvider().setDispatch(DispatchMode.ORDERED, 4);
+        lProvider.addMessageProcessor(new WsoMessageProcessor() {
+            @Override
+            public byte[] onMessage(String pConnectionId, byte[] pMessage) {
+                String lMsg = new String(pMessage);
+                try {
+                    if (lMsg.equals("slow")) {
+                        Thread.sleep(300);
+                    } else if (lMsg.equals("block")) {
+                        Thread.sleep(10000);
+                    }
+                } catch (InterruptedException e) {
+                    lInterrupted.countDown();
+                    Thread.currentThread().interrupt();
+                }
+                return ("ECHO: " + lMsg).getBytes();
+            }
+
+            @Override
+            public void onClose(String pConnectionId) {
+                lClosed.countDown();
+            }
+        });
+        lServer.addContentProvider("WebSocketProvider", lProvider);
+        lServer.start();
+
+        try (Socket lSocket = openRawWebSocket(8097, "", new StringBuilder())) {
+            OutputStream lOut = lSocket.getOutputStream();
+            InputStream lIn = lSocket.getInputStream();
+            lOut.write(maskedFrame(0x81, "slow"));
+            lOut.write(maskedFrame(0x89, "ping"));
+            lOut.write(maskedFrame(0x81, "fast"));
+            lOut.flush();
+
+            // the reader is not blocked by the processing
+            assertEquals("ping", readFrame(lIn, 0x8A), "Pong first");
+            // the messages keep their order
+            assertEquals("ECHO: slow", readFrame(lIn, 0x81), "First message");
+            assertEquals("ECHO: fast", readFrame(lIn, 0x81), "Second message");
+
+            // closing the connection cancels the running message
+            lOut.write(maskedFrame(0x81, "block"));
+            lOut.write(maskedFrame(0x88, ""));
+            lOut.flush();
+            assertEquals("", readFrame(lIn, 0x88), "Close");
+            assertTrue(lInterrupted.await(2, TimeUnit.SECONDS), "Processing cancelled");
+            assertTrue(lClosed.await(2, TimeUnit.SECONDS), "Processor closed");
+        } finally {
+            lServer.stop();
+        }
+    }
+
+    @Test
+    @Order(11)
+    void testStreamingProcessorAndFragmentedSend() throws Exception {
+        JamnServer lServer = new JamnServer(8096);
+        JamnWebSocketProvider lProvider = new JamnWebSocketProvider().setDispatch(DispatchMode.ORDERED, 2);
+        WsoStreamingProcessor lProcessor = new WsoStreamingProcessor() {
+            private final StringBuilder content = new StringBuilder();
+            private int chunks = 0;
+
+            @Override
+            public void onMessageStart(String pConnectionId, boolean pBinary) {
+                content.setLength(0);
+                chunks = 0;
+            }
+
+            @Override
+            public void onChunk(String pConnectionId, byte[] pChunk) {
+                content.append(new String(pChunk));
+                chunks++;
+            }
+
+            @Override
+            public byte[] onMessageEnd(String pConnectionId) {
+                if (content.toString().equals("download")) {
+                    try {
+                        lProvider.getConnection(pConnectionId)
+                                .sendFragmented(new ByteArrayInputStream("x".repeat(250).getBytes()), false, 100);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return new byte[0];
+                }
+                return ("chunks:" + chunks + " " + content).getBytes();
+            }
+        };
+        lProvider.addMessageProcessor(lProcessor);
+        lServer.addContentProvider("WebSocketProvider", lProvider);
+        lServer.start();
+
+        try (Socket lSocket = openRawWebSocket(8096, "", new StringBuilder())) {
+            OutputStream lOut = lSocket.getOutputStream();
+            InputStream lIn = lSocket.getInputStream();
+
+            // every frame is one chunk
+            lOut.write(maskedFrame(0x01, "aaaa"));
+            lOut.write(maskedFrame(0x00, "bbbb"));
+            lOut.write(maskedFrame(0x89, "ping"));
+            lOut.write(maskedFrame(0x80, "cc"));
+            lOut.flush();
+            assertEquals("ping", readFrame(lIn, 0x8A), "Pong");
+            assertEquals("chunks:3 aaaabbbbcc", readFrame(lIn, 0x81), "Streamed message");
+
+            // the response message in fragments of 100 bytes
+            lOut.write(maskedFrame(0x81, "download"));
+            lOut.flush();
+            assertEquals("x".repeat(100), readFrame(lIn, 0x01), "First fragment");
+            assertEquals("x".repeat(100), readFrame(lIn, 0x00), "Second fragment");
+            assertEquals("x".repeat(50), readFrame(lIn, 0x80), "Last fragment");
+        } finally {
+            lServer.stop();
+        }
+        // a complete message is delivered as one chunk
+        assertEquals("chunks:1 whole", new String(lProcessor.onMessage("test", "whole".getBytes())), "Complete message");
+    }
+
+    @Test
+    @Order(12)
+    void testUnmask() {
+        byte[] lKey = { (byte) 0x8f, 0x12, 0x7a, (byte) 0xe3 };
+        Random lRandom = new Random(42);
+        // lengths around the 8 byte steps
+        for (int lLength : new int[] { 0, 1, 3, 7, 8, 9, 15, 16, 17, 125, 4099 }) {
+            byte[] lData = new byte[lLength];
+            lRandom.nextBytes(lData);
+            byte[] lExpected = new byte[lLength];
+            for (int i = 0; i < lLength; i++) {
+                lExpected[i] = (byte) (lData[i] ^ lKey[i % 4]);
+            }
+            // unmasking only the first bytes of a larger buffer
+            byte[] lBuffer = Arrays.copyOf(lData, lLength + 5);
+            JamnWebSocketProvider.WebSocketHandler.WsoFrame.unmask(lBuffer, lLength, lKey);
+            assertArrayEquals(lExpected, Arrays.copyOf(lBuffer, lLength), "Unmasked data " + lLength);
+            assertArrayEquals(new byte[5], Arrays.copyOfRange(lBuffer, lLength, lLength + 5), "Untouched tail");
+        }
+    }
+
+    @Test
+    @Order(13)
+    void testDropOldestPolicy() throws Exception {
+        byte[] lPong = { (byte) 0x8A, 0 };
+        byte[] lText = { (byte) 0x81, 0 };
+        byte[] lCompressed = { (byte) 0xC1, 0 };
+        AtomicBoolean lFailed = new AtomicBoolean(false);
+        // a writer that never runs keeps the frames queued
+        WsoOutboundQueue lQueue = new WsoOutboundQueue(new ByteArrayOutputStream(), 2, OverflowPolicy.DROP_OLDEST,
+                (Runnable pTask) -> {
+                }, () -> lFailed.set(true));
+
+        // control frames are kept - the oldest data frame is dropped
+        lQueue.offer(lPong, true);
+        lQueue.offer(lText, true);
+        lQueue.offer(lCompressed, true);
+        assertArrayEquals(new byte[][] { lPong, lCompressed }, lQueue.queue.toArray(), "Dropped frame");
+
+        // compressed frames of a context takeover connection are never dropped
+        lQueue.setKeepCompressed(true);
+        assertThrows(IOException.class, () -> lQueue.offer(lText, true), "Overflow expected");
+        assertTrue(lFailed.get(), "Connection NOT closed");
+    }
+
+    @Test
+    @Order(14)
+    void testConnectionDefaults() throws Exception {
+        List<String> lSent = new ArrayList<>();
+        // an implementation of the basic connection methods only
+        WsoConnection lConnection = new WsoConnection() {
+            @Override
+            public String geConnectiontId() {
+                return "test";
+            }
+
+            @Override
+            public String getPath() {
+                return JamnWebSocketProvider.DefaultPath;
+            }
+
+            @Override
+            public void sendMessage(byte[] pMessage) {
+                lSent.add(new String(pMessage, StandardCharsets.UTF_8));
+            }
+        };
+
+        lConnection.sendText("text");
+        lConnection.sendFragmented(new ByteArrayInputStream("x".repeat(250).getBytes()), false, 100);
+        lConnection.ping(new byte[0]);
+        assertEquals(List.of("text", "x".repeat(250)), lSent, "Default sending");
+    }
+
+    @Test
+    @Order(15)
+    void testPublishDoesNotWait() throws Exception {
+        byte[] lText = { (byte) 0x81, 0 };
+        // a writer that never runs keeps the frames queued
+        WsoOutboundQueue lQueue = new WsoOutboundQueue(new ByteArrayOutputStream(), 1, OverflowPolicy.BLOCK,
+                (Runnable pTask) -> {
+                }, () -> {
+                });
+
+        assertTrue(lQueue.offerPublished(lText), "Published frame");
+        // a full BLOCK queue skips the published frame instead of waiting
+        assertFalse(lQueue.offerPublished(lText), "Skipped frame");
+        assertEquals(1, lQueue.dropped.get(), "Dropped count");
+    }
+
     @AfterAll
     static void shutDownSocketAndServer() {
         WSClient.abort();
@@ -121,6 +632,76 @@ class WebSocketProviderTest {
 
     /***************************************************************************
      ***************************************************************************/
+    private static Socket openRawWebSocket() throws IOException {
+        return openRawWebSocket(Server.getConfig().getPort(), "", new StringBuilder());
+    }
+
+    private static Socket openRawWebSocket(int pPort, String pExtraHeader, StringBuilder pResponseHeader)
+            throws IOException {
+        Socket lSocket = new Socket("localhost", pPort);
+        lSocket.setSoTimeout(2000);
+        String lRequest = "GET " + JamnWebSocketProvider.DefaultPath + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                + "Sec-WebSocket-Version: 13\r\n"
+                + pExtraHeader + "\r\n";
+        lSocket.getOutputStream().write(lRequest.getBytes(StandardCharsets.US_ASCII));
+        lSocket.getOutputStream().flush();
+
+        // skip the handshake response header
+        InputStream lIn = lSocket.getInputStream();
+        int lMatched = 0;
+        byte[] lEnd = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        while (lMatched < lEnd.length) {
+            int lByte = lIn.read();
+            assertTrue(lByte != -1, "Handshake FAILED");
+            pResponseHeader.append((char) lByte);
+            lMatched = (lByte == lEnd[lMatched]) ? lMatched + 1 : (lByte == lEnd[0] ? 1 : 0);
+        }
+        return lSocket;
+    }
+
+    private static byte[] maskedFrame(int pHead, String pText) {
+        return maskedFrame(pHead, pText.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] maskedFrame(int pHead, byte[] pData) {
+        byte[] lData = pData;
+        byte[] lMask = { 1, 2, 3, 4 };
+        // 16 bit extended length for larger payloads
+        int lOffset = lData.length < 126 ? 2 : 4;
+        byte[] lFrame = new byte[lOffset + 4 + lData.length];
+        lFrame[0] = (byte) pHead;
+        if (lOffset == 2) {
+            lFrame[1] = (byte) (0x80 | lData.length);
+        } else {
+            lFrame[1] = (byte) (0x80 | 126);
+            lFrame[2] = (byte) (lData.length >> 8);
+            lFrame[3] = (byte) lData.length;
+        }
+        System.arraycopy(lMask, 0, lFrame, lOffset, 4);
+        for (int i = 0; i < lData.length; i++) {
+            lFrame[lOffset + 4 + i] = (byte) (lData[i] ^ lMask[i % 4]);
+        }
+        return lFrame;
+    }
+
+    private static String readFrame(InputStream pIn, int pExpectedHead) throws IOException {
+        return new String(readFrameData(pIn, pExpectedHead), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readFrameData(InputStream pIn, int pExpectedHead) throws IOException {
+        int lHead = pIn.read();
+        int lLength = pIn.read();
+        assertEquals(pExpectedHead, lHead, "Frame head");
+        if (lLength == 126) {
+            lLength = (pIn.read() << 8) | pIn.read();
+        }
+        return pIn.readNBytes(lLength);
+    }
+
     private static class WSEventListener implements WebSocket.Listener {
 
         private void doEvent(String pName, String pData) {
@@ -17,6 +17,9 @@ export class WsoCommonMessage {
 	argsSrc = "";
 	status = "";
 	error = "";
+	//rpc call data
+	callId = "";
+	timeoutMillis = 0;
 	//payload
 	bodydata = "";
 	attachments = {};
@@ -37,6 +40,10 @@ export class WsoCommonMessage {
 		return "error" === this.status.toLowerCase();
 	}
 
+	isCallResponse() {
+		return this.callId.length > 0 && this.status.length > 0;
+	}
+
 	setStatusError(errorInfo) {
 		this.status = "error";
 		this.error = errorInfo;
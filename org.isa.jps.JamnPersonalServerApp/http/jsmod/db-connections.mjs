@@ -46,7 +46,7 @@ class DbConnectionsView extends WorkView {
 			cb(this.connections);
 		} else {
 			//load the data from server
-			callWebService(webapi.service_get_dbconnections).then((response) => {
+			webapi.callPageLoadService(webapi.service_get_dbconnections).then((response) => {
 				//connections are sent as an array - create an object from it
 				this.connections = {};
 				response.connections.forEach((item) => this.connections[item.name] = item);
@@ -260,7 +260,7 @@ export function getInfos(cb) {
 		cb(infoData);
 	} else {
 		//load the infos from server
-		callWebService(webapi.system_getinfos).then((data) => {
+		webapi.callPageLoadService(webapi.system_getinfos).then((data) => {
 			infoData = data;
 			cb(infoData);
 		});
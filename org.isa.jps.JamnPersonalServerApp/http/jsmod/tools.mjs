@@ -123,6 +123,21 @@ export async function callWebService(path, requestData = "{}") {
 	return data;
 }
 
+/**
+ * Call several web services with one request.
+ * entries: [{path, method, body}] - results: [{path, status, data}]
+ */
+export async function callWebServiceBatch(batchPath, entries) {
+	const results = await callWebService(batchPath, JSON.stringify(entries));
+
+	//bodies are embedded json values - no second parse needed
+	return results.map((result) => ({
+		path: result.path,
+		status: result.status,
+		data: result.body
+	}));
+}
+
 /**
  */
 export function newSimpleId(prfx = "") {
@@ -1,4 +1,5 @@
 import { WbProperties } from '../jsmod/workbench-properties.mjs';
+import { callWebService, callWebServiceBatch } from '../jsmod/tools.mjs';
 
 /**
  * The module provides web service url name constants
@@ -22,3 +23,36 @@ export const service_shellcmd = get("/service/shell-cmd");
 export const service_get_dbconnections = get("/service/get-db-connections");
 export const service_save_dbconnections = get("/service/save-db-connections");
 export const service_delete_dbconnections = get("/service/delete-db-connections");
+
+export const service_batch = get("/batch");
+
+/**
+ * The data requested when the workbench loads
+ * is fetched with one batch request.
+ * Each result is handed out once - later calls go to the server.
+ */
+const pageLoadUrls = [system_getinfos, service_get_dbconnections];
+let pageLoadData = null;
+
+export function loadPageData() {
+	if (!pageLoadData) {
+		const entries = pageLoadUrls.map((url) => ({ path: url, body: {} }));
+		pageLoadData = callWebServiceBatch(service_batch, entries)
+			.then((results) => new Map(results
+				.filter((result) => result.status === "200")
+				.map((result) => [result.path, result.data])))
+			//e.g. batch endpoint disabled - fall back to single calls
+			.catch(() => new Map());
+	}
+	return pageLoadData;
+}
+
+export async function callPageLoadService(url) {
+	const data = await loadPageData();
+	if (data.has(url)) {
+		const result = data.get(url);
+		data.delete(url);
+		return result;
+	}
+	return callWebService(url);
+}
@@ -8,11 +8,17 @@ import { WorkbenchInterface as WbApp } from '../jsmod/workbench.mjs';
  * 
  * The Data-IO uses WsoCommonMessage objects
  * that are serialized/deserialized to+from JSON.
+ * 
+ * Besides plain messages - rpc calls are supported
+ * that run concurrently over the one connection.
  */
 
 let hostUrl = null;
 let websocket = null;
 let listener = { "any": [] };
+// the running rpc calls by callId
+let pendingCalls = new Map();
+let callCounter = 0;
 
 export function initialize(wsodata) {
 	hostUrl = wsodata.hostUrl;
@@ -39,11 +45,13 @@ export function connect() {
 		websocket.onclose = function (event) {
 			websocket = null;
 			console.log("WebSocket connection [closed]");
+			rejectPendingCalls("connection closed");
 		};
 
 		websocket.onerror = function (event) {
 			websocket = null;
 			console.log("WebSocket connection error");
+			rejectPendingCalls("connection error");
 			onMessage(event);
 		};
 	} else {
@@ -79,6 +87,49 @@ export function sendMessage(wsoMsg, sentCb = null) {
 	return false;
 };
 
+/**
+ * Sends a WsoCommonMessage as rpc call and returns a promise
+ * - resolved with the success response
+ * - rejected with the error, cancelled or timeout response.
+ * 
+ * The callId is set on the given message and can be used to cancel the call.
+ * options:
+ * - timeout: the call deadline in millis enforced by the server - 0 = none
+ * - onOutput: a callback receiving the output messages of the call
+ */
+export function call(wsoMsg, options = {}) {
+	if (!(wsoMsg instanceof WsoCommonMessage)) {
+		throw new Error("WsoCommonMessage type expected");
+	}
+	wsoMsg.callId = "call-" + (++callCounter);
+	wsoMsg.timeoutMillis = options.timeout ?? 0;
+
+	return new Promise((resolve, reject) => {
+		if (isConnected()) {
+			pendingCalls.set(wsoMsg.callId, { resolve: resolve, reject: reject, onOutput: options.onOutput ?? null });
+			websocket.send(createWsoMessageString(wsoMsg));
+		} else {
+			let response = new WsoCommonMessage(wsoMsg.reference);
+			response.callId = wsoMsg.callId;
+			response.setStatusError("WebSocket NOT connected");
+			reject(response);
+		}
+	});
+};
+
+/**
+ * Cancels a running rpc call.
+ * The call promise gets rejected by the cancelled response of the server.
+ */
+export function cancel(callId) {
+	if (pendingCalls.has(callId) && isConnected()) {
+		let wsoMsg = new WsoCommonMessage("");
+		wsoMsg.command = "cancel";
+		wsoMsg.callId = callId;
+		websocket.send(createWsoMessageString(wsoMsg));
+	}
+};
+
 export function addMessageListener(cb, subject = "any") {
 	if (Object.hasOwn(listener, subject)) {
 		if (!listener[subject].some(item => item === cb)) {
@@ -105,9 +156,32 @@ function onMessage(event) {
 		wsoMsg.setStatusError("connection error");
 	}
 
+	if (pendingCalls.has(wsoMsg.callId)) {
+		onCallMessage(wsoMsg, pendingCalls.get(wsoMsg.callId));
+		return;
+	}
 	listener[subject].forEach((cb) => cb(wsoMsg));
 };
 
+function onCallMessage(wsoMsg, pendingCall) {
+	if (wsoMsg.isCallResponse()) {
+		pendingCalls.delete(wsoMsg.callId);
+		wsoMsg.hasStatusSuccess() ? pendingCall.resolve(wsoMsg) : pendingCall.reject(wsoMsg);
+	} else if (pendingCall.onOutput) {
+		pendingCall.onOutput(wsoMsg);
+	}
+}
+
+function rejectPendingCalls(errorInfo) {
+	pendingCalls.forEach((pendingCall, callId) => {
+		let wsoMsg = new WsoCommonMessage("");
+		wsoMsg.callId = callId;
+		wsoMsg.setStatusError(errorInfo);
+		pendingCall.reject(wsoMsg);
+	});
+	pendingCalls.clear();
+}
+
 function createWsoMessageString(wsoMsg){
 	let msg = wsoMsg.reference.length > 0 ? "<"+wsoMsg.reference+">": "";
 	msg = msg + JSON.stringify(wsoMsg);
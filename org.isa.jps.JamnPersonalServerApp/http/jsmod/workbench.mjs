@@ -7,6 +7,7 @@ import * as websocket from '../jsmod/websocket.mjs';
 import { getComponent as getSidebar } from '../jsmod/sidebar.mjs';
 import * as sidebarContent from '../jsmod/sidebar-content.mjs';
 import * as systemInfos from '../jsmod/system-infos.mjs';
+import * as webapi from '../jsmod/webapi.mjs';
 import * as Icons from '../jsmod/icons.mjs';
 import { WbProperties } from '../jsmod/workbench-properties.mjs';
 import { UIBuilder, DefaultCompProps, onClicked } from '../jsmod/uibuilder.mjs';
@@ -87,6 +88,8 @@ let statusline = null;
  */
 function startApp() {
 
+	//one request for all page load data
+	webapi.loadPageData();
 	systemInfos.getInfos((data) => {
 		systemData = data;
 
@@ -6,6 +6,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
@@ -22,6 +23,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
@@ -29,16 +32,22 @@ import java.util.logging.LogManager;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
 
 import org.isa.ipc.JamnServer;
 import org.isa.ipc.JamnServer.RequestMessage;
 import org.isa.ipc.JamnServer.UncheckedJsonException;
 import org.isa.ipc.JamnWebContentProvider;
+import org.isa.ipc.JamnWebContentProvider.ArchiveFileProvider;
+import org.isa.ipc.JamnWebContentProvider.AssetPipeline;
 import org.isa.ipc.JamnWebContentProvider.DefaultFileEnricher;
 import org.isa.ipc.JamnWebContentProvider.FileHelper;
+import org.isa.ipc.JamnWebContentProvider.OffHeapFileCache;
 import org.isa.ipc.JamnWebServiceProvider;
 import org.isa.ipc.JamnWebServiceProvider.WebServiceDefinitionException;
 import org.isa.ipc.JamnWebSocketProvider;
+import org.isa.ipc.JamnWebSocketProvider.DispatchMode;
+import org.isa.ipc.JamnWebSocketProvider.OverflowPolicy;
 import org.isa.ipc.JamnWebSocketProvider.WsoMessageProcessor;
 import org.isa.jps.comp.ChildProcessManager;
 import org.isa.jps.comp.ChildProcessor;
@@ -54,8 +63,12 @@ import org.isa.jps.comp.OperatingSystemInterface;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * <pre>
@@ -579,32 +592,83 @@ public class JamnPersonalServerApp {
     }
 
     /**
+     * <pre>
      * json isGetter visibility disabled
+     * readers and writers are immutable and cached per type
+     * </pre>
      */
     protected void initJsonTool() {
         jsonTool = new JamnServer.JsonToolWrapper() {
             private final ObjectMapper jack = new ObjectMapper()
                     .setVisibility(PropertyAccessor.FIELD, Visibility.ANY)
-                    .setVisibility(PropertyAccessor.IS_GETTER, Visibility.NONE);
+                    .setVisibility(PropertyAccessor.IS_GETTER, Visibility.NONE)
+                    .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+                    .configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+            private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+            private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+            private ObjectReader readerFor(Class<?> pType) {
+                return readers.computeIfAbsent(pType, jack::readerFor);
+            }
+
+            private ObjectWriter writerFor(Object pObj) {
+                return pObj == null ? jack.writer() : writers.computeIfAbsent(pObj.getClass(), jack::writerFor);
+            }
 
             @Override
             public <T> T toObject(String pSrc, Class<T> pType) throws UncheckedJsonException {
                 try {
-                    return jack.readValue(pSrc, pType);
+                    return readerFor(pType).readValue(pSrc);
                 } catch (JsonProcessingException e) {
                     throw new UncheckedJsonException(UncheckedJsonException.TOOBJ_ERROR, e);
                 }
             }
 
+            @Override
+            public <T> T toObject(byte[] pSrc, Class<T> pType) throws UncheckedJsonException {
+                try {
+                    return readerFor(pType).readValue(pSrc);
+                } catch (IOException e) {
+                    throw new UncheckedJsonException(UncheckedJsonException.TOOBJ_ERROR, e);
+                }
+            }
+
+            @Override
+            public <T> T toObject(InputStream pSrc, Class<T> pType) throws UncheckedJsonException {
+                try {
+                    return readerFor(pType).readValue(pSrc);
+                } catch (IOException e) {
+                    throw new UncheckedJsonException(UncheckedJsonException.TOOBJ_ERROR, e);
+                }
+            }
+
             @Override
             public String toString(Object pObj) {
                 try {
-                    return jack.writeValueAsString(pObj);
+                    return writerFor(pObj).writeValueAsString(pObj);
                 } catch (JsonProcessingException e) {
                     throw new UncheckedJsonException(UncheckedJsonException.TOJSON_ERROR, e);
                 }
             }
 
+            @Override
+            public void write(Object pObj, OutputStream pOut) throws UncheckedJsonException {
+                try {
+                    writerFor(pObj).writeValue(pOut, pObj);
+                } catch (IOException e) {
+                    throw new UncheckedJsonException(UncheckedJsonException.TOJSON_ERROR, e);
+                }
+            }
+
+            @Override
+            public <T> T convert(Object pValue, Class<T> pType) throws UncheckedJsonException {
+                try {
+                    return jack.convertValue(pValue, pType);
+                } catch (IllegalArgumentException e) {
+                    throw new UncheckedJsonException(UncheckedJsonException.TOOBJ_ERROR, e);
+                }
+            }
+
             @Override
             public String prettify(String pJsonInput) {
                 try {
@@ -632,17 +696,21 @@ public class JamnPersonalServerApp {
      */
     protected void initContentProvider() throws IOException {
         String lRootPath;
+        // a zip or jar archive as webroot
+        boolean lIsArchive = config.getWebFileRoot().endsWith(".zip") || config.getWebFileRoot().endsWith(".jar");
 
         if (config.getWebFileRoot().startsWith("/")) {
             // assume that a configured absolute path exists.
             lRootPath = config.getWebFileRoot();
+        } else if (lIsArchive) {
+            lRootPath = Path.of(AppHome.toString(), config.getWebFileRoot()).toString();
         } else {
             // ensure a relative web file root folder
             lRootPath = Tool.ensureSubDir(config.getWebFileRoot(), AppHome).toString();
         }
 
         // create the provider with a webroot
-        JamnWebContentProvider lWebContentProvider = new JamnWebContentProvider(lRootPath)
+        JamnWebContentProvider lWebContentProvider = new JamnWebContentProvider(lIsArchive ? "" : lRootPath)
                 .setConfig(server.getConfig())
                 // extend a FileHelper method
                 .setFileHelper(new FileHelper() {
@@ -657,7 +725,20 @@ public class JamnPersonalServerApp {
                         new DefaultFileEnricherValueProvider(AppHome, config)
                                 // set the service url root as injectable value for web content
                                 // e.g. javascript modules - see webapi.mjs
-                                .addValue(WEBSERVICE_URL_ROOT, config.getWebServiceUrlRoot())));
+                                .addValue(WEBSERVICE_URL_ROOT, config.getWebServiceUrlRoot())))
+                .setDevelopmentMode(!config.isWebFileCacheEnabled())
+                .setModulePreloadEnabled(config.isWebModulePreloadEnabled());
+
+        if (config.isWebFileCacheOffHeap()) {
+            lWebContentProvider.setFileCache(new OffHeapFileCache());
+        }
+        if (lIsArchive) {
+            lWebContentProvider.setFileProvider(new ArchiveFileProvider(Path.of(lRootPath)));
+        }
+        if (config.isWebAssetMinifyEnabled() || config.isWebAssetFingerprintEnabled()) {
+            lWebContentProvider.setAssetPipeline(new AssetPipeline(config.isWebAssetMinifyEnabled(),
+                    config.isWebAssetFingerprintEnabled()));
+        }
 
         // add the provider to server
         server.addContentProvider(CONTENT_PROVIDER_ID, lWebContentProvider);
@@ -675,28 +756,52 @@ public class JamnPersonalServerApp {
             // create the WebService provider
             webServiceProvider = new JamnWebServiceProvider()
                     .setJsonTool(jsonTool)
-                    .setUrlRoot(config.getWebServiceUrlRoot());
+                    .setUrlRoot(config.getWebServiceUrlRoot())
+                    .setSlowCallThreshold(config.getWebServiceSlowCallMillis());
 
             server.addContentProvider(SERVICE_PROVIDER_ID, webServiceProvider);
 
             LOG.info(() -> String.format("%s web service provider installed [%s]", INIT_LOGPRFX,
                     JamnWebServiceProvider.class.getSimpleName()));
 
+            // shell commands run separated from the server workers
+            webServiceProvider.registerExecutor(DefaultWebServices.SHELL_EXECUTOR,
+                    Executors.newFixedThreadPool(config.getWebServiceShellThreads(), (Runnable pTask) -> {
+                        Thread lThread = new Thread(pTask, "webservice-shell");
+                        lThread.setDaemon(true);
+                        return lThread;
+                    }));
+
             // install app default web services
             registerWebServices(new DefaultWebServices(osIFace));
 
+            if (config.getWebServiceBatchThreads() > 0) {
+                webServiceProvider.enableBatchService(
+                        Executors.newFixedThreadPool(config.getWebServiceBatchThreads(), (Runnable pTask) -> {
+                            Thread lThread = new Thread(pTask, "webservice-batch");
+                            lThread.setDaemon(true);
+                            return lThread;
+                        }));
+            }
+
             CLICommandInitializer.createWebServiceProviderCliCommands(webServiceProvider, getJsonTool());
         }
     }
 
     /**
      */
-    protected void initWebSocketProvider() {
+    protected void initWebSocketProvider() throws IOException {
         if (this.server != null && config.isWebSocketEnabled()) {
             // create the WebSocketProvider
             webSocketProvider = new JamnWebSocketProvider()
                     .addConnectionPath(config.getWebSocketUrlRoot())
-                    .setMaxUpStreamPayloadSize(config.getWebSocketMaxUpstreamSize());
+                    .setMaxUpStreamPayloadSize(config.getWebSocketMaxUpstreamSize())
+                    .setHeartbeat(config.getWebSocketHeartbeatMillis(), config.getWebSocketHeartbeatTimeoutMillis())
+                    .setOutboundQueue(config.getWebSocketOutboundQueueSize(), config.getWebSocketOverflowPolicy())
+                    .setPerMessageDeflate(config.isWebSocketDeflateEnabled(), Deflater.DEFAULT_COMPRESSION,
+                            config.isWebSocketDeflateNoContextTakeover())
+                    .setSelectorMode(config.getWebSocketSelectorThreads())
+                    .setDispatch(config.getWebSocketDispatchMode(), config.getWebSocketMaxInFlight());
 
             webSocketProvider.addMessageProcessor(
                     new DefaultWebSocketMessageProcessor(getConfig(), getJsonTool(), webSocketProvider));
@@ -775,8 +880,13 @@ public class JamnPersonalServerApp {
                 "## " + AppName + " Config Properties",
                 "##", "",
                 "#JPS Profile", JPS_PROFILE + "=" + APP_PROFILE, "",
-                "#WebContentProvider files root folder", "web.file.root=" + WEB_FILE_ROOT, "",
+                "#WebContentProvider files root folder or zip/jar archive", "web.file.root=" + WEB_FILE_ROOT, "",
                 "#Web File-Enricher root folder", "web.file.enricher.root=http/jsmod/html-components", "",
+                "#Web File cache enabled", "web.file.cache.enabled=false", "",
+                "#Web File cache off heap", "web.file.cache.offheap=false", "",
+                "#Web Asset minify js/css", "web.asset.minify=false", "",
+                "#Web Asset url fingerprinting (needs the file cache)", "web.asset.fingerprint=false", "",
+                "#Web Module preload headers (needs the file cache)", "web.module.preload=false", "",
                 "#JPS extensions root folder name", "jps.extension.root=" + EXTENSION_ROOT, "",
                 "#JPS extensions bin folder name", "jps.extension.bin=" + EXTENSION_BIN, "",
                 "#JPS extensions data folder name", "jps.extension.data=" + EXTENSION_DATA, "",
@@ -797,7 +907,24 @@ public class JamnPersonalServerApp {
                 "#WebSocket enabled", "websocket.enabled=true", "",
                 "#WebSocket url root", "websocket.url.root=/wsoapi", "",
                 "#WebSocket max upstream size", "websocket.max.upstream.size=65000", "",
+                "#WebSocket heartbeat ping interval in millis - 0 = disabled", "websocket.heartbeat.millis=30000", "",
+                "#WebSocket heartbeat timeout in millis", "websocket.heartbeat.timeout.millis=90000", "",
+                "#WebSocket outbound frame queue size per connection", "websocket.outbound.queue.size=1024", "",
+                "#WebSocket full queue policy - BLOCK, DROP_OLDEST, DISCONNECT", "websocket.overflow.policy=BLOCK", "",
+                "#WebSocket permessage-deflate compression", "websocket.deflate.enabled=true", "",
+                "#WebSocket compress every message on its own - saves memory per connection",
+                "websocket.deflate.no.context.takeover=false", "",
+                "#WebSocket selector threads multiplexing the connections - 0 = one thread per connection",
+                "#requires channel based server sockets - not for SSL", "websocket.selector.threads=0", "",
+                "#Server channel based sockets", JamnServer.Config.SOCKET_CHANNEL_ENABLED + "=false", "",
+                "#WebSocket message dispatch - SYNC, ORDERED, CONCURRENT", "websocket.dispatch.mode=ORDERED", "",
+                "#WebSocket max messages in processing per connection", "websocket.dispatch.max.inflight=16", "",
+                "#WebSocket rpc calls executed in parallel", "websocket.rpc.threads=8", "",
+                "#WebSocket rpc call timeout in millis if the client sets none - 0 = none", "websocket.rpc.timeout.millis=0", "",
                 "#WebService url root", "webservice.url.root=/webapi", "",
+                "#WebService batch endpoint threads - 0 = disabled", "webservice.batch.threads=4", "",
+                "#WebService shell command threads", "webservice.shell.threads=2", "",
+                "#WebService slow call log threshold in millis - 0 = disabled", "webservice.slowcall.millis=1000", "",
                 "#Child WebSocket url root", "child.websocket.url.root=/childapi", "",
                 "#JVM debug option",
                 "jvm.debug.option=-agentlib:jdwp=transport=dt_socket,address=localhost:9009,server=y,suspend=y", "",
@@ -850,6 +977,26 @@ public class JamnPersonalServerApp {
             return props.getProperty("web.file.enricher.root", "http/jsmod/html-components");
         }
 
+        public boolean isWebFileCacheEnabled() {
+            return Boolean.parseBoolean(props.getProperty("web.file.cache.enabled", FALSE));
+        }
+
+        public boolean isWebFileCacheOffHeap() {
+            return Boolean.parseBoolean(props.getProperty("web.file.cache.offheap", FALSE));
+        }
+
+        public boolean isWebAssetMinifyEnabled() {
+            return Boolean.parseBoolean(props.getProperty("web.asset.minify", FALSE));
+        }
+
+        public boolean isWebAssetFingerprintEnabled() {
+            return Boolean.parseBoolean(props.getProperty("web.asset.fingerprint", FALSE));
+        }
+
+        public boolean isWebModulePreloadEnabled() {
+            return Boolean.parseBoolean(props.getProperty("web.module.preload", FALSE));
+        }
+
         public String getDataRoot() {
             return props.getProperty("jps.data.root", DATA_ROOT);
         }
@@ -926,6 +1073,50 @@ public class JamnPersonalServerApp {
             return Long.valueOf(props.getProperty("websocket.max.upstream.size", "65000"));
         }
 
+        public long getWebSocketHeartbeatMillis() {
+            return Long.valueOf(props.getProperty("websocket.heartbeat.millis", "30000"));
+        }
+
+        public long getWebSocketHeartbeatTimeoutMillis() {
+            return Long.valueOf(props.getProperty("websocket.heartbeat.timeout.millis", "90000"));
+        }
+
+        public int getWebSocketOutboundQueueSize() {
+            return Integer.valueOf(props.getProperty("websocket.outbound.queue.size", "1024"));
+        }
+
+        public OverflowPolicy getWebSocketOverflowPolicy() {
+            return OverflowPolicy.valueOf(props.getProperty("websocket.overflow.policy", "BLOCK").trim().toUpperCase());
+        }
+
+        public DispatchMode getWebSocketDispatchMode() {
+            return DispatchMode.valueOf(props.getProperty("websocket.dispatch.mode", "ORDERED").trim().toUpperCase());
+        }
+
+        public int getWebSocketMaxInFlight() {
+            return Integer.valueOf(props.getProperty("websocket.dispatch.max.inflight", "16"));
+        }
+
+        public int getWebSocketRpcThreads() {
+            return Integer.valueOf(props.getProperty("websocket.rpc.threads", "8"));
+        }
+
+        public long getWebSocketRpcTimeoutMillis() {
+            return Long.valueOf(props.getProperty("websocket.rpc.timeout.millis", "0"));
+        }
+
+        public int getWebSocketSelectorThreads() {
+            return Integer.valueOf(props.getProperty("websocket.selector.threads", "0"));
+        }
+
+        public boolean isWebSocketDeflateEnabled() {
+            return Boolean.parseBoolean(props.getProperty("websocket.deflate.enabled", TRUE));
+        }
+
+        public boolean isWebSocketDeflateNoContextTakeover() {
+            return Boolean.parseBoolean(props.getProperty("websocket.deflate.no.context.takeover", FALSE));
+        }
+
         public String getWebServiceUrlRoot() {
             return props.getProperty(WEBSERVICE_URL_ROOT, "/webapi");
         }
@@ -966,6 +1157,18 @@ public class JamnPersonalServerApp {
             return Boolean.parseBoolean(props.getProperty("webservice.enabled", TRUE));
         }
 
+        public int getWebServiceBatchThreads() {
+            return Integer.valueOf(props.getProperty("webservice.batch.threads", "4"));
+        }
+
+        public int getWebServiceShellThreads() {
+            return Integer.valueOf(props.getProperty("webservice.shell.threads", "2"));
+        }
+
+        public long getWebServiceSlowCallMillis() {
+            return Long.valueOf(props.getProperty("webservice.slowcall.millis", "1000"));
+        }
+
         public boolean isWebSocketEnabled() {
             return Boolean.parseBoolean(props.getProperty("websocket.enabled", TRUE));
         }
@@ -247,6 +247,17 @@ public class CLICommandInitializer {
                     return "";
                 })
                 .build();
+
+        cli.newCommandBuilder()
+                .name("wsmetrics")
+                .descr(name -> cli.newDefaultDescr(name,
+                        "[<endpoint name>]", "Show WebService call metrics"))
+                .function(ctx -> {
+                    Object lMetrics = ctx.get(0).isEmpty() ? pProvider.getAllServiceMetrics()
+                            : pProvider.getServiceMetrics(ctx.get(0));
+                    return Tool.formatCommandReturn(pJson.prettify(pJson.toString(lMetrics)));
+                })
+                .build();
     }
 
 }
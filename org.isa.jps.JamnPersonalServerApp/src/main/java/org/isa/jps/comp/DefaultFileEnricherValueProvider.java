@@ -46,7 +46,8 @@ public class DefaultFileEnricherValueProvider implements ValueProvider {
      */
     @Override
     public String getValueFor(String pKey, Object pCtx) {
-        WebFile lWebFile = (WebFile) pCtx;
+        // static values are resolved with the WebFile as context
+        WebFile lWebFile = (pCtx instanceof WebFile lFile) ? lFile : null;
         Path lFilePath;
         String lValue = "NO VALUE FOUND for: " + pKey;
 
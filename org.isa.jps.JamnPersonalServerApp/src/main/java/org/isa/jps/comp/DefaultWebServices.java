@@ -25,6 +25,9 @@ public class DefaultWebServices {
     protected static final String WSP_system_updateinfos = "/system/update-infos";
     protected static final String WSP_service_shellcmd = "/service/shell-cmd";
 
+    // the executor name for long running os commands
+    public static final String SHELL_EXECUTOR = "shell";
+
     protected static final Logger LOG = Logger.getLogger(DefaultWebServices.class.getName());
     
     protected OperatingSystemInterface osIFace;
@@ -45,7 +48,8 @@ public class DefaultWebServices {
      **********************************************************************************/
     /**
      */
-    @WebService(methods = { "POST" }, path = WSP_service_shellcmd, contentType = APPLICATION_JSON)
+    @WebService(methods = { "POST" }, path = WSP_service_shellcmd, contentType = APPLICATION_JSON,
+            executor = SHELL_EXECUTOR, maxConcurrent = 2, maxWaitMillis = 1000)
     public ShellResponse runShellCommand(ShellRequest pRequest) {
         ShellResponse lResponse = new ShellResponse();
         String[] lCommand = pRequest.command.toArray(new String[0]);
@@ -99,8 +103,10 @@ public class DefaultWebServices {
     /**********************************************************************************
      **********************************************************************************/
     /**
+     * The infos are cached and refreshed by an update.
      */
-    @WebService(methods = { "POST" }, path = WSP_system_getinfos, contentType = APPLICATION_JSON)
+    @WebService(methods = { "POST" }, path = WSP_system_getinfos, contentType = APPLICATION_JSON,
+            cacheTtlMillis = 60000)
     public SystemInfoResponse getSystemInfo(SystemInfoRequest pRequest) {
         Properties lBuildProps = JamnPersonalServerApp.getInstance().getConfig().getBuildProperties();
         return new SystemInfoResponse()
@@ -116,7 +122,8 @@ public class DefaultWebServices {
 
     /**
      */
-    @WebService(methods = { "POST" }, path = WSP_system_updateinfos, contentType = APPLICATION_JSON)
+    @WebService(methods = { "POST" }, path = WSP_system_updateinfos, contentType = APPLICATION_JSON,
+            invalidates = { WSP_system_getinfos })
     public SystemInfoResponse updateSystemInfo(SystemInfoRequest pRequest) {
         //only demo purpose
         LOG.info(()-> String.format("Config changes: [%s]", pRequest.getConfigChanges()));
@@ -1,11 +1,22 @@
 /* Authored by iqbserve.de */
 package org.isa.jps.comp;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import org.isa.ipc.JamnServer.ExprString;
@@ -26,6 +37,12 @@ import org.isa.jps.comp.ExtensionHandler.ExtensionCallContext;
  * 
  * A user counterpart on the web client side is 
  *  - command.mjs.
+ * 
+ * Messages with a callId are processed as rpc calls.
+ * They run concurrently, their output and final response carry the callId
+ * and they can be cancelled by a "cancel" message or by a deadline.
+ * The final response status is one of success, error, cancelled or timeout.
+ * The counterpart is the call function of websocket.mjs.
  * </pre>
  */
 public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
@@ -36,8 +53,11 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
 
     protected static final String CMD_RUNJS = "runjs";
     protected static final String CMD_RUNEXT = "runext";
+    protected static final String CMD_CANCEL = "cancel";
     protected static final String STATUS_SUCCESS = "success";
     protected static final String STATUS_ERROR = "error";
+    protected static final String STATUS_CANCELLED = "cancelled";
+    protected static final String STATUS_TIMEOUT = "timeout";
     protected static final String SERVER_GLOBAL_REF = "server.global";
 
     protected String headStartMark = "<";
@@ -53,6 +73,13 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
     protected ExtensionHandler extensionHandler;
     protected JamnWebSocketProvider wsoProvider;
 
+    // the running rpc calls by connection and call id
+    protected Map<String, WsoCall> calls = new ConcurrentHashMap<>();
+    protected ExecutorService callExecutor;
+    protected ScheduledThreadPoolExecutor deadlineTimer;
+    // the deadline of calls without an own timeout - 0 = none
+    protected long defaultCallTimeoutMillis = 0;
+
     // websocket messages are always utf8 encoded by spec
     protected Charset encoding = StandardCharsets.UTF_8;
 
@@ -61,6 +88,19 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
         json = pJson;
         wsoProvider = pWsoProvider;
         isAvailable = new AtomicBoolean(true);
+
+        callExecutor = Executors.newFixedThreadPool(config.getWebSocketRpcThreads(), (Runnable pTask) -> {
+            Thread lThread = new Thread(pTask, "wso-rpc");
+            lThread.setDaemon(true);
+            return lThread;
+        });
+        deadlineTimer = new ScheduledThreadPoolExecutor(1, (Runnable pTask) -> {
+            Thread lThread = new Thread(pTask, "wso-rpc-deadline");
+            lThread.setDaemon(true);
+            return lThread;
+        });
+        deadlineTimer.setRemoveOnCancelPolicy(true);
+        defaultCallTimeoutMillis = config.getWebSocketRpcTimeoutMillis();
     }
 
     /**
@@ -105,19 +145,48 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
         return lParts;
     }
 
+    /**
+     * <pre>
+     * Returns the byte position of the body behind an optional message header.
+     * The header marks are expected to be single byte characters.
+     * </pre>
+     */
+    protected int getBodyOffset(byte[] pSrc) {
+        byte lStartMark = headStartMark.getBytes(encoding)[0];
+        byte lEndMark = headEndMark.getBytes(encoding)[0];
+
+        if (pSrc.length > maxHeadLen && pSrc[0] == lStartMark) {
+            for (int i = 1; i < maxHeadLen; i++) {
+                if (pSrc[i] == lEndMark) {
+                    return i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Serialize a message directly to bytes without an intermediate string.
+     */
+    protected byte[] toJsonBytes(Object pMsg) {
+        ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+        json.write(pMsg, lOut);
+        return lOut.toByteArray();
+    }
+
     /**
      * The WsoMessageProcessor Interface
      */
     @Override
     public byte[] onMessage(String pConnectionId, byte[] pMessage) {
-        String lJsonResponse = "";
         String[] lParts = new String[2];
         WsoCommonMessage lRequestMessage;
         WsoCommonMessage lResponseMsg = null;
         int lSnipLen = logSnippetLen;
 
         try {
-            lParts = createMessageHeadAndBodyParts(pMessage, null);
+            // the string parts are only used for logging
+            lParts = createMessageHeadAndBodyParts(pMessage, maxHeadLen + logSnippetLen);
 
             // log infos and a snippet of the body payload
             lSnipLen = lParts[1].length() > logSnippetLen ? logSnippetLen : lParts[1].length();
@@ -128,7 +197,9 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
 
             LOG.info(() -> text);
 
-            lRequestMessage = json.toObject(lParts[1], WsoCommonMessage.class);
+            int lOffset = getBodyOffset(pMessage);
+            lRequestMessage = json.toObject(
+                    new ByteArrayInputStream(pMessage, lOffset, pMessage.length - lOffset), WsoCommonMessage.class);
             lResponseMsg = onMessage(pConnectionId, lRequestMessage);
         } catch (Exception e) {
             lResponseMsg = new WsoCommonMessage(lParts[0]);
@@ -137,9 +208,9 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
         }
 
         if (lResponseMsg != null) {
-            lJsonResponse = json.toString(lResponseMsg);
+            return toJsonBytes(lResponseMsg);
         }
-        return lJsonResponse.getBytes(encoding);
+        return new byte[0];
     }
 
     /**
@@ -163,30 +234,46 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
         WsoCommonMessage lResponseMsg = new WsoCommonMessage(lRef)
                 .setStatus(STATUS_ERROR)
                 .setError(lError);
-        String lJsonResponse = json.toString(lResponseMsg);
 
-        return lJsonResponse.getBytes(encoding);
+        return toJsonBytes(lResponseMsg);
+    }
+
+    /**
+     * Cancels the running calls of a closed connection.
+     */
+    @Override
+    public void onClose(String pConnectionId) {
+        for (WsoCall lCall : calls.values()) {
+            if (lCall.connectionId.equals(pConnectionId) && completeCall(lCall)) {
+                lCall.interrupt();
+            }
+        }
     }
 
     /**
      * The internal processing implementation
      */
     protected WsoCommonMessage onMessage(String pConnectionId, WsoCommonMessage pRequestMsg) {
+        if (CMD_CANCEL.equalsIgnoreCase(pRequestMsg.getCommand())) {
+            cancelCall(pConnectionId, pRequestMsg.getCallId());
+            return null;
+        }
+        if (!pRequestMsg.getCallId().isEmpty()) {
+            startCall(pConnectionId, pRequestMsg);
+            return null;
+        }
+
         WsoCommonMessage lResponseMsg = new WsoCommonMessage(pRequestMsg.getReference());
 
         // limits message processing to - ONE message at ONE time
         if (isAvailable.compareAndSet(true, false)) {
             try {
-                if (CMD_RUNJS.equalsIgnoreCase(pRequestMsg.getCommand())) {
-                    runJSCommand(pConnectionId, pRequestMsg);
-                    lResponseMsg.setStatus(STATUS_SUCCESS);
-                } else if (CMD_RUNEXT.equalsIgnoreCase(pRequestMsg.getCommand())) {
-                    runExtCommand(pConnectionId, pRequestMsg);
-                    lResponseMsg.setStatus(STATUS_SUCCESS);
-                } else {
-                    throw new UncheckedWsoProcessorException(
-                            String.format("Unsupported command [%s]", pRequestMsg.getCommand()));
+                Consumer<String> lOutput = createOutputConsumer(pConnectionId, pRequestMsg.getReference(), null);
+                String lResult = runCommand(pRequestMsg, lOutput);
+                if (!lResult.isEmpty()) {
+                    lOutput.accept(lResult);
                 }
+                lResponseMsg.setStatus(STATUS_SUCCESS);
             } catch (Exception e) {
                 lResponseMsg.setStatus(STATUS_ERROR);
                 lResponseMsg.setError(String.format("ERROR processing wso command request [%s] [%s]%s%s", pRequestMsg,
@@ -201,6 +288,132 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
         return lResponseMsg;
     }
 
+    /**
+     * <pre>
+     * Starts a rpc call on the call executor.
+     * The deadline is the timeout of the request or the configured default.
+     * </pre>
+     */
+    protected void startCall(String pConnectionId, WsoCommonMessage pRequestMsg) {
+        WsoCall lCall = new WsoCall(pConnectionId, pRequestMsg);
+
+        if (calls.putIfAbsent(lCall.key, lCall) != null) {
+            sendMessage(pConnectionId, lCall.createResponse(STATUS_ERROR)
+                    .setError(String.format("Duplicate call id [%s]", lCall.callId)));
+            return;
+        }
+
+        try {
+            lCall.setFuture(callExecutor.submit(() -> executeCall(lCall)));
+        } catch (RejectedExecutionException e) {
+            abortCall(lCall, STATUS_ERROR, "Call rejected");
+            return;
+        }
+
+        // the deadline is scheduled when the future to interrupt is known
+        long lTimeout = pRequestMsg.getTimeoutMillis() > 0 ? pRequestMsg.getTimeoutMillis() : defaultCallTimeoutMillis;
+        if (lTimeout > 0) {
+            lCall.deadline = deadlineTimer.schedule(() -> abortCall(lCall, STATUS_TIMEOUT,
+                    String.format("Call timed out after [%s] ms", lTimeout)), lTimeout, TimeUnit.MILLISECONDS);
+            if (lCall.done.get()) {
+                lCall.deadline.cancel(false); // finished meanwhile
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * Runs the command of a call and sends the final response.
+     * Output of a call that is already finished gets dropped.
+     * </pre>
+     */
+    protected void executeCall(WsoCall pCall) {
+        if (pCall.done.get()) {
+            return; // cancelled while queued
+        }
+        WsoCommonMessage lResponseMsg;
+        try {
+            String lResult = runCommand(pCall.request,
+                    createOutputConsumer(pCall.connectionId, pCall.request.getReference(), pCall));
+            lResponseMsg = pCall.createResponse(STATUS_SUCCESS).setBodydata(lResult);
+        } catch (Exception e) {
+            lResponseMsg = pCall.createResponse(STATUS_ERROR)
+                    .setError(String.format("ERROR processing wso call [%s] [%s] [%s]%s%s", pCall.request,
+                            pCall.callId, pCall.connectionId, LS, Tool.getStackTraceFrom(e)));
+            LOG.severe(lResponseMsg.getError());
+        }
+        if (completeCall(pCall)) {
+            sendMessage(pCall.connectionId, lResponseMsg);
+        }
+    }
+
+    /**
+     */
+    protected void cancelCall(String pConnectionId, String pCallId) {
+        WsoCall lCall = calls.get(WsoCall.keyOf(pConnectionId, pCallId));
+        if (lCall != null) {
+            abortCall(lCall, STATUS_CANCELLED, "Call cancelled");
+        }
+    }
+
+    /**
+     * Finishes a call before its command is done - the status is sent as final response.
+     */
+    protected void abortCall(WsoCall pCall, String pStatus, String pError) {
+        if (completeCall(pCall)) {
+            pCall.interrupt();
+            sendMessage(pCall.connectionId, pCall.createResponse(pStatus).setError(pError));
+        }
+    }
+
+    /**
+     * Returns true only for the ONE caller that finishes the call.
+     */
+    protected boolean completeCall(WsoCall pCall) {
+        if (pCall.done.compareAndSet(false, true)) {
+            calls.remove(pCall.key, pCall);
+            if (pCall.deadline != null) {
+                pCall.deadline.cancel(false);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * <pre>
+     * Creates a consumer sending command output to the client.
+     * The output messages of a rpc call have the callId and no status.
+     * </pre>
+     */
+    protected Consumer<String> createOutputConsumer(String pConnectionId, String pReference, WsoCall pCall) {
+        String lCallId = pCall == null ? "" : pCall.callId;
+        return (String output) -> {
+            if (pCall == null || !pCall.done.get()) {
+                sendMessage(pConnectionId, new WsoCommonMessage(pReference).setCallId(lCallId).setBodydata(output));
+            }
+        };
+    }
+
+    /**
+     */
+    protected void sendMessage(String pConnectionId, WsoCommonMessage pMsg) {
+        wsoProvider.sendMessageTo(pConnectionId, toJsonBytes(pMsg));
+    }
+
+    /**
+     * Runs a command and returns the printed command result.
+     */
+    protected String runCommand(WsoCommonMessage pRequestMsg, Consumer<String> pOutput) {
+        if (CMD_RUNJS.equalsIgnoreCase(pRequestMsg.getCommand())) {
+            return runJSCommand(pRequestMsg, pOutput);
+        } else if (CMD_RUNEXT.equalsIgnoreCase(pRequestMsg.getCommand())) {
+            return runExtCommand(pRequestMsg, pOutput);
+        }
+        throw new UncheckedWsoProcessorException(
+                String.format("Unsupported command [%s]", pRequestMsg.getCommand()));
+    }
+
     /**
      */
     protected String[] parseArgsFrom(String pArgsSrc, Map<String, String> pMsgData) {
@@ -229,38 +442,26 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
 
     /**
      */
-    protected void runJSCommand(String pConnectionId, WsoCommonMessage pRequestMsg) {
-
-        WsoCommonMessage lOutputMsg = new WsoCommonMessage(pRequestMsg.getReference());
+    protected String runJSCommand(WsoCommonMessage pRequestMsg, Consumer<String> pOutput) {
 
-        JSCallContext lCallCtx = new JSCallContext((String output) -> {
-            lOutputMsg.setBodydata(output);
-            String lJsonMsg = json.toString(lOutputMsg);
-            wsoProvider.sendMessageTo(pConnectionId, lJsonMsg.getBytes(encoding));
-        });
+        JSCallContext lCallCtx = new JSCallContext(pOutput);
         js().run(lCallCtx, pRequestMsg.getFunctionModule(), parseArgsFrom(pRequestMsg.getArgsSrc(), pRequestMsg.getAttachments()));
-        if (lCallCtx.getResult() != null && !lCallCtx.getResult().isEmpty() && lCallCtx.getOutputConsumer() != null) {
-            String lResultPrint = Tool.formatCommandReturn(lCallCtx.getResult());
-            lCallCtx.getOutputConsumer().accept(lResultPrint);
+        if (lCallCtx.getResult() != null && !lCallCtx.getResult().isEmpty()) {
+            return Tool.formatCommandReturn(lCallCtx.getResult());
         }
+        return "";
     }
 
     /**
      */
-    protected void runExtCommand(String pConnectionId, WsoCommonMessage pRequestMsg) {
-
-        WsoCommonMessage lOutputMsg = new WsoCommonMessage(pRequestMsg.getReference());
+    protected String runExtCommand(WsoCommonMessage pRequestMsg, Consumer<String> pOutput) {
 
-        ExtensionCallContext lCallCtx = new ExtensionCallContext((String output) -> {
-            lOutputMsg.setBodydata(output);
-            String lJsonMsg = json.toString(lOutputMsg);
-            wsoProvider.sendMessageTo(pConnectionId, lJsonMsg.getBytes(encoding));
-        });
+        ExtensionCallContext lCallCtx = new ExtensionCallContext(pOutput);
         ext().run(lCallCtx, pRequestMsg.getFunctionModule(), parseArgsFrom(pRequestMsg.getArgsSrc(), pRequestMsg.getAttachments()));
-        if (lCallCtx.getResult() != null && !lCallCtx.getResult().isEmpty() && lCallCtx.getOutputConsumer() != null) {
-            String lResultPrint = Tool.formatCommandReturn(lCallCtx.getResult());
-            lCallCtx.getOutputConsumer().accept(lResultPrint);
+        if (lCallCtx.getResult() != null && !lCallCtx.getResult().isEmpty()) {
+            return Tool.formatCommandReturn(lCallCtx.getResult());
         }
+        return "";
     }
 
     /**
@@ -299,6 +500,9 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
         protected String argsSrc = "";
         protected String status = "";
         protected String error = "";
+        //rpc call data
+        protected String callId = "";
+        protected long timeoutMillis = 0;
         //payload
         protected String bodydata = "";
         protected Map<String, String> attachments = new LinkedHashMap<>();
@@ -347,6 +551,14 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
             return attachments;
         }
 
+        public String getCallId() {
+            return callId;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
         public WsoCommonMessage setReference(String reference) {
             this.reference = reference;
             return this;
@@ -372,12 +584,71 @@ public class DefaultWebSocketMessageProcessor implements WsoMessageProcessor {
             return this;
         }
 
+        public WsoCommonMessage setCallId(String callId) {
+            this.callId = callId;
+            return this;
+        }
+
+        public WsoCommonMessage setTimeoutMillis(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
         public WsoCommonMessage addAttachment(String pKey, String pVal) {
             this.attachments.put(pKey, pVal);
             return this;
         }
     }
 
+    /**
+     * A running rpc call.
+     */
+    protected static class WsoCall {
+        protected final String connectionId;
+        protected final String callId;
+        protected final String key;
+        protected final WsoCommonMessage request;
+        protected final AtomicBoolean done = new AtomicBoolean(false);
+        protected Future<?> future;
+        protected boolean interrupted = false;
+        protected volatile ScheduledFuture<?> deadline;
+
+        protected WsoCall(String pConnectionId, WsoCommonMessage pRequest) {
+            connectionId = pConnectionId;
+            callId = pRequest.getCallId();
+            key = keyOf(pConnectionId, callId);
+            request = pRequest;
+        }
+
+        protected static String keyOf(String pConnectionId, String pCallId) {
+            return pConnectionId + ":" + pCallId;
+        }
+
+        protected WsoCommonMessage createResponse(String pStatus) {
+            return new WsoCommonMessage(request.getReference()).setCallId(callId).setStatus(pStatus);
+        }
+
+        /**
+         * An interrupt requested before the future is set applies when it is set.
+         */
+        protected synchronized void setFuture(Future<?> pFuture) {
+            future = pFuture;
+            if (interrupted) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * A command ignoring the interrupt keeps running - but its output is dropped.
+         */
+        protected synchronized void interrupt() {
+            interrupted = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
     /**
      */
     public static class UncheckedWsoProcessorException extends RuntimeException {
@@ -1,12 +1,21 @@
 /* Authored by iqbserve.de */
 package org.isa.jps;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import org.isa.ipc.JamnServer.JsonToolWrapper;
+import org.isa.jps.comp.DefaultWebSocketMessageProcessor;
+import org.isa.jps.comp.DefaultWebSocketMessageProcessor.WsoCommonMessage;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
@@ -55,4 +64,62 @@ class JPSAppTest {
         assertTrue(lVal.contains("jps.properties"), "Error Shell call");
     }
 
+    @Test
+    void testWebSocketRpcCalls() throws Exception {
+        BlockingQueue<WsoCommonMessage> lSent = new LinkedBlockingQueue<>();
+        // commands echo their args - or wait for an interrupt
+        DefaultWebSocketMessageProcessor lProcessor = new DefaultWebSocketMessageProcessor(ServerApp.getConfig(), Json, null) {
+            @Override
+            protected String runCommand(WsoCommonMessage pRequestMsg, Consumer<String> pOutput) {
+                if ("wait".equals(pRequestMsg.getCommand())) {
+                    try {
+                        Thread.sleep(60000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                pOutput.accept("output " + pRequestMsg.getArgsSrc());
+                return "result " + pRequestMsg.getArgsSrc();
+            }
+
+            @Override
+            protected void sendMessage(String pConnectionId, WsoCommonMessage pMsg) {
+                lSent.add(pMsg);
+            }
+        };
+
+        // a waiting call does NOT block the following calls
+        lProcessor.onMessage("con1", rpcMessage("wait", "c1", "a", 0));
+        lProcessor.onMessage("con1", rpcMessage("echo", "c2", "b", 0));
+        WsoCommonMessage lMsg = lSent.poll(5, TimeUnit.SECONDS);
+        assertEquals("c2", lMsg.getCallId(), "Error output call id");
+        assertEquals("", lMsg.getStatus(), "Error output status");
+        assertEquals("output b", lMsg.getBodydata(), "Error output");
+        lMsg = lSent.poll(5, TimeUnit.SECONDS);
+        assertEquals("success", lMsg.getStatus(), "Error response status");
+        assertEquals("result b", lMsg.getBodydata(), "Error response result");
+
+        // cancel - the late output of the cancelled call is dropped
+        lProcessor.onMessage("con1", rpcMessage("cancel", "c1", "", 0));
+        lMsg = lSent.poll(5, TimeUnit.SECONDS);
+        assertEquals("c1", lMsg.getCallId(), "Error cancel call id");
+        assertEquals("cancelled", lMsg.getStatus(), "Error cancel status");
+
+        // deadline
+        lProcessor.onMessage("con1", rpcMessage("wait", "c3", "c", 200));
+        lMsg = lSent.poll(5, TimeUnit.SECONDS);
+        assertEquals("c3", lMsg.getCallId(), "Error timeout call id");
+        assertEquals("timeout", lMsg.getStatus(), "Error timeout status");
+
+        // a closed connection cancels its calls without a response
+        lProcessor.onMessage("con1", rpcMessage("wait", "c4", "d", 0));
+        lProcessor.onClose("con1");
+        assertNull(lSent.poll(500, TimeUnit.MILLISECONDS), "Error closed connection call");
+    }
+
+    private static byte[] rpcMessage(String pCommand, String pCallId, String pArgs, long pTimeout) {
+        return String.format("{\"command\":\"%s\",\"callId\":\"%s\",\"argsSrc\":\"%s\",\"timeoutMillis\":%s}",
+                pCommand, pCallId, pArgs, pTimeout).getBytes(StandardCharsets.UTF_8);
+    }
+
 }